@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.Component;
+import java.awt.GridLayout;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+
+/**
+ * Asks the user which columns of an ARFF file to load.
+ *
+ * @author Edward Raff
+ */
+public class ArffColumnChooser
+{
+    private ArffColumnChooser()
+    {
+    }
+
+    /**
+     * Reads the header of the given ARFF file and asks the user which two
+     * numeric attributes, and which nominal attribute if labeled, to load. If
+     * the file leaves no choice the user isn't asked. Any problem with the
+     * file is shown to the user.
+     * @param parent the component to show the dialogs over
+     * @param file the ARFF file
+     * @param labeled {@code true} if a class attribute is needed
+     * @return the chosen columns, or {@code null} if the load should not go
+     * ahead
+     */
+    public static ArffDataLoader.Projection choose(Component parent, File file, boolean labeled)
+    {
+        ArffDataLoader.Header header;
+        ArffDataLoader.Projection defaults;
+        try
+        {
+            header = ArffDataLoader.readHeader(file);
+            defaults = ArffDataLoader.Projection.defaultFor(header, labeled);
+        }
+        catch (IOException ex)
+        {
+            JOptionPane.showMessageDialog(parent, ex.getMessage(), "Loading Error", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+
+        List<ArffDataLoader.Attribute> numeric = header.getAttributes(ArffDataLoader.Kind.NUMERIC);
+        List<ArffDataLoader.Attribute> nominal = header.getAttributes(ArffDataLoader.Kind.NOMINAL);
+        if(numeric.size() == 2 && (!labeled || nominal.size() == 1))
+            return defaults;
+
+        ArffDataLoader.Attribute[] numericChoices = numeric.toArray(new ArffDataLoader.Attribute[numeric.size()]);
+        JComboBox<ArffDataLoader.Attribute> xBox = new JComboBox<>(numericChoices);
+        JComboBox<ArffDataLoader.Attribute> yBox = new JComboBox<>(numericChoices);
+        JComboBox<ArffDataLoader.Attribute> labelBox = new JComboBox<>(nominal.toArray(new ArffDataLoader.Attribute[nominal.size()]));
+        xBox.setSelectedItem(header.attributes.get(defaults.xAttribute));
+        yBox.setSelectedItem(header.attributes.get(defaults.yAttribute));
+
+        JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+        panel.add(new JLabel("X Axis"));
+        panel.add(xBox);
+        panel.add(new JLabel("Y Axis"));
+        panel.add(yBox);
+        if(labeled)
+        {
+            labelBox.setSelectedItem(header.attributes.get(defaults.labelAttribute));
+            panel.add(new JLabel("Class"));
+            panel.add(labelBox);
+        }
+
+        int option = JOptionPane.showConfirmDialog(parent, panel, "Choose Columns of " + file.getName(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if(option != JOptionPane.OK_OPTION)
+            return null;
+        ArffDataLoader.Attribute x = (ArffDataLoader.Attribute) xBox.getSelectedItem();
+        ArffDataLoader.Attribute y = (ArffDataLoader.Attribute) yBox.getSelectedItem();
+        if(x == y)
+        {
+            JOptionPane.showMessageDialog(parent, "The X and Y axes must be different attributes", "Loading Error", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+        int labelIndex = labeled ? ((ArffDataLoader.Attribute) labelBox.getSelectedItem()).index : -1;
+        return new ArffDataLoader.Projection(x.index, y.index, labelIndex);
+    }
+}
@@ -0,0 +1,710 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Streaming reader for ARFF files that only keeps the columns it is asked
+ * for. The header is read first so the user can pick which two numeric
+ * attributes to use as the coordinates, and which nominal attribute (if any)
+ * is the class. The data section is then streamed through a fixed size buffer,
+ * and every other column is skipped over without being parsed or allocated,
+ * so memory use depends only on the number of rows.<br>
+ * Both the dense and sparse forms of data lines are supported. Rows missing
+ * a value in one of the chosen columns are skipped.
+ *
+ * @author Edward Raff
+ */
+public class ArffDataLoader
+{
+    /**
+     * Size of the buffer the data section is streamed through. It will grow if
+     * a single line does not fit.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * Number of lines parsed between progress updates and cancellation checks
+     */
+    private static final int LINES_PER_UPDATE = 1 << 16;
+
+    private ArffDataLoader()
+    {
+    }
+
+    /**
+     *
+     * @param file the file to check
+     * @return {@code true} if the file has the ARFF extension
+     */
+    public static boolean isArff(File file)
+    {
+        return file.getName().toLowerCase(Locale.ENGLISH).endsWith(".arff");
+    }
+
+    /**
+     * The kinds of attribute an ARFF file can declare. Only numeric and nominal
+     * attributes can be loaded, the rest can only be skipped.
+     */
+    public enum Kind
+    {
+        NUMERIC, NOMINAL, OTHER
+    }
+
+    /**
+     * An attribute declared in the header of an ARFF file
+     */
+    public static class Attribute
+    {
+        /**
+         * The position of the attribute in each row
+         */
+        public final int index;
+        public final String name;
+        public final Kind kind;
+        /**
+         * The declared values of a nominal attribute, or {@code null}
+         */
+        public final String[] nominalValues;
+
+        public Attribute(int index, String name, Kind kind, String[] nominalValues)
+        {
+            this.index = index;
+            this.name = name;
+            this.kind = kind;
+            this.nominalValues = nominalValues;
+        }
+
+        @Override
+        public String toString()
+        {
+            if(kind == Kind.NOMINAL)
+                return name + " (" + nominalValues.length + " values)";
+            return name;
+        }
+    }
+
+    /**
+     * The attributes declared in the header of an ARFF file, along with where
+     * the data section starts
+     */
+    public static class Header
+    {
+        public final String relation;
+        public final List<Attribute> attributes;
+        /**
+         * Offset of the first byte after the {@code @data} line
+         */
+        final long dataStart;
+        /**
+         * Line number of the {@code @data} line
+         */
+        final long dataLine;
+
+        Header(String relation, List<Attribute> attributes, long dataStart, long dataLine)
+        {
+            this.relation = relation;
+            this.attributes = Collections.unmodifiableList(attributes);
+            this.dataStart = dataStart;
+            this.dataLine = dataLine;
+        }
+
+        /**
+         *
+         * @param kind the kind of attribute wanted
+         * @return all of the attributes of the given kind, in declaration order
+         */
+        public List<Attribute> getAttributes(Kind kind)
+        {
+            List<Attribute> matching = new ArrayList<>();
+            for(Attribute a : attributes)
+                if(a.kind == kind)
+                    matching.add(a);
+            return matching;
+        }
+    }
+
+    /**
+     * The columns of an ARFF file to load
+     */
+    public static class Projection
+    {
+        public final int xAttribute;
+        public final int yAttribute;
+        /**
+         * The nominal attribute to use as the class, or -1 for unlabeled data
+         */
+        public final int labelAttribute;
+
+        public Projection(int xAttribute, int yAttribute, int labelAttribute)
+        {
+            this.xAttribute = xAttribute;
+            this.yAttribute = yAttribute;
+            this.labelAttribute = labelAttribute;
+        }
+
+        /**
+         * Picks the same columns the old loader used, the first two numeric
+         * attributes and the last nominal attribute.
+         * @param header the header of the file
+         * @param labeled whether a class attribute is needed
+         * @return the default projection
+         * @throws IOException if the file doesn't have the needed attributes
+         */
+        public static Projection defaultFor(Header header, boolean labeled) throws IOException
+        {
+            List<Attribute> numeric = header.getAttributes(Kind.NUMERIC);
+            if(numeric.size() < 2)
+                throw new IOException("The data set has only " + numeric.size() + " numerical features, at least 2 are needed");
+            if(!labeled)
+                return new Projection(numeric.get(0).index, numeric.get(1).index, -1);
+            List<Attribute> nominal = header.getAttributes(Kind.NOMINAL);
+            if(nominal.isEmpty())
+                throw new IOException("The loaded dataset dosn't have any categorical features to be the classification target ");
+            return new Projection(numeric.get(0).index, numeric.get(1).index, nominal.get(nominal.size()-1).index);
+        }
+
+        /**
+         *
+         * @return a short name for the projection, used to keep the caches of
+         * different projections of the same file apart
+         */
+        public String cacheKey()
+        {
+            return "cols-" + xAttribute + "-" + yAttribute + (labelAttribute >= 0 ? "-" + labelAttribute : "");
+        }
+    }
+
+    /**
+     * Reads the header of an ARFF file, stopping at the {@code @data} line.
+     * @param file the file to read
+     * @return the header of the file
+     * @throws IOException if the file could not be read, or has no valid header
+     */
+    public static Header readHeader(File file) throws IOException
+    {
+        String relation = "";
+        List<Attribute> attributes = new ArrayList<>();
+        try(InputStream in = new BufferedInputStream(new FileInputStream(file)))
+        {
+            ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+            long offset = 0;
+            long lineNumber = 0;
+            int b = 0;
+            while(b >= 0)
+            {
+                lineBytes.reset();
+                while((b = in.read()) >= 0 && b != '\n')
+                {
+                    lineBytes.write(b);
+                    offset++;
+                }
+                if(b == '\n')
+                    offset++;
+                lineNumber++;
+                String line = new String(lineBytes.toByteArray(), StandardCharsets.UTF_8).trim();
+                if(line.isEmpty() || line.startsWith("%"))
+                    continue;
+                String lower = line.toLowerCase(Locale.ENGLISH);
+                if(lower.startsWith("@relation"))
+                    relation = unquote(line.substring("@relation".length()).trim());
+                else if(lower.startsWith("@attribute"))
+                    attributes.add(parseAttribute(attributes.size(), line.substring("@attribute".length()).trim(), lineNumber));
+                else if(lower.startsWith("@data"))
+                {
+                    if(attributes.isEmpty())
+                        throw new IOException("The ARFF file declares no attributes");
+                    return new Header(relation, attributes, offset, lineNumber);
+                }
+                else
+                    throw new IOException("Unexpected line " + lineNumber + " in the ARFF header: " + line);
+            }
+        }
+        throw new IOException("The ARFF file has no @data section");
+    }
+
+    private static Attribute parseAttribute(int index, String decl, long lineNumber) throws IOException
+    {
+        int nameEnd;
+        if(decl.startsWith("'") || decl.startsWith("\""))
+            nameEnd = closingQuote(decl, 0)+1;
+        else
+        {
+            nameEnd = 0;
+            while(nameEnd < decl.length() && !Character.isWhitespace(decl.charAt(nameEnd)) && decl.charAt(nameEnd) != '{')
+                nameEnd++;
+        }
+        String name = unquote(decl.substring(0, nameEnd));
+        String type = decl.substring(nameEnd).trim();
+        if(type.startsWith("{"))
+        {
+            int close = type.lastIndexOf('}');
+            if(close < 0)
+                throw new IOException("Unterminated nominal values on line " + lineNumber);
+            List<String> values = new ArrayList<>();
+            String inner = type.substring(1, close);
+            int pos = 0;
+            while(pos < inner.length())
+            {
+                while(pos < inner.length() && Character.isWhitespace(inner.charAt(pos)))
+                    pos++;
+                int end;
+                if(pos < inner.length() && (inner.charAt(pos) == '\'' || inner.charAt(pos) == '"'))
+                {
+                    end = closingQuote(inner, pos)+1;
+                    values.add(unquote(inner.substring(pos, end)));
+                    while(end < inner.length() && inner.charAt(end) != ',')
+                        end++;
+                }
+                else
+                {
+                    end = inner.indexOf(',', pos);
+                    if(end < 0)
+                        end = inner.length();
+                    String value = inner.substring(pos, end).trim();
+                    if(!value.isEmpty())
+                        values.add(value);
+                }
+                pos = end+1;
+            }
+            return new Attribute(index, name, Kind.NOMINAL, values.toArray(new String[values.size()]));
+        }
+        String lower = type.toLowerCase(Locale.ENGLISH);
+        if(lower.startsWith("numeric") || lower.startsWith("real") || lower.startsWith("integer"))
+            return new Attribute(index, name, Kind.NUMERIC, null);
+        return new Attribute(index, name, Kind.OTHER, null);
+    }
+
+    private static int closingQuote(String s, int open) throws IOException
+    {
+        char quote = s.charAt(open);
+        for(int i = open+1; i < s.length(); i++)
+        {
+            if(s.charAt(i) == '\\')
+                i++;
+            else if(s.charAt(i) == quote)
+                return i;
+        }
+        throw new IOException("Unterminated quote in: " + s);
+    }
+
+    /**
+     * Removes the quotes and escapes from a value, if it is quoted
+     */
+    private static String unquote(String s)
+    {
+        if(s.length() < 2 || !((s.startsWith("'") && s.endsWith("'")) || (s.startsWith("\"") && s.endsWith("\""))))
+            return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i = 1; i < s.length()-1; i++)
+        {
+            char c = s.charAt(i);
+            if(c == '\\' && i+1 < s.length()-1)
+                c = s.charAt(++i);
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads the chosen columns of the given ARFF file.
+     * @param file the file to read
+     * @param header the header previously read from the file
+     * @param projection the columns to keep
+     * @param monitor the monitor to report progress to
+     * @return the points in the file, labeled if the projection has a class
+     * attribute
+     * @throws IOException if the file could not be read or has a bad row
+     * @throws CancellationException if the monitor was cancelled
+     */
+    public static Dataset2D load(File file, Header header, Projection projection, LoadMonitor monitor) throws IOException
+    {
+        long start = System.nanoTime();
+        checkAttribute(header, projection.xAttribute, Kind.NUMERIC);
+        checkAttribute(header, projection.yAttribute, Kind.NUMERIC);
+        String[] labelNames = new String[0];
+        if(projection.labelAttribute >= 0)
+        {
+            checkAttribute(header, projection.labelAttribute, Kind.NOMINAL);
+            labelNames = header.attributes.get(projection.labelAttribute).nominalValues;
+        }
+
+        DataReader reader = new DataReader(header, projection, labelNames);
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            monitor.setTotalBytes(channel.size());
+            monitor.addProgress(header.dataStart, 0);
+            channel.position(header.dataStart);
+            reader.readAll(channel, monitor);
+        }
+        if(reader.missing > 0)
+            monitor.warn("Skipped " + reader.missing + " rows with missing values in the chosen columns");
+        return reader.finish(System.nanoTime()-start);
+    }
+
+    private static void checkAttribute(Header header, int index, Kind kind) throws IOException
+    {
+        if(index < 0 || index >= header.attributes.size())
+            throw new IOException("There is no attribute " + index + ", the file has " + header.attributes.size());
+        Attribute a = header.attributes.get(index);
+        if(a.kind != kind)
+            throw new IOException("The attribute " + a.name + " is not " + kind.toString().toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Parsing state for the data section of one file
+     */
+    private static class DataReader
+    {
+        private static final int X = 0, Y = 1, LABEL = 2;
+        /**
+         * The attribute index of each role, -1 if not used
+         */
+        private final int[] roleAttribute;
+        /**
+         * The last attribute index that has to be found on a dense line, any
+         * after it are not looked at
+         */
+        private final int lastNeeded;
+        /**
+         * The token of each role on the current line, start and end are -1 if
+         * the value was absent (sparse lines only)
+         */
+        private final int[] tokenStart = new int[3], tokenEnd = new int[3];
+        private final boolean[] tokenQuoted = new boolean[3];
+
+        private final String[] labelNames;
+        private final byte[][] labelBytes;
+        private final int[] labelHashes;
+        /**
+         * Open addressing table from label hash to id+1, 0 means empty
+         */
+        private final int[] table;
+        private Map<String, Integer> labelLookup;
+
+        private double[] x = new double[1024];
+        private double[] y = new double[1024];
+        private int[] label;
+        private int size = 0;
+        long missing = 0;
+        private long lineNumber;
+
+        public DataReader(Header header, Projection projection, String[] labelNames)
+        {
+            roleAttribute = new int[]{projection.xAttribute, projection.yAttribute, projection.labelAttribute};
+            lastNeeded = Math.max(projection.xAttribute, Math.max(projection.yAttribute, projection.labelAttribute));
+            lineNumber = header.dataLine;
+            this.labelNames = labelNames;
+            label = projection.labelAttribute >= 0 ? new int[1024] : null;
+
+            labelBytes = new byte[labelNames.length][];
+            labelHashes = new int[labelNames.length];
+            table = new int[Integer.highestOneBit(Math.max(labelNames.length, 1)*2)*2];
+            for(int id = 0; id < labelNames.length; id++)
+            {
+                labelBytes[id] = labelNames[id].getBytes(StandardCharsets.UTF_8);
+                int hash = 1;
+                for(byte b : labelBytes[id])
+                    hash = 31*hash + b;
+                labelHashes[id] = hash;
+                int slot = mix(hash) & (table.length-1);
+                while(table[slot] != 0)
+                    slot = (slot+1) & (table.length-1);
+                table[slot] = id+1;
+            }
+        }
+
+        void readAll(FileChannel channel, LoadMonitor monitor) throws IOException
+        {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            boolean eof = false;
+            int lines = 0;
+            long reportedBytes = 0;
+            int reportedRows = 0;
+            long consumed = 0;
+            while(!eof)
+            {
+                eof = channel.read(buf) < 0;
+                buf.flip();
+                int limit = buf.limit();
+                int pos = 0;
+                while(pos < limit)
+                {
+                    int lineEnd = pos;
+                    while(lineEnd < limit && buf.get(lineEnd) != '\n')
+                        lineEnd++;
+                    if(lineEnd == limit && !eof)
+                        break;//partial line, wait for more
+                    lineNumber++;
+                    parseLine(buf, pos, lineEnd);
+                    pos = lineEnd+1;
+                    if(++lines % LINES_PER_UPDATE == 0)
+                    {
+                        monitor.checkCancelled();
+                        long done = consumed + Math.min(pos, limit);
+                        monitor.addProgress(done-reportedBytes, size-reportedRows);
+                        reportedBytes = done;
+                        reportedRows = size;
+                    }
+                }
+                pos = Math.min(pos, limit);
+                consumed += pos;
+                buf.position(pos);
+                buf.compact();
+                if(!buf.hasRemaining())//a line longer than the whole buffer
+                {
+                    ByteBuffer bigger = ByteBuffer.allocate(buf.capacity()*2);
+                    buf.flip();
+                    bigger.put(buf);
+                    buf = bigger;
+                }
+            }
+            monitor.addProgress(consumed-reportedBytes, size-reportedRows);
+        }
+
+        private void parseLine(ByteBuffer buf, int start, int end) throws IOException
+        {
+            int pos = skipSpaces(buf, start, end);
+            if(pos == end || buf.get(pos) == '%')
+                return;
+            Arrays.fill(tokenStart, -1);
+            Arrays.fill(tokenEnd, -1);
+            if(buf.get(pos) == '{')
+                findSparseTokens(buf, pos+1, end);
+            else
+                findDenseTokens(buf, pos, end);
+
+            for(int role = X; role <= LABEL; role++)
+                if(roleAttribute[role] >= 0 && tokenStart[role] >= 0 && !tokenQuoted[role]
+                        && tokenEnd[role]-tokenStart[role] == 1 && buf.get(tokenStart[role]) == '?')
+                {
+                    missing++;
+                    return;
+                }
+
+            double xVal = numberFor(buf, X);
+            double yVal = numberFor(buf, Y);
+            int lbl = label != null ? labelFor(buf) : 0;
+            add(xVal, yVal, lbl);
+        }
+
+        private void findDenseTokens(ByteBuffer buf, int pos, int end) throws IOException
+        {
+            int attribute = 0;
+            while(attribute <= lastNeeded)
+            {
+                if(pos > end)
+                    throw new IOException("Line " + lineNumber + " has only " + attribute + " values");
+                pos = token(buf, skipSpaces(buf, pos, end), end, attribute, ',');
+                pos++;//past the comma
+                attribute++;
+            }
+        }
+
+        private void findSparseTokens(ByteBuffer buf, int pos, int end) throws IOException
+        {
+            while(true)
+            {
+                pos = skipSpaces(buf, pos, end);
+                if(pos >= end)
+                    throw new IOException("Unterminated sparse row on line " + lineNumber);
+                if(buf.get(pos) == '}')
+                    return;
+                int attribute = 0;
+                int digitsStart = pos;
+                while(pos < end && buf.get(pos) >= '0' && buf.get(pos) <= '9')
+                    attribute = attribute*10 + (buf.get(pos++) - '0');
+                if(pos == digitsStart)
+                    throw new IOException("Bad sparse attribute index on line " + lineNumber);
+                pos = token(buf, skipSpaces(buf, pos, end), end, attribute, '}');
+                if(pos < end && buf.get(pos) == ',')
+                    pos++;
+            }
+        }
+
+        /**
+         * Finds the end of the token starting at pos, recording it if the
+         * attribute is one we want.
+         * @return the position of the separator after the token
+         */
+        private int token(ByteBuffer buf, int pos, int end, int attribute, char close) throws IOException
+        {
+            int s, e;
+            boolean quoted = pos < end && (buf.get(pos) == '\'' || buf.get(pos) == '"');
+            if(quoted)
+            {
+                byte quote = buf.get(pos);
+                s = ++pos;
+                while(pos < end && buf.get(pos) != quote)
+                    pos += buf.get(pos) == '\\' ? 2 : 1;
+                if(pos >= end)
+                    throw new IOException("Unterminated quote on line " + lineNumber);
+                e = pos;
+                while(pos < end && buf.get(pos) != ',' && buf.get(pos) != close)
+                    pos++;
+            }
+            else
+            {
+                s = pos;
+                while(pos < end && buf.get(pos) != ',' && buf.get(pos) != close)
+                    pos++;
+                e = pos;
+                while(e > s && isSpace(buf.get(e-1)))
+                    e--;
+            }
+            for(int role = X; role <= LABEL; role++)
+                if(roleAttribute[role] == attribute)
+                {
+                    tokenStart[role] = s;
+                    tokenEnd[role] = e;
+                    tokenQuoted[role] = quoted;
+                }
+            return pos;
+        }
+
+        private double numberFor(ByteBuffer buf, int role) throws IOException
+        {
+            if(tokenStart[role] < 0)//left out of a sparse row
+                return 0.0;
+            try
+            {
+                return TextDataLoader.parseDouble(buf, tokenStart[role], tokenEnd[role]);
+            }
+            catch(NumberFormatException ex)
+            {
+                throw new IOException("Could not parse \"" + text(buf, tokenStart[role], tokenEnd[role]) + "\" as a number on line " + lineNumber, ex);
+            }
+        }
+
+        private int labelFor(ByteBuffer buf) throws IOException
+        {
+            int start = tokenStart[LABEL], end = tokenEnd[LABEL];
+            if(start < 0)//left out of a sparse row, which means the first value
+                return 0;
+            boolean escaped = false;
+            int hash = 1;
+            for(int i = start; i < end; i++)
+            {
+                byte b = buf.get(i);
+                escaped |= b == '\\';
+                hash = 31*hash + b;
+            }
+            if(escaped)//rare, so just take the slow path
+                return slowLabelFor(unquote("'" + text(buf, start, end) + "'"));
+
+            int mask = table.length-1;
+            int slot = mix(hash) & mask;
+            while(table[slot] != 0)
+            {
+                int id = table[slot]-1;
+                if(labelHashes[id] == hash && sameBytes(labelBytes[id], buf, start, end))
+                    return id;
+                slot = (slot+1) & mask;
+            }
+            return slowLabelFor(text(buf, start, end));
+        }
+
+        private int slowLabelFor(String value) throws IOException
+        {
+            if(labelLookup == null)
+            {
+                labelLookup = new HashMap<>();
+                for(int id = 0; id < labelNames.length; id++)
+                    labelLookup.put(labelNames[id], id);
+            }
+            Integer id = labelLookup.get(value);
+            if(id == null)
+                throw new IOException("The value \"" + value + "\" on line " + lineNumber + " is not one of the declared class values");
+            return id;
+        }
+
+        private void add(double xVal, double yVal, int lbl)
+        {
+            if(size == x.length)
+            {
+                int newCap = x.length*2;
+                x = Arrays.copyOf(x, newCap);
+                y = Arrays.copyOf(y, newCap);
+                if(label != null)
+                    label = Arrays.copyOf(label, newCap);
+            }
+            x[size] = xVal;
+            y[size] = yVal;
+            if(label != null)
+                label[size] = lbl;
+            size++;
+        }
+
+        Dataset2D finish(long elapsedNanos)
+        {
+            return new Dataset2D(Arrays.copyOf(x, size), Arrays.copyOf(y, size),
+                    label == null ? null : Arrays.copyOf(label, size), labelNames, elapsedNanos);
+        }
+
+        private static boolean isSpace(byte b)
+        {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private static int skipSpaces(ByteBuffer buf, int pos, int end)
+        {
+            while(pos < end && isSpace(buf.get(pos)))
+                pos++;
+            return pos;
+        }
+
+        private static String text(ByteBuffer buf, int start, int end)
+        {
+            byte[] bytes = new byte[end-start];
+            for(int i = 0; i < bytes.length; i++)
+                bytes[i] = buf.get(start+i);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int mix(int hash)
+        {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean sameBytes(byte[] name, ByteBuffer buf, int start, int end)
+        {
+            if(name.length != end-start)
+                return false;
+            for(int i = 0; i < name.length; i++)
+                if(name[i] != buf.get(start+i))
+                    return false;
+            return true;
+        }
+    }
+}
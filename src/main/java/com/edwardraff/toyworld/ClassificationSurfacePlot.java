@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import javafx.application.Platform;
+import jsat.classifiers.Classifier;
+
+/**
+ * Plots the points of a data set over the decision surface of a classifier.
+ * The surface is a {@link DecisionSurface} of the current view, with cells of
+ * {@link #setResolution(int) resolution} pixels on a side, evaluated in the
+ * background whenever the view changes. Each cell is drawn in the color of its
+ * class, faded by the confidence of the classifier unless hard boundaries are
+ * asked for.<br>
+ * <br>
+ * The surface is rendered progressively: a coarse grid of at most
+ * {@link #FIRST_LEVEL_CELLS} cells is evaluated and shown first, and then
+ * grids with cells half as wide until the full resolution is reached, so even
+ * a slow classifier shows a usable picture almost at once. Rendering only
+ * happens while the plot is {@link #setActive(boolean) active}.<br>
+ * <br>
+ * With {@link #setAdaptive(boolean) adaptive} rendering every level is
+ * {@link DecisionSurface#evaluateAdaptive evaluated adaptively}, and the plot
+ * reports how many predictions that saved, for surfaces it evaluated rather
+ * than took from the cache.<br>
+ * <br>
+ * Every full resolution surface is kept in the {@link SurfaceCache}, so
+ * coming back to a view, or asking for coarser cells over it, is drawn from
+ * the cache without asking the classifier about any point. Switching between
+ * hard and soft boundaries only changes how the cells are colored.
+ *
+ * @author Edward Raff
+ */
+public class ClassificationSurfacePlot extends ScatterPlot2D
+{
+    /**
+     * The most cells in the first, coarsest, grid of a progressive render
+     */
+    public static final int FIRST_LEVEL_CELLS = 1024;
+
+    private final Classifier model;
+    private int resolution = 5;
+    private boolean hardBoundaries = false;
+    private boolean adaptive = false;
+    private boolean active = true;
+    /**
+     * The last surface evaluated, the full resolution grid it is a level of,
+     * and the width of its cells in pixels. Only touched on the JavaFX thread
+     */
+    private DecisionSurface.Raster surface;
+    private DecisionSurface.Grid surfaceTarget;
+    private int surfaceCellPixels;
+    /**
+     * {@code true} if the surface came from the {@link SurfaceCache}, so no
+     * predictions were made for it now. Only touched on the JavaFX thread
+     */
+    private boolean surfaceCached;
+    /**
+     * The full resolution grid last asked for, only touched on the JavaFX
+     * thread
+     */
+    private DecisionSurface.Grid requested;
+    private String error;
+    /**
+     * Bumped for every new request, so that stale ones stop early
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     *
+     * @param data the points to plot
+     * @param model the trained classifier
+     */
+    public ClassificationSurfacePlot(Dataset2D data, Classifier model)
+    {
+        super(data);
+        this.model = model;
+    }
+
+    /**
+     * Sets the size of the cells of the surface. May be called from any
+     * thread.
+     * @param resolution the width of a cell in pixels
+     */
+    public void setResolution(int resolution)
+    {
+        Platform.runLater(() ->
+        {
+            this.resolution = Math.max(1, resolution);
+            redraw();
+        });
+    }
+
+    /**
+     * Sets whether cells are drawn in the full color of their class, or faded
+     * by how confident the classifier is. May be called from any thread.
+     * @param hardBoundaries {@code true} to ignore the confidence
+     */
+    public void setHardBoundaries(boolean hardBoundaries)
+    {
+        Platform.runLater(() ->
+        {
+            this.hardBoundaries = hardBoundaries;
+            redraw();
+        });
+    }
+
+    /**
+     * Sets whether the surface is evaluated adaptively, asking the classifier
+     * about fewer points away from the boundaries between classes. May be
+     * called from any thread.
+     * @param adaptive {@code true} to evaluate adaptively
+     */
+    public void setAdaptive(boolean adaptive)
+    {
+        Platform.runLater(() ->
+        {
+            if(this.adaptive == adaptive)
+                return;
+            this.adaptive = adaptive;
+            //start over, as the surface shown was made the other way
+            generation.incrementAndGet();
+            requested = null;
+            surface = null;
+            surfaceTarget = null;
+            redraw();
+        });
+    }
+
+    /**
+     * Sets whether the surface should be rendered, such as while the plot is
+     * on screen. Making the plot inactive stops any render in progress, and
+     * making it active again picks up from what was last shown. May be called
+     * from any thread.
+     * @param active {@code true} to render the surface
+     */
+    public void setActive(boolean active)
+    {
+        Platform.runLater(() ->
+        {
+            if(this.active == active)
+                return;
+            this.active = active;
+            if(!active)
+            {
+                generation.incrementAndGet();
+                requested = null;
+            }
+            redraw();
+        });
+    }
+
+    /**
+     * Stops rendering for good and drops the cached surfaces of the
+     * classifier, once the plot will not be shown again. May be called from
+     * any thread.
+     */
+    public void release()
+    {
+        setActive(false);
+        SurfaceCache.getInstance().remove(model);
+    }
+
+    @Override
+    public PlotRenderer toRenderer()
+    {
+        PlotRenderer renderer = super.toRenderer();
+        renderer.setSurface(model, resolution, hardBoundaries, adaptive);
+        return renderer;
+    }
+
+    @Override
+    protected String drawBackground(int[] pixels, int plotW, int plotH, double minX, double maxX, double minY, double maxY)
+    {
+        if(error != null)
+            return "Could not evaluate the classifier: " + error;
+        DecisionSurface.Grid target = DecisionSurface.grid(resolution, plotW, plotH, minX, maxX, minY, maxY);
+        boolean complete = target.sameCells(surface);
+        if(!complete && !target.sameCells(requested))
+        {
+            DecisionSurface.Raster cached = SurfaceCache.getInstance().get(model, target, adaptive);
+            if(cached != null)
+            {
+                //nothing still rendering is needed any more
+                generation.incrementAndGet();
+                requested = target;
+                surface = cached;
+                surfaceTarget = target;
+                surfaceCellPixels = resolution;
+                surfaceCached = true;
+                complete = true;
+            }
+        }
+        if(target.sameCells(surfaceTarget))
+            PlotRenderer.paintSurface(surface, surfaceCellPixels, hardBoundaries, pixels, plotW, plotH);
+        if(complete)
+        {
+            if(surfaceCached)
+                return "Surface from cache, no predictions made";
+            if(!adaptive)
+                return null;
+            long cells = (long) surface.width*surface.height;
+            return String.format("%,d of %,d predictions made, %.0f%% saved", surface.predictions, cells, 100.0*(cells-surface.predictions)/cells);
+        }
+        if(!active)
+            return "Surface paused";
+        if(!target.sameCells(requested))
+        {
+            int[] levels = levels(plotW, plotH, minX, maxX, minY, maxY);
+            //after a pause, start from the level that was last shown
+            if(target.sameCells(surfaceTarget))
+            {
+                int skip = 0;
+                while(levels[skip] >= surfaceCellPixels)
+                    skip++;
+                levels = Arrays.copyOfRange(levels, skip, levels.length);
+            }
+            DecisionSurface.Grid[] grids = new DecisionSurface.Grid[levels.length];
+            for(int l = 0; l < levels.length; l++)
+                grids[l] = DecisionSurface.grid(levels[l], plotW, plotH, minX, maxX, minY, maxY);
+            request(target, grids, levels);
+        }
+        return target.sameCells(surfaceTarget) ? "Refining surface..." : "Rendering surface...";
+    }
+
+    /**
+     * @return the width of the cells of every level of a progressive render,
+     * coarsest first
+     */
+    private int[] levels(int plotW, int plotH, double minX, double maxX, double minY, double maxY)
+    {
+        int coarsest = resolution;
+        while(coarsest < Math.max(plotW, plotH) && cells(coarsest, plotW, plotH) > FIRST_LEVEL_CELLS)
+            coarsest *= 2;
+        int count = 1;
+        for(int cell = coarsest; cell > resolution; cell /= 2)
+            count++;
+        int[] levels = new int[count];
+        for(int l = 0; l < count; l++)
+            levels[l] = coarsest >> l;
+        return levels;
+    }
+
+    private static long cells(int cellPixels, int plotW, int plotH)
+    {
+        return (long) ((plotW+cellPixels-1)/cellPixels) * ((plotH+cellPixels-1)/cellPixels);
+    }
+
+    /**
+     * Starts rendering the surface of a grid in the background, level by
+     * level, dropping any render still running
+     * @param target the full resolution grid
+     * @param grids the grid of every level, coarsest first and ending with
+     * the target
+     * @param levels the width of the cells of every level
+     */
+    private void request(final DecisionSurface.Grid target, final DecisionSurface.Grid[] grids, final int[] levels)
+    {
+        requested = target;
+        final int gen = generation.incrementAndGet();
+        final boolean adaptiveRequest = adaptive;
+        ComputeRuntime.getPool().execute(() ->
+        {
+            try
+            {
+                for(int l = 0; l < grids.length; l++)
+                {
+                    final int cellPixels = levels[l];
+                    final DecisionSurface.Grid grid = grids[l];
+                    DecisionSurface.Raster raster = adaptiveRequest
+                            ? DecisionSurface.evaluateAdaptive(model, DecisionSurface.needsCopyPerWorker(model), grid, ComputeRuntime.getPool(), () -> generation.get() != gen)
+                            : DecisionSurface.evaluate(model, DecisionSurface.needsCopyPerWorker(model), grid, ComputeRuntime.getPool(), () -> generation.get() != gen);
+                    if(raster == null)
+                        return;
+                    if(l == grids.length-1 && generation.get() == gen)
+                        SurfaceCache.getInstance().put(model, raster, adaptiveRequest);
+                    Platform.runLater(() ->
+                    {
+                        if(generation.get() != gen)
+                            return;
+                        surface = raster;
+                        surfaceTarget = target;
+                        surfaceCellPixels = cellPixels;
+                        surfaceCached = false;
+                        redraw();
+                    });
+                }
+            }
+            catch(RuntimeException ex)
+            {
+                Platform.runLater(() ->
+                {
+                    error = String.valueOf(ex.getMessage());
+                    redraw();
+                });
+            }
+        });
+    }
+}
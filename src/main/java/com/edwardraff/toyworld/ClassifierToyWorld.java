@@ -16,19 +16,12 @@
  */
 package com.edwardraff.toyworld;
 
-import com.edwardraff.jsatfx.ClassificationPlot;
-import com.edwardraff.jsatfx.Plot;
 import com.edwardraff.jsatfx.swing.ParameterPanel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.*;
-import static java.lang.Double.parseDouble;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javafx.application.Platform;
 import javafx.embed.swing.JFXPanel;
 import javafx.scene.Scene;
@@ -51,9 +44,7 @@ import jsat.datatransform.*;
 import jsat.distributions.kernels.RBFKernel;
 import jsat.distributions.multivariate.MetricKDE;
 import jsat.linear.*;
-import static jsat.linear.DenseVector.toDenseVec;
 import jsat.parameters.*;
-import jsat.utils.SystemInfo;
 
 /**
  * GUI for visualizing classification 2D problems
@@ -66,8 +57,13 @@ public class ClassifierToyWorld extends javax.swing.JFrame
     /**
      * This will be the currently loaded dataset
      */
-    private static ClassificationDataSet dataSet;
+    private static volatile Dataset2D dataSet;
     final JFileChooser fileChooser = new JFileChooser();
+    /**
+     * The data set load currently running in the background, if any
+     */
+    private DatasetLoadTask<Dataset2D> currentLoad;
+    private final JMenuItem jMenuItemCancelLoad = new JMenuItem("Cancel Load");
     /**
      * The main holder of all the visualizations. Empty until a dataset is 
      * loaded. The first index will be a visualization of the dataset, all 
@@ -75,24 +71,19 @@ public class ClassifierToyWorld extends javax.swing.JFrame
      */
     private static JTabbedPane centerTabbed;
     /**
-     * Atomic integer keeps track of the number of classifiers we are currently 
-     * waiting to finish training
-     */
-    private static final AtomicInteger waitingFor = new AtomicInteger(0);
-    /**
-     * Queue of classification jobs to run
+     * List of all plots so that when settings are changed we can apply them to 
+     * all the current plots
      */
-    private static BlockingQueue<Runnable> backgroundJobQueue;
+    private static final List<ClassificationSurfacePlot> plotList = new ArrayList<>();
     /**
-     * The thread we use to eat classification jobs forever
+     * Every tab showing a trained classifier, so that the classifiers can be
+     * updated when points are appended. Only touched from the event thread
      */
-    private static Thread backgroundThread;
+    private static final List<ModelTab> modelTabs = new ArrayList<>();
     /**
-     * List of all plots so that when settings are changed we can apply them to 
-     * all the current plots
+     * The panel showing the points of the data set
      */
-    private static final List<ClassificationPlot> plotList = new ArrayList<>();
-    private static final ExecutorService execService = Executors.newFixedThreadPool(SystemInfo.LogicalCores);
+    private static JFXPanel dataPanel;
     /**
      * Current resolutions for visualizing classification space. 
      */
@@ -107,6 +98,41 @@ public class ClassifierToyWorld extends javax.swing.JFrame
      */
     private static volatile boolean equalWeight = false;
     
+    private static final String META_NONE = "None";
+    /**
+     * The meta methods a classifier can be wrapped in, by name
+     */
+    private static final String[] META_METHODS = new String[]
+    {
+        META_NONE, "Bagging", "AdaBoostM1", "SAMME", "EmphasisBoost", "ModestBoost"
+    };
+    private static final String MULTI_CLASS_NATIVE = "Native";
+    /**
+     * Whether plots only refine their surface near the class boundaries
+     */
+    private final JCheckBoxMenuItem jCheckBoxMenuItemAdaptive = new JCheckBoxMenuItem("Adaptive Plot Refinement");
+    /**
+     * How the sub-models of a multi-class method are trained in parallel
+     */
+    private final JRadioButtonMenuItem jRadioSubModelsAuto = new JRadioButtonMenuItem("Decide Automatically", true);
+    private final JRadioButtonMenuItem jRadioSubModelsAcross = new JRadioButtonMenuItem("Train Sub-Models at Once");
+    private final JRadioButtonMenuItem jRadioSubModelsWithin = new JRadioButtonMenuItem("Train Each Sub-Model in Parallel");
+    /**
+     * The ways a classifier can handle more than two classes, by name
+     */
+    private static final String[] MULTI_CLASS_METHODS = new String[]
+    {
+        MULTI_CLASS_NATIVE, "One-vs-All", "One-vs-One", "DDAG"
+    };
+    /**
+     * The choices of how the sub-models of a multi-class method share the
+     * cores of their job
+     */
+    private enum SubModels
+    {
+        AUTO, ACROSS, WITHIN
+    }
+    
     /**
      * The list of all classifiers we know of
      */
@@ -136,9 +162,54 @@ public class ClassifierToyWorld extends javax.swing.JFrame
     {
         initComponents();
         jMenuBar1.add(transformsMenu = new TransformsMenu(this, "Transforms"));
+        JMenu jMenuSubModels = new JMenu("Parallel Sub-Models");
+        ButtonGroup buttonGroupSubModels = new ButtonGroup();
+        for(JRadioButtonMenuItem item : new JRadioButtonMenuItem[]{jRadioSubModelsAuto, jRadioSubModelsAcross, jRadioSubModelsWithin})
+        {
+            buttonGroupSubModels.add(item);
+            jMenuSubModels.add(item);
+        }
+        jMenuMultiClassExtension.addSeparator();
+        jMenuMultiClassExtension.add(jMenuSubModels);
+        jCheckBoxMenuItemAdaptive.setToolTipText("Only refine the plot near class boundaries, best with Hard Boundaries");
+        jCheckBoxMenuItemAdaptive.addActionListener((ActionEvent e) ->
+        {
+            plotList.stream().forEach((plot) -> plot.setAdaptive(jCheckBoxMenuItemAdaptive.isSelected()));
+        });
+        for(int i = 0; i < jMenuEdit.getItemCount(); i++)
+            if(jMenuEdit.getItem(i) == jMenuItemPlotResolition)
+            {
+                jMenuEdit.insert(jCheckBoxMenuItemAdaptive, i+1);
+                break;
+            }
+        jMenuBar1.add(new GenerateMenu(this, true, (points) ->
+        {
+            //generated data replaces whatever was being loaded
+            if(currentLoad != null)
+                currentLoad.abort();
+            setDataSet(points);
+        }, this::appendDataSet, jLabelInfo), 1);
         
         jLabelInfo.setText(" ");
-        backgroundJobQueue = new LinkedBlockingQueue<>();
+        jMenuItemCancelLoad.setEnabled(false);
+        jMenuItemCancelLoad.addActionListener((ActionEvent ae) ->
+        {
+            if(currentLoad != null)
+                currentLoad.abort();
+        });
+        jMenuFile.add(jMenuItemCancelLoad);
+        JMenuItem jMenuItemSeed = new JMenuItem("Session Seed...");
+        jMenuItemSeed.addActionListener((ActionEvent e) -> SessionRandom.showSeedDialog(this));
+        jMenuFile.add(jMenuItemSeed);
+        JMenuItem jMenuItemJobs = new JMenuItem("Jobs...");
+        jMenuItemJobs.addActionListener((ActionEvent e) -> JobListFrame.showJobs(this));
+        jMenuFile.add(jMenuItemJobs);
+        JMenuItem jMenuItemThreads = new JMenuItem("Compute Threads...");
+        jMenuItemThreads.addActionListener((ActionEvent e) -> ComputeRuntime.showParallelismDialog(this));
+        jMenuFile.add(jMenuItemThreads);
+        JMenuItem jMenuItemExportPlots = new JMenuItem("Export Plots as PNG...");
+        jMenuItemExportPlots.addActionListener((ActionEvent e) -> PlotExport.exportTabs(this, centerTabbed, jLabelInfo));
+        jMenuFile.add(jMenuItemExportPlots);
         //add a menu item fro every classifier we have
         for(Map.Entry<String, Classifier> entry : classifierss.entrySet())
         {
@@ -148,132 +219,683 @@ public class ClassifierToyWorld extends javax.swing.JFrame
             JMenuItem menuItem = new JMenuItem(name);
             menuItem.addActionListener((ActionEvent ae) ->
             {
-                jLabelInfo.setText("Waiting on " + waitingFor.incrementAndGet() + " jobs...");
-                try
+                //train on the data set on screen now, whatever is loaded while the job waits
+                if(dataSet == null)
                 {
-                    //First, configure out objects and ask the User to change settings. 
-                    showParameterizedDialog(getOwner(), classifier);
-                    Classifier workingClassifier = classifier.clone();
-                    if (!jRadioBMetaNone.isSelected())
-                    {
-                        if (jRadioBMetaBagging.isSelected())
-                            workingClassifier = new Bagging(workingClassifier);
-                        else if (jRadioBMetaAdaBoosM1.isSelected())
-                            workingClassifier = new AdaBoostM1(workingClassifier, 100);
-                        else if (jRadioBMetaSAMME.isSelected())
-                            workingClassifier = new SAMME(workingClassifier, 100);
-                        else if (jRadioBMetaEmphasisBoost.isSelected())
-                            workingClassifier = new EmphasisBoost(workingClassifier, 100, 0.5);
-                        else if (jRadioBMetaModestBoost.isSelected())
-                            workingClassifier = new ModestAdaBoost(workingClassifier, 100);
-
-                        showParameterizedDialog(getOwner(), workingClassifier);
-                    }
-                    String prefix;
-                    if (jRadioButtonMenuItemMultiClassOneVsAll.isSelected())
-                    {
-                        prefix = "One-vs-All " ;
-                        workingClassifier = new OneVSAll(workingClassifier, false);
-                    }
-                    else if (jRadioButtonMenuItemMultiClassOneVsOne.isSelected())
+                    JOptionPane.showMessageDialog(rootPane, "Please load a data set first", "Training Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                final Dataset2D points = dataSet.weighted(getWeighting());
+                //First, configure out objects and ask the User to change settings. 
+                showParameterizedDialog(getOwner(), classifier);
+                Classifier workingClassifier = classifier.clone();
+                final String meta = getSelectedMeta();
+                if (!meta.equals(META_NONE))
+                {
+                    workingClassifier = withMeta(workingClassifier, meta, name, points);
+                    showParameterizedDialog(getOwner(), workingClassifier);
+                }
+                final String multiClass = getSelectedMultiClass();
+                final SubModels subModels = getSubModels();
+                final String prefix = multiClass.equals(MULTI_CLASS_NATIVE) ? "" : multiClass + " ";
+                final boolean parallel = jCheckBoxMenuItemParallel.isSelected();
+                final DataTransformProcess transforms = transformsMenu.getDataTransformProcess().clone();
+                final JobScheduler scheduler = JobScheduler.getInstance();
+                
+                //make the reference final so we can just call it below in the lambda
+                final Classifier metaClassifier = workingClassifier;
+                    
+                //and now queue it to run in the background, on all cores if allowed to
+                scheduler.submit(prefix + name, parallel ? scheduler.getCoreBudget() : 1, (threads) ->
+                {
+                    final JobScheduler.Job job = JobScheduler.currentJob();
+                    final Classifier finalClassifier = forCurrentJob(metaClassifier, multiClass, subModels, points.getClassCount(), parallel, transforms);
+                    final ClassificationDataSet data = points.asClassificationDataSet();
+                    
+                    //the same model on the same data may have been trained before
+                    final ModelCache cache = ModelCache.getInstance();
+                    final String cacheKey = cacheKey(metaClassifier, multiClass, transforms, points);
+                    final Classifier cached = cacheKey == null ? null : cache.get(cacheKey);
+                    final Classifier trained = cached != null ? cached : finalClassifier;
+                    try
                     {
-                        prefix = "One-vs-One " ;
-                        workingClassifier = new OneVSOne(workingClassifier, false);
+                        if(cached == null)
+                        {
+                            if(parallel)
+                                finalClassifier.trainC(data, threads);
+                            else
+                                finalClassifier.trainC(data);
+                            if(cacheKey != null)
+                                cache.put(cacheKey, finalClassifier);
+                        }
                     }
-                    else if (jRadioButtonMenuItemMultiClassDDAG.isSelected())
+                    catch(final Exception ex)
                     {
-                        prefix = "DDAG " ;
-                        workingClassifier = new DDAG(workingClassifier, false);
+                        if(job.isCancelled())
+                            return;
+                        SwingUtilities.invokeLater(() ->
+                        {
+                            JOptionPane.showMessageDialog(rootPane, "Error: " + ex.getMessage(), "Error ", JOptionPane.ERROR_MESSAGE);
+                        });
+                        
+                        throw ex;
                     }
-                    else
-                        prefix = "";
-                    workingClassifier = new DataModelPipeline(workingClassifier, transformsMenu.getDataTransformProcess().clone());
                     
-                    //make the reference final so we can just call it below in the lambda
-                    final Classifier finalClassifier = workingClassifier;
-                        
-                    //and now queue it to run in the background
-                    backgroundJobQueue.put((Runnable) () ->
+                    addPlotTab(prefix + name + (cached != null ? " (cached)" : ""), points, trained, job);
+                });
+            });
+            
+            jMenuClassifiers.add(menuItem);
+        }
+        jMenuClassifiers.addSeparator();
+        JMenuItem jMenuItemSweep = new JMenuItem("Train Everything...");
+        jMenuItemSweep.addActionListener((ActionEvent e) -> sweep());
+        jMenuClassifiers.add(jMenuItemSweep);
+        JMenuItem jMenuItemCrossValidate = new JMenuItem("Cross Validate...");
+        jMenuItemCrossValidate.addActionListener((ActionEvent e) -> crossValidate());
+        jMenuClassifiers.add(jMenuItemCrossValidate);
+        JMenu jMenuSearch = new JMenu("Search Parameters");
+        for(Map.Entry<String, Classifier> entry : classifierss.entrySet())
+            if(entry.getValue() instanceof Parameterized)
+            {
+                JMenuItem searchItem = new JMenuItem(entry.getKey() + "...");
+                searchItem.addActionListener((ActionEvent e) -> searchParameters(entry.getKey(), entry.getValue()));
+                jMenuSearch.add(searchItem);
+            }
+        jMenuClassifiers.add(jMenuSearch);
+        
+        
+        JobScheduler.getInstance().addListener((job) -> SwingUtilities.invokeLater(() ->
+        {
+            jLabelInfo.setText(JobScheduler.getInstance().getSummary());
+        }));
+        
+        setSize(600, 400);
+    }
+
+    /**
+     * @return how points should be weighted for training
+     */
+    private static Dataset2D.Weighting getWeighting()
+    {
+        return equalWeight ? Dataset2D.Weighting.BALANCED : Dataset2D.Weighting.UNIFORM;
+    }
+
+    /**
+     * @return the name of the selected meta method
+     */
+    private String getSelectedMeta()
+    {
+        if (jRadioBMetaBagging.isSelected())
+            return "Bagging";
+        else if (jRadioBMetaAdaBoosM1.isSelected())
+            return "AdaBoostM1";
+        else if (jRadioBMetaSAMME.isSelected())
+            return "SAMME";
+        else if (jRadioBMetaEmphasisBoost.isSelected())
+            return "EmphasisBoost";
+        else if (jRadioBMetaModestBoost.isSelected())
+            return "ModestBoost";
+        return META_NONE;
+    }
+
+    /**
+     * @return the name of the selected multi-class handling
+     */
+    private String getSelectedMultiClass()
+    {
+        if (jRadioButtonMenuItemMultiClassOneVsAll.isSelected())
+            return "One-vs-All";
+        else if (jRadioButtonMenuItemMultiClassOneVsOne.isSelected())
+            return "One-vs-One";
+        else if (jRadioButtonMenuItemMultiClassDDAG.isSelected())
+            return "DDAG";
+        return MULTI_CLASS_NATIVE;
+    }
+
+    /**
+     * Wraps a classifier in a meta method
+     * @param classifier the classifier to wrap
+     * @param meta the name of the meta method, one of {@link #META_METHODS}
+     * @param name the name of the classifier, used to pick its random stream
+     * @param data the data it will be trained on, also used to pick its
+     * random stream
+     * @return the wrapped classifier
+     */
+    private static Classifier withMeta(Classifier classifier, String meta, String name, Dataset2D data)
+    {
+        switch(meta)
+        {
+            case "Bagging":
+                return new Bagging(classifier, Bagging.DEFAULT_EXTRA_SAMPLES, Bagging.DEFAULT_SIMULTANIOUS_TRAINING, Bagging.DEFAULT_ROUNDS, SessionRandom.random("Bagging " + name, data.fingerprint()));
+            case "AdaBoostM1":
+                return new AdaBoostM1(classifier, 100);
+            case "SAMME":
+                return new SAMME(classifier, 100);
+            case "EmphasisBoost":
+                return new EmphasisBoost(classifier, 100, 0.5);
+            case "ModestBoost":
+                return new ModestAdaBoost(classifier, 100);
+            default:
+                return classifier;
+        }
+    }
+
+    /**
+     * Decides how the sub-models of a multi-class method use the cores of
+     * their job. Training the sub-models at once, one core each, keeps every
+     * core busy whatever the base classifier is, but only if there are at
+     * least as many sub-models as cores. With fewer, the sub-models are
+     * trained one after another, each given all of the cores to use if the
+     * base classifier can.
+     * @param subModels the choice made by the user
+     * @param multiClass the name of the method, one of
+     * {@link #MULTI_CLASS_METHODS}
+     * @param classes the number of classes in the data
+     * @param cores the number of cores the job was granted
+     * @return {@code true} to train the sub-models at once
+     */
+    private static boolean concurrentSubModels(SubModels subModels, String multiClass, int classes, int cores)
+    {
+        if(cores <= 1)
+            return false;
+        else if(subModels == SubModels.ACROSS)
+            return true;
+        else if(subModels == SubModels.WITHIN)
+            return false;
+        return subModelCount(multiClass, classes) >= cores;
+    }
+
+    /**
+     * @return how the user chose to train sub-models, must be called from
+     * the event thread
+     */
+    private SubModels getSubModels()
+    {
+        if(jRadioSubModelsAcross.isSelected())
+            return SubModels.ACROSS;
+        else if(jRadioSubModelsWithin.isSelected())
+            return SubModels.WITHIN;
+        return SubModels.AUTO;
+    }
+
+    /**
+     * Wraps a classifier in its multi-class method, and in the transforms if
+     * there are any, for the job running on the calling thread. How the
+     * sub-models share the cores is decided from the cores the job was
+     * actually granted, which may be fewer than it asked for.
+     * @param classifier the classifier, with its meta method
+     * @param multiClass the name of the multi-class method
+     * @param subModels how the user chose to train sub-models
+     * @param classes the number of classes in the data the job trains on
+     * @param parallel {@code true} if the job trains on its threads
+     * @param transforms the transforms to train with, copied for the model
+     * @return the classifier to train
+     */
+    private static Classifier forCurrentJob(Classifier classifier, String multiClass, SubModels subModels, int classes, boolean parallel, DataTransformProcess transforms)
+    {
+        JobScheduler.Job job = JobScheduler.currentJob();
+        int cores = parallel && job != null ? job.getGrantedCores() : 1;
+        return withTransforms(withMultiClass(classifier, multiClass, concurrentSubModels(subModels, multiClass, classes, cores)), transforms);
+    }
+
+    /**
+     * Makes the {@link ModelCache} key of a classifier wrapped the way
+     * {@link #forCurrentJob forCurrentJob} wraps it. How the sub-models share
+     * the cores does not change the trained model, so it is left out, and the
+     * same model is found again however many cores its job was granted.
+     * @param classifier the untrained classifier, with its meta method
+     * @param multiClass the name of the multi-class method
+     * @param transforms the transforms to train with
+     * @param data the data the model will be trained on
+     * @return the key of the trained model, or {@code null} if it can not be
+     * cached
+     */
+    private static String cacheKey(Classifier classifier, String multiClass, DataTransformProcess transforms, Dataset2D data)
+    {
+        return ModelCache.key(withTransforms(withMultiClass(classifier, multiClass, false), transforms), data);
+    }
+
+    /**
+     * Puts a classifier behind the transforms, if there are any
+     * @param model the classifier
+     * @param transforms the transforms to train with, copied for the model
+     * @return the classifier to train
+     */
+    private static Classifier withTransforms(Classifier model, DataTransformProcess transforms)
+    {
+        //an online classifier is only updateable while it is not hidden in a pipeline
+        if(transforms.getNumberOfTransforms() > 0)
+            return new DataModelPipeline(model, transforms.clone());
+        return model;
+    }
+
+    /**
+     * @param multiClass the name of the method, one of
+     * {@link #MULTI_CLASS_METHODS}
+     * @param classes the number of classes in the data
+     * @return the number of classifiers the method trains
+     */
+    private static int subModelCount(String multiClass, int classes)
+    {
+        switch(multiClass)
+        {
+            case "One-vs-All":
+                return classes;
+            case "One-vs-One":
+            case "DDAG":
+                return classes*(classes-1)/2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Wraps a classifier in a multi-class handling method
+     * @param classifier the classifier to wrap
+     * @param multiClass the name of the method, one of
+     * {@link #MULTI_CLASS_METHODS}
+     * @param concurrent {@code true} to train the sub-models at once, on the
+     * threads given to the wrapper, rather than one after another
+     * @return the wrapped classifier
+     */
+    private static Classifier withMultiClass(Classifier classifier, String multiClass, boolean concurrent)
+    {
+        switch(multiClass)
+        {
+            case "One-vs-All":
+                return new OneVSAll(classifier, concurrent);
+            case "One-vs-One":
+                return new OneVSOne(classifier, concurrent);
+            case "DDAG":
+                return new DDAG(classifier, concurrent);
+            default:
+                return classifier;
+        }
+    }
+
+    /**
+     * Trains every classifier with its current settings on part of the
+     * current data, optionally with every meta and multi-class method, and
+     * ranks them on the rest of the data in a {@link Leaderboard}
+     */
+    private void sweep()
+    {
+        final Dataset2D points = dataSet;
+        if(points == null)
+        {
+            JOptionPane.showMessageDialog(rootPane, "Please load a data set first", "Sweep Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JCheckBox everyMeta = new JCheckBox("With every Meta method");
+        JCheckBox everyMultiClass = new JCheckBox("With every Multi-Class Handling method");
+        JSpinner testFraction = new JSpinner(new SpinnerNumberModel(0.3, 0.05, 0.95, 0.05));
+        JPanel options = new JPanel(new GridLayout(0, 1));
+        options.add(everyMeta);
+        options.add(everyMultiClass);
+        options.add(new JLabel("Fraction of points held out for testing"));
+        options.add(testFraction);
+        if(JOptionPane.showConfirmDialog(rootPane, options, "Train Everything", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+            return;
+
+        List<String> metas = everyMeta.isSelected() ? Arrays.asList(META_METHODS) : Collections.singletonList(getSelectedMeta());
+        List<String> multiClasses = everyMultiClass.isSelected() ? Arrays.asList(MULTI_CLASS_METHODS) : Collections.singletonList(getSelectedMultiClass());
+
+        final Dataset2D[] parts = ModelSweep.split(points.weighted(getWeighting()), ((Number) testFraction.getValue()).doubleValue(), SessionRandom.stream("Sweep Split"));
+
+        final Leaderboard leaderboard = new Leaderboard("Classifier Sweep", "Accuracy", true, classifierss.size()*metas.size()*multiClasses.size());
+        leaderboard.setLocationRelativeTo(this);
+        leaderboard.setVisible(true);
+
+        final boolean parallel = jCheckBoxMenuItemParallel.isSelected();
+        final SubModels subModels = getSubModels();
+        final DataTransformProcess transforms = transformsMenu.getDataTransformProcess().clone();
+        final JobScheduler scheduler = JobScheduler.getInstance();
+        final int cores = parallel ? scheduler.getCoreBudget() : 1;
+        for(Map.Entry<String, Classifier> entry : classifierss.entrySet())
+            for(String meta : metas)
+                for(String multiClass : multiClasses)
+                {
+                    String label = entry.getKey();
+                    if(!meta.equals(META_NONE))
+                        label = meta + " " + label;
+                    if(!multiClass.equals(MULTI_CLASS_NATIVE))
+                        label = multiClass + " " + label;
+                    final String modelName = label;
+                    final Classifier withMeta = withMeta(entry.getValue().clone(), meta, entry.getKey(), parts[0]);
+                    scheduler.submit("Sweep " + modelName, cores, (threads) ->
                     {
-                        
-                        if (equalWeight)
-                        {
-                            double[] priors = dataSet.getPriors();
-                            for (int i1 = 0; i1 < dataSet.getSampleSize(); i1++)
-                                dataSet.getDataPoint(i1).setWeight(1.0 - priors[dataSet.getDataPointCategory(i1)]);
-                        }
-                        else
-                            for (int i2 = 0; i2 < dataSet.getSampleSize(); i2++)
-                                dataSet.getDataPoint(i2).setWeight(1.0);
-                        
                         try
                         {
-                            if(jCheckBoxMenuItemParallel.isSelected())
-                                finalClassifier.trainC(dataSet, execService);
-                            else
-                                finalClassifier.trainC(dataSet);
+                            Classifier toTrain = forCurrentJob(withMeta, multiClass, subModels, parts[0].getClassCount(), parallel, transforms);
+                            leaderboard.add(ModelSweep.classification(modelName, toTrain, parts[0], parts[1], parallel ? threads : null));
                         }
-                        catch(final Exception ex)
+                        catch(Exception ex)
                         {
-                            SwingUtilities.invokeLater(() ->
-                            {
-                                JOptionPane.showMessageDialog(rootPane, "Error: " + ex.getMessage(), "Error ", JOptionPane.ERROR_MESSAGE);
-                            });
-                            
-                            return;
+                            if(!JobScheduler.currentJob().isCancelled())
+                                leaderboard.add(new ModelSweep.Result(modelName, String.valueOf(ex.getMessage())));
+                            throw ex;
                         }
-                        
-                        ClassificationPlot cp = Plot.classification(dataSet, finalClassifier);
-                        cp.setResolution(plotResolution);
-                        cp.setHardBoundaries(jCheckBoxMenuItemHardBoundaries.isSelected());
-                        plotList.add(cp);
-                        
-                        final JFXPanel fxPanel = new JFXPanel();
-                        Platform.runLater(() ->
-                        {
-                            fxPanel.setScene(new Scene(new BorderPane(cp)));
-                        });
-                        centerTabbed.add(prefix + name, fxPanel);
                     });
                 }
-                catch (InterruptedException ex)
+    }
+
+    /**
+     * Cross validates a classifier with its current settings and the current
+     * meta, multi-class and transform settings, showing the accuracy of every
+     * fold in a {@link Leaderboard} as it finishes
+     */
+    private void crossValidate()
+    {
+        final Dataset2D points = dataSet;
+        if(points == null)
+        {
+            JOptionPane.showMessageDialog(rootPane, "Please load a data set first", "Cross Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JComboBox<String> model = new JComboBox<>(classifierss.keySet().toArray(new String[0]));
+        JSpinner folds = new JSpinner(new SpinnerNumberModel(5, 2, 20, 1));
+        JCheckBox stratified = new JCheckBox("Stratified folds", true);
+        JPanel options = new JPanel(new GridLayout(0, 1));
+        options.add(model);
+        options.add(new JLabel("Number of folds"));
+        options.add(folds);
+        options.add(stratified);
+        if(JOptionPane.showConfirmDialog(rootPane, options, "Cross Validate", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+            return;
+
+        final String name = (String) model.getSelectedItem();
+        final int k = ((Number) folds.getValue()).intValue();
+        if(points.size() < k)
+        {
+            JOptionPane.showMessageDialog(rootPane, "There are fewer points than folds", "Cross Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final String meta = getSelectedMeta();
+        final String multiClass = getSelectedMultiClass();
+        final SubModels subModels = getSubModels();
+        final boolean parallel = jCheckBoxMenuItemParallel.isSelected();
+        final DataTransformProcess transforms = transformsMenu.getDataTransformProcess().clone();
+        final int cores = parallel ? Math.max(1, JobScheduler.getInstance().getCoreBudget()/k) : 1;
+        Classifier toTrain = withMeta(classifierss.get(name).clone(), meta, name, points);
+
+        final Leaderboard leaderboard = new Leaderboard("Cross Validate " + name, "Accuracy", true, k);
+        leaderboard.setLocationRelativeTo(this);
+        leaderboard.setVisible(true);
+
+        //the multi-class method and transforms are added by each fold's job, once it knows its cores
+        CrossValidation<Classifier> cv = new CrossValidation<>(name, toTrain, Classifier::clone, (foldName, fold, train, test, threads) ->
+        {
+            Classifier wrapped = forCurrentJob(fold, multiClass, subModels, train.getClassCount(), parallel, transforms);
+            return ModelSweep.cachedClassification(foldName, wrapped, cacheKey(fold, multiClass, transforms, train), train, test, threads);
+        }, k, stratified.isSelected());
+        cv.start(points.weighted(getWeighting()), SessionRandom.stream("Cross Validation"), cores, leaderboard::add)
+                .thenAccept((report) -> leaderboard.setSummary(String.format("mean accuracy %.4f +/- %.4f", report.getMean(), report.getStandardDeviation())));
+    }
+
+    /**
+     * Searches for the best values of the numeric parameters of a classifier,
+     * with the current meta, multi-class and transform settings, and shows
+     * the best one found in a new tab
+     * @param name the name of the classifier
+     * @param classifier the classifier, which is not changed
+     */
+    private void searchParameters(final String name, final Classifier classifier)
+    {
+        final Dataset2D points = dataSet;
+        if(points == null)
+        {
+            JOptionPane.showMessageDialog(rootPane, "Please load a data set first", "Search Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        ParameterSearchDialog.Settings settings = ParameterSearchDialog.show(rootPane, name, (Parameterized) classifier);
+        if(settings == null)
+            return;
+
+        final Dataset2D all = points.weighted(getWeighting());
+        final Dataset2D[] parts = ModelSweep.split(all, settings.validationFraction, SessionRandom.stream("Search Split"));
+        final String meta = getSelectedMeta();
+        final String multiClass = getSelectedMultiClass();
+        final DataTransformProcess transforms = transformsMenu.getDataTransformProcess().clone();
+        final boolean parallel = jCheckBoxMenuItemParallel.isSelected();
+
+        final Leaderboard leaderboard = new Leaderboard("Search " + name, "Accuracy", true, 0);
+        leaderboard.setLocationRelativeTo(this);
+        leaderboard.setVisible(true);
+
+        ParameterSearch<Classifier> search = new ParameterSearch<>(name, classifier, Classifier::clone,
+                (model) -> new DataModelPipeline(withMultiClass(withMeta(model, meta, name, parts[0]), multiClass, false), transforms.clone()),
+                settings.ranges, ModelSweep::classification, true, leaderboard,
+                (best, description) ->
                 {
-                    Logger.getLogger(ClusterToyWorld.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            });
-            
-            jMenuClassifiers.add(menuItem);
+                    //the winner only saw the training part, the tab shows and follows all of the points
+                    final String title = "Best " + name + " (" + description + ")";
+                    final JobScheduler scheduler = JobScheduler.getInstance();
+                    scheduler.submit("Retrain " + title, parallel ? scheduler.getCoreBudget() : 1, (threads) ->
+                    {
+                        final Classifier retrained = best.clone();
+                        if(parallel)
+                            retrained.trainC(all.asClassificationDataSet(), threads);
+                        else
+                            retrained.trainC(all.asClassificationDataSet());
+                        addPlotTab(title, all, retrained, JobScheduler.currentJob());
+                    });
+                },
+                (reason) -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(rootPane, reason, "Search Error", JOptionPane.ERROR_MESSAGE)));
+        search.start(settings.random ? search.random(settings.randomCount, SessionRandom.stream("Search " + name)) : search.grid(), parts[0], parts[1]);
+    }
+
+    /**
+     * A tab showing a trained classifier, which follows the points appended
+     * to the data set it was trained on
+     */
+    private static class ModelTab
+    {
+        final String title;
+        final JFXPanel fxPanel;
+        /**
+         * The classifier shown, guarded by this tab
+         */
+        Classifier trained;
+        /**
+         * The points the classifier has been trained on, guarded by this tab
+         */
+        Dataset2D points;
+        /**
+         * The plot shown, only touched from the event thread
+         */
+        ClassificationSurfacePlot plot;
+
+        ModelTab(String title, JFXPanel fxPanel, Classifier trained, Dataset2D points, ClassificationSurfacePlot plot)
+        {
+            this.title = title;
+            this.fxPanel = fxPanel;
+            this.trained = trained;
+            this.points = points;
+            this.plot = plot;
         }
-        
-        
-        //loop forever, eating jobs and updating the counter
-        backgroundThread = new Thread(() -> 
+    }
+
+    /**
+     * Plots a trained classifier in a new tab. May be called from any thread.
+     * @param title the title of the tab
+     * @param points the data the classifier was trained on
+     * @param trained the trained classifier
+     * @param job the job that trained the classifier, no tab is added if it
+     * has been cancelled. May be {@code null}
+     */
+    private void addPlotTab(final String title, final Dataset2D points, Classifier trained, final JobScheduler.Job job)
+    {
+        final ClassificationSurfacePlot cp = newPlot(points, trained);
+        final JFXPanel fxPanel = new JFXPanel();
+        Platform.runLater(() ->
         {
-            while(true)
+            fxPanel.setScene(new Scene(new BorderPane(cp)));
+        });
+        //several jobs finish at once, so only touch the tabs from the event thread
+        SwingUtilities.invokeLater(() ->
+        {
+            if(job != null && job.isCancelled())
+                return;
+            plotList.add(cp);
+            centerTabbed.add(title, fxPanel);
+            ModelTab tab = new ModelTab(title, fxPanel, trained, points, cp);
+            modelTabs.add(tab);
+            updateActivePlots();
+            //points may have been appended while the classifier was training
+            if(dataSet.isAppendedTo(points) && dataSet.size() > points.size())
+                updateTab(tab);
+        });
+    }
+
+    /**
+     * Lets only the plot in the selected tab render its surface, so hidden
+     * tabs do not take cores from the one being looked at. Must be called
+     * from the event thread.
+     */
+    private static void updateActivePlots()
+    {
+        for(ModelTab tab : modelTabs)
+            tab.plot.setActive(centerTabbed.getSelectedComponent() == tab.fxPanel);
+    }
+
+    private ClassificationSurfacePlot newPlot(Dataset2D points, Classifier trained)
+    {
+        final ClassificationSurfacePlot cp = new ClassificationSurfacePlot(points, trained);
+        cp.setResolution(plotResolution);
+        cp.setHardBoundaries(jCheckBoxMenuItemHardBoundaries.isSelected());
+        cp.setAdaptive(jCheckBoxMenuItemAdaptive.isSelected());
+        return cp;
+    }
+
+    /**
+     * Appends points to the current data set, and brings every trained
+     * classifier up to date with them. Must be called from the event thread.
+     * @param more the points to append
+     */
+    private void appendDataSet(Dataset2D more)
+    {
+        if(dataSet == null)
+        {
+            setDataSet(more);
+            return;
+        }
+        final Dataset2D appended;
+        try
+        {
+            appended = dataSet.append(more);
+        }
+        catch(IllegalArgumentException ex)
+        {
+            JOptionPane.showMessageDialog(rootPane, ex.getMessage(), "Append Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        dataSet = appended;
+        final JFXPanel fxPanel = dataPanel;
+        Platform.runLater(() ->
+        {
+            fxPanel.setScene(new Scene(new BorderPane(new ScatterPlot2D(appended))));
+        });
+        for(ModelTab tab : modelTabs)
+            updateTab(tab);
+    }
+
+    /**
+     * Brings the classifier of a tab up to date with the points appended to
+     * the data set since it was trained, and plots it again in the same tab.
+     * A classifier that is an {@link UpdateableClassifier} is given only the
+     * new points, in order, on a copy so the old plot keeps working until the
+     * new one replaces it. Any other classifier is trained again on all of
+     * the points. Must be called from the event thread.
+     * @param tab the tab to update
+     */
+    private void updateTab(final ModelTab tab)
+    {
+        final boolean online = tab.trained instanceof UpdateableClassifier;
+        final boolean parallel = jCheckBoxMenuItemParallel.isSelected();
+        final JobScheduler scheduler = JobScheduler.getInstance();
+        scheduler.submit("Update " + tab.title, !online && parallel ? scheduler.getCoreBudget() : 1, (threads) ->
+        {
+            final JobScheduler.Job job = JobScheduler.currentJob();
+            final ClassificationSurfacePlot cp;
+            //updates of one tab must be applied in order, each from where the last one left off
+            synchronized(tab)
             {
-                try
+                final Dataset2D points = dataSet.weighted(getWeighting());
+                if(!points.isAppendedTo(tab.points) || points.size() == tab.points.size())
+                    return;
+                final ClassificationDataSet data = points.asClassificationDataSet();
+                Classifier next;
+                //a new class needs a classifier set up for more classes
+                if(tab.trained instanceof UpdateableClassifier && points.getClassCount() == tab.points.getClassCount())
                 {
-                    Runnable toRun = backgroundJobQueue.take();
-                    jLabelInfo.setVisible(true);
-                    validate();
-                    repaint();
-                    toRun.run();
-                    int now = waitingFor.decrementAndGet();
-                    if(now > 0)
-                        jLabelInfo.setText("Waiting on " + now + " jobs...");
-                    else
-                        jLabelInfo.setText(" ");
+                    UpdateableClassifier updated = ((UpdateableClassifier) tab.trained).clone();
+                    for(int i = tab.points.size(); i < points.size(); i++)
+                        updated.update(data.getDataPoint(i), points.label[i]);
+                    next = updated;
                 }
-                catch (InterruptedException ex)
+                else
                 {
-                    Logger.getLogger(ClusterToyWorld.class.getName()).log(Level.SEVERE, null, ex);
+                    next = tab.trained.clone();
+                    if(parallel)
+                        next.trainC(data, threads);
+                    else
+                        next.trainC(data);
                 }
+                if(job.isCancelled())
+                    return;
+                tab.trained = next;
+                tab.points = points;
+                cp = newPlot(points, next);
             }
+            Platform.runLater(() ->
+            {
+                tab.fxPanel.setScene(new Scene(new BorderPane(cp)));
+            });
+            SwingUtilities.invokeLater(() ->
+            {
+                //the old plot may still be rendering the old classifier
+                tab.plot.release();
+                plotList.remove(tab.plot);
+                plotList.add(cp);
+                tab.plot = cp;
+                updateActivePlots();
+            });
         });
-        backgroundThread.setDaemon(true);
-        backgroundThread.start();
+    }
+
+    /**
+     * Makes the given data set the current one, replacing all of the tabs. 
+     * Must be called from the event thread. 
+     * @param loaded the fully loaded and rescaled data set
+     */
+    private void setDataSet(Dataset2D loaded)
+    {
+        dataSet = loaded;
         
-        setSize(600, 400);
+        final JFXPanel fxPanel = new JFXPanel();
+        dataPanel = fxPanel;
+        Platform.runLater(() ->
+        {
+            fxPanel.setScene(new Scene(new BorderPane(new ScatterPlot2D(loaded))));
+        });
+
+        if(centerTabbed != null)
+        {
+            remove(centerTabbed);
+            plotList.clear();
+            for(ModelTab tab : modelTabs)
+                tab.plot.release();
+            modelTabs.clear();
+        }
+
+        centerTabbed = new JTabbedPane();
+        centerTabbed.addChangeListener((e) -> updateActivePlots());
+        centerTabbed.add("Original Data Set", fxPanel);
+
+        add(centerTabbed, BorderLayout.CENTER);
+        getContentPane().validate();
+        getContentPane().repaint();
     }
 
     public static void showParameterizedDialog(Window window, Object classifier)
@@ -455,142 +1077,33 @@ public class ClassifierToyWorld extends javax.swing.JFrame
         if (returnVal == JFileChooser.APPROVE_OPTION) 
         {
             File file = fileChooser.getSelectedFile();
-            String extension = file.toString().substring(file.toString().lastIndexOf(".")+1);
-
-            //the data set we are loading
-            ClassificationDataSet tmpDataSet;
-            
-            if(extension.equalsIgnoreCase("arff"))
+            ArffDataLoader.Projection projection = null;
+            if(ArffDataLoader.isArff(file))
             {
-                DataSet loaded = ARFFLoader.loadArffFile(file);
-                if (loaded.getNumCategoricalVars() == 0)
-                {
-                    SwingUtilities.invokeLater(() ->
-                    {
-                        JOptionPane.showMessageDialog(this, 
-                                "The loaded dataset dosn't have any categorical features to be the classification target ", 
-                                "Loading ARFF File Error", JOptionPane.ERROR_MESSAGE);
-                    });
+                projection = ArffColumnChooser.choose(this, file, true);
+                if(projection == null)
                     return;
-                }
-                else if(loaded.getNumCategoricalVars() > 1)
-                {
-                    //TODO instead lets display a dialog and have the user pick which one they want
-                    SwingUtilities.invokeLater(() ->
-                    {
-                        JOptionPane.showMessageDialog(this, 
-                                "The loaded dataset dosn't has more than one categorical features, using " + loaded.getCategoryName(loaded.getNumCategoricalVars()-1), 
-                                "Loading ARFF, multiple options", JOptionPane.ERROR_MESSAGE);
-                    });
-                }
-                
-                tmpDataSet = new ClassificationDataSet(loaded, loaded.getNumCategoricalVars()-1);
             }
-            else if(extension.equalsIgnoreCase("txt"))
-            {
-                /** 
-                 * Maps each unique string to its class ID
-                 */
-                Map<String, Integer> options = new HashMap<>();
-                /**
-                 * Maps the point index to its end class
-                 */
-                List<Integer> pointClass = new ArrayList<>();
-                List<Vec> pointVecs = new ArrayList<>();
-                try
-                {
-                    BufferedReader br = new BufferedReader(new FileReader(file));
-                    String line;
-                    while((line = br.readLine()) != null)
-                    {
-                        String[] split = line.trim().split("[\\s,]+");
-                        if(split.length < 3)
-                            continue;
-                        pointVecs.add(toDenseVec(parseDouble(split[0]),parseDouble(split[1])));
-                        //map to a class for the 3rd index
-                        split[2] = split[2].trim();
-                        if(!options.containsKey(split[2]))
-                            options.put(split[2], options.size());
-                        pointClass.add(options.get(split[2]));
-                    }
-                    
-                    //Now create the dpList
-                    CategoricalData[] catData = new CategoricalData[] { new CategoricalData(options.size()) } ;
-                    //convert everything to a data set
-                    List<DataPoint> dpList = new ArrayList<>();
-                    for(int i = 0; i < pointVecs.size(); i++)
-                    {
-                        DataPoint dp = new DataPoint(pointVecs.get(i), new int[]{pointClass.get(i)}, catData);
-                        dpList.add(dp);
-                    }
-                    
-                    //empty? Means none of the lines looked like data points
-                    if(dpList.isEmpty())
-                    {
-                        SwingUtilities.invokeLater(() ->
-                        {
-                            JOptionPane.showMessageDialog(this, 
-                                    "The text file dosn't appear to be formated as \"#, #, className\", no lines were found matching this pattern", 
-                                    "Loading Text File Failure", JOptionPane.ERROR_MESSAGE);
-                        });
-                    }
-                    
-                    tmpDataSet = new ClassificationDataSet(new SimpleDataSet(dpList), 0);
-                }
-                catch(IOException | NumberFormatException ex)
-                {
-                    SwingUtilities.invokeLater(() ->
-                    {
-                        JOptionPane.showMessageDialog(this,
-                                "The dataset failed to load with the following error:\n" + ex.getMessage(),
-                                "Loading Text File Failure", JOptionPane.ERROR_MESSAGE);
-                    });
-                    return;
-                }
-            }
-            else
+            if(currentLoad != null)
+                currentLoad.abort();
+            
+            final DatasetLoadTask<Dataset2D> load = new DatasetLoadTask<>(file, true, projection, ComputeRuntime.getPool(), (points) ->
             {
-                SwingUtilities.invokeLater(() ->
-                {
-                    JOptionPane.showMessageDialog(this,
-                            "An unkown error occured, please report bug",
-                            "Unkown Issue", JOptionPane.ERROR_MESSAGE);
-                });
-                return;
-            }
-
-            if(tmpDataSet.getNumNumericalVars() != 2)
+                //same [0, 1] rescaling as LinearTransform, done in place
+                points.rescale(0, 1);
+                return points;
+            }, this::setDataSet, (message) ->
             {
-                SwingUtilities.invokeLater(() ->
-                {
-                    JOptionPane.showMessageDialog(this,
-                            "The data set that was loaded had more than 2 numerical features.\nThis tool is only meant for 2D problems",
-                            "Dataset Issue", JOptionPane.ERROR_MESSAGE);
-                });
-            }
-            
-            System.out.println("Loaded, N: " + tmpDataSet.getSampleSize());
-            dataSet = tmpDataSet;
-            dataSet.applyTransform(new LinearTransform(dataSet));
-            
-            final JFXPanel fxPanel = new JFXPanel();
-            Platform.runLater(() ->
+                JOptionPane.showMessageDialog(this, message, "Loading Error", JOptionPane.ERROR_MESSAGE);
+            }, jLabelInfo);
+            load.addPropertyChangeListener((e) ->
             {
-                fxPanel.setScene(new Scene(new BorderPane(Plot.scatterC(dataSet))));
+                if(load.isDone() && load == currentLoad)
+                    jMenuItemCancelLoad.setEnabled(false);
             });
-            
-            if(centerTabbed != null)
-            {
-                remove(centerTabbed);
-                plotList.clear();
-            }
-            
-            centerTabbed = new JTabbedPane();
-            centerTabbed.add("Original Data Set", fxPanel);
-
-            add(centerTabbed, BorderLayout.CENTER);
-            getContentPane().validate();
-            getContentPane().repaint();
+            currentLoad = load;
+            jMenuItemCancelLoad.setEnabled(true);
+            load.start();
         }
     }//GEN-LAST:event_jMenuItemOpenActionPerformed
 
@@ -16,36 +16,19 @@
  */
 package com.edwardraff.toyworld;
 
-import com.edwardraff.jsatfx.Plot;
 import com.edwardraff.jsatfx.swing.ParameterPanel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javax.swing.JFileChooser;
-import jsat.ARFFLoader;
-import jsat.DataSet;
-import jsat.classifiers.CategoricalData;
-import jsat.classifiers.DataPoint;
-import static jsat.linear.DenseVector.toDenseVec;
-import static java.lang.Double.*;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 import javafx.application.Platform;
 import javafx.embed.swing.JFXPanel;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
 import javax.swing.*;
 import jsat.*;
-import jsat.classifiers.ClassificationDataSet;
 import jsat.clustering.*;
 import jsat.clustering.dissimilarity.AverageLinkDissimilarity;
 import jsat.clustering.dissimilarity.CentroidDissimilarity;
@@ -58,12 +41,10 @@ import jsat.clustering.hierarchical.DivisiveGlobalClusterer;
 import jsat.clustering.hierarchical.DivisiveLocalClusterer;
 import jsat.clustering.hierarchical.PriorityHAC;
 import jsat.clustering.kmeans.*;
-import jsat.datatransform.LinearTransform;
 import jsat.linear.distancemetrics.EuclideanDistance;
 import jsat.linear.distancemetrics.NormalizedEuclideanDistance;
 import jsat.linear.vectorcollection.VectorArray;
 import jsat.parameters.Parameterized;
-import jsat.utils.SystemInfo;
 
 /**
  *
@@ -72,21 +53,29 @@ import jsat.utils.SystemInfo;
 @SuppressWarnings("serial")
 public class ClusterToyWorld extends javax.swing.JFrame
 {
-    private static DataSet dataSet;
+    private static volatile Dataset2D dataSet;
     final JFileChooser fileChooser = new JFileChooser();
+    /**
+     * The data set load currently running in the background, if any
+     */
+    private DatasetLoadTask<Dataset2D> currentLoad;
+    private final JMenuItem jMenuItemCancelLoad = new JMenuItem("Cancel Load");
     private static JTabbedPane centerTabbed;
     private static TransformsMenu transformsMenu;
-    private static final AtomicInteger waitingFor = new AtomicInteger(0);
-    private static BlockingQueue<Runnable> backgroundJobQueue;
-    private static Thread backgroundThread;
-    private static final ExecutorService execService = Executors.newFixedThreadPool(SystemInfo.LogicalCores);
+    
+    /**
+     * The random number generators used by the clusterers that take one, by
+     * name. They are reseeded from the {@link SessionRandom} for every run,
+     * right before the clusterer is copied for it
+     */
+    private static final Map<String, Random> clustererRandoms = new HashMap<>();
     
     private static final Map<String, Clusterer> clusterers = new LinkedHashMap<String, Clusterer>()
     {{
-        put("ElkanKMeans", new ElkanKMeans());
+        put("ElkanKMeans", new ElkanKMeans(new EuclideanDistance(), seededRandom("ElkanKMeans"), SeedSelectionMethods.SeedSelection.KPP));
         put("EMGaussianMixture", new EMGaussianMixture());
         put("MeanShift", new MeanShift());
-        put("CLARA", new CLARA());
+        put("CLARA", new CLARA(new EuclideanDistance(), seededRandom("CLARA"), SeedSelectionMethods.SeedSelection.KPP));
         put("DBSCAN", new DBSCAN(new NormalizedEuclideanDistance(), new VectorArray.VectorArrayFactory()));
         put("LSDBC", new LSDBC());
         put("OPTICS", new OPTICS());
@@ -95,39 +84,87 @@ public class ClusterToyWorld extends javax.swing.JFrame
         put("HAC : Average Link", new PriorityHAC(new AverageLinkDissimilarity(new EuclideanDistance())));
         put("HAC : Centroid Link", new PriorityHAC(new CentroidDissimilarity(new EuclideanDistance())));
         put("HAC : Ward", new PriorityHAC(new WardsDissimilarity()));
-        put("DivisiveLocalClusterer", new DivisiveLocalClusterer(new ElkanKMeans(), new DunnIndex(new MeanCentroidDistance(), new AverageLinkDissimilarity())));
-        put("DivisiveGlobalClusterer", new DivisiveGlobalClusterer(new ElkanKMeans(), new DunnIndex(new MeanCentroidDistance(), new AverageLinkDissimilarity())));
+        put("DivisiveLocalClusterer", new DivisiveLocalClusterer(new ElkanKMeans(new EuclideanDistance(), seededRandom("DivisiveLocalClusterer"), SeedSelectionMethods.SeedSelection.KPP), new DunnIndex(new MeanCentroidDistance(), new AverageLinkDissimilarity())));
+        put("DivisiveGlobalClusterer", new DivisiveGlobalClusterer(new ElkanKMeans(new EuclideanDistance(), seededRandom("DivisiveGlobalClusterer"), SeedSelectionMethods.SeedSelection.KPP), new DunnIndex(new MeanCentroidDistance(), new AverageLinkDissimilarity())));
         put("FLAME", new FLAME(new EuclideanDistance(), 50, 5000));
         
     }};
     
-    private void addClusteringToTabbedDisplay(int kSize, int[] assignments, final String fullName)
+    private static Random seededRandom(String name)
+    {
+        Random rand = new Random(SessionRandom.DEFAULT_SEED);
+        clustererRandoms.put(name, rand);
+        return rand;
+    }
+    
+    /**
+     * Makes the copy of the named clusterer a run uses, with its settings as
+     * they are now and its random number generator, if it has one, seeded
+     * from the {@link SessionRandom}. Must be called from the event thread, in
+     * the order the runs are asked for, so that the same steps give the same
+     * seeds. Every run has its own copy, so runs of the same clusterer need
+     * not take turns, and changing the settings does not change a run that
+     * was already asked for.
+     * @param name the name of the clusterer
+     * @param clusterer the clusterer with the settings chosen by the user
+     * @return the clusterer for the run
+     */
+    private static Clusterer forRun(String name, Clusterer clusterer)
+    {
+        Random rand = clustererRandoms.get(name);
+        if(rand != null)
+            rand.setSeed(SessionRandom.nextSeed("Cluster " + name));
+        //a serialized copy has a generator of its own, in the state just set, where clone() may share it
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(clusterer);
+        }
+        catch (IOException ex)
+        {
+            return clusterer.clone();
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            return (Clusterer) in.readObject();
+        }
+        catch (IOException | ClassNotFoundException ex)
+        {
+            return clusterer.clone();
+        }
+    }
+    
+    /**
+     * Shows the result of a clustering job in a new tab. Must be called from
+     * the job, and does nothing if the job has been cancelled
+     */
+    private void addClusteringToTabbedDisplay(Dataset2D data, int kSize, int[] assignments, final String fullName)
     {
+        final JobScheduler.Job job = JobScheduler.currentJob();
         int min = 0;
         for(int i : assignments)
             min = Math.min(i, min);
         if(min < 0)
             kSize++;
-        CategoricalData cd = new CategoricalData(kSize);
+        String[] clusterNames = new String[kSize];
+        for(int i = 0; i < kSize; i++)
+            clusterNames[i] = "Cluster " + i;
         if(min < 0)
-            cd.setOptionName("Noise", kSize-1);
-        ClassificationDataSet clustering = new ClassificationDataSet(2, new CategoricalData[0], cd);
-        int[] noCats = new int[0];
+            clusterNames[kSize-1] = "Noise";
+        //the assignments array is ours to keep, so noise is relabeled in place
         for (int i = 0; i < assignments.length; i++)
-        {
-            if (assignments[i] >= 0)
-                clustering.addDataPoint(dataSet.getDataPoint(i).getNumericalValues(), noCats, assignments[i]);
-            else
-                clustering.addDataPoint(dataSet.getDataPoint(i).getNumericalValues(), noCats, kSize-1);
-        }
-
+            if (assignments[i] < 0)
+                assignments[i] = kSize-1;
+        final Dataset2D clustering = data.withLabels(assignments, clusterNames);
         
         SwingUtilities.invokeLater(() ->
         {
+            if(job.isCancelled())
+                return;
             final JFXPanel fxPanel = new JFXPanel();
             Platform.runLater(() ->
             {
-                fxPanel.setScene(new Scene(new BorderPane(Plot.scatterC(clustering))));
+                fxPanel.setScene(new Scene(new BorderPane(new ScatterPlot2D(clustering))));
             });
             centerTabbed.add(fullName, fxPanel);
             centerTabbed.setSelectedIndex(centerTabbed.getTabCount() - 1);
@@ -137,6 +174,29 @@ public class ClusterToyWorld extends javax.swing.JFrame
         
     }
 
+    /**
+     * Makes the given data set the current one, replacing all of the tabs. 
+     * Must be called from the event thread. 
+     * @param loaded the fully loaded and rescaled data set
+     */
+    private void setDataSet(Dataset2D loaded)
+    {
+        dataSet = loaded;
+        
+        final JFXPanel fxPanel = new JFXPanel();
+        Platform.runLater(() ->
+        {
+            fxPanel.setScene(new Scene(new BorderPane(new ScatterPlot2D(loaded))));
+        });
+        if(centerTabbed != null)
+            remove(centerTabbed);
+        centerTabbed = new JTabbedPane();
+        centerTabbed.add("Original Data Set", fxPanel);
+        add(centerTabbed, BorderLayout.CENTER);
+        getContentPane().validate();
+        getContentPane().repaint();
+    }
+
     /**
      * Creates new form ClusterToyWorld
      */
@@ -144,31 +204,37 @@ public class ClusterToyWorld extends javax.swing.JFrame
     {
         initComponents();
         jMenuBar1.add(transformsMenu = new TransformsMenu(this));
+        jMenuBar1.add(new GenerateMenu(this, false, (points) ->
+        {
+            //generated data replaces whatever was being loaded
+            if(currentLoad != null)
+                currentLoad.abort();
+            setDataSet(points);
+        }, jLabel1), 1);
         jLabel1.setText(" ");
-        backgroundJobQueue = new LinkedBlockingQueue<>();
-        backgroundThread = new Thread(() -> 
+        jMenuItemCancelLoad.setEnabled(false);
+        jMenuItemCancelLoad.addActionListener((ActionEvent ae) ->
         {
-            while(true)
-            {
-                try
-                {
-                    Runnable toRun = backgroundJobQueue.take();
-                    validate();
-                    repaint();
-                    toRun.run();
-                    int now = waitingFor.decrementAndGet();
-                    if(now > 0)
-                        jLabel1.setText("Waiting on " + now + " jobs...");
-                    else
-                        jLabel1.setText(" ");
-                }
-                catch (InterruptedException ex)
-                {
-                    Logger.getLogger(ClusterToyWorld.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            }
+            if(currentLoad != null)
+                currentLoad.abort();
         });
-        backgroundThread.start();
+        jMenuFile.add(jMenuItemCancelLoad);
+        JMenuItem jMenuItemSeed = new JMenuItem("Session Seed...");
+        jMenuItemSeed.addActionListener((ActionEvent e) -> SessionRandom.showSeedDialog(this));
+        jMenuFile.add(jMenuItemSeed);
+        JMenuItem jMenuItemJobs = new JMenuItem("Jobs...");
+        jMenuItemJobs.addActionListener((ActionEvent e) -> JobListFrame.showJobs(this));
+        jMenuFile.add(jMenuItemJobs);
+        JMenuItem jMenuItemThreads = new JMenuItem("Compute Threads...");
+        jMenuItemThreads.addActionListener((ActionEvent e) -> ComputeRuntime.showParallelismDialog(this));
+        jMenuFile.add(jMenuItemThreads);
+        JMenuItem jMenuItemExportPlots = new JMenuItem("Export Plots as PNG...");
+        jMenuItemExportPlots.addActionListener((ActionEvent e) -> PlotExport.exportTabs(this, centerTabbed, jLabel1));
+        jMenuFile.add(jMenuItemExportPlots);
+        JobScheduler.getInstance().addListener((job) -> SwingUtilities.invokeLater(() ->
+        {
+            jLabel1.setText(JobScheduler.getInstance().getSummary());
+        }));
         jLabel1.setFont(jLabel1.getFont().deriveFont(16));
 
         
@@ -202,36 +268,36 @@ public class ClusterToyWorld extends javax.swing.JFrame
                 JMenuItem clusterItem = new JMenuItem(menuName);
                 clusterItem.addActionListener((ActionEvent ae) ->
                 {
-                    int now = waitingFor.incrementAndGet();
-                    jLabel1.setText("Waiting on " + now + " jobs...");
-                    try
+                    //the data set on screen now is the one to cluster, whatever is loaded while the job waits
+                    final Dataset2D data = dataSet;
+                    if(data == null)
                     {
-                        if(clusterer instanceof Parameterized)
-                        {
-                            ParameterPanel pp = new ParameterPanel((Parameterized) clusterer);
-                            final JDialog jd = new JDialog(getOwner(), "Set Parameters", Dialog.ModalityType.APPLICATION_MODAL);
-                            jd.setContentPane(pp);
-                            pp.getjButtonOk().addActionListener((ActionEvent e) ->
-                            {
-                                jd.setVisible(false);
-                            });
-                            jd.pack();
-                            jd.setVisible(true);
-                        }
-                        backgroundJobQueue.put((Runnable) () ->
+                        JOptionPane.showMessageDialog(rootPane, "Please load a data set first", "Clustering Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    if(clusterer instanceof Parameterized)
+                    {
+                        ParameterPanel pp = new ParameterPanel((Parameterized) clusterer);
+                        final JDialog jd = new JDialog(getOwner(), "Set Parameters", Dialog.ModalityType.APPLICATION_MODAL);
+                        jd.setContentPane(pp);
+                        pp.getjButtonOk().addActionListener((ActionEvent e) ->
                         {
-                            int[] assignments = clusterer.cluster(dataSet, execService, (int[]) null);
-                            String fullName = "Auto " + menuName;
-                            int kSize = 0;
-                            for (int i1 : assignments)
-                                kSize = Math.max(kSize, i1 + 1);
-                            addClusteringToTabbedDisplay(kSize, assignments, fullName);
+                            jd.setVisible(false);
                         });
+                        jd.pack();
+                        jd.setVisible(true);
                     }
-                    catch (InterruptedException ex)
+                    final Clusterer run = forRun(clusterName, clusterer);
+                    final JobScheduler scheduler = JobScheduler.getInstance();
+                    scheduler.submit("Auto " + menuName, scheduler.getCoreBudget(), (threads) ->
                     {
-                        Logger.getLogger(ClusterToyWorld.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                        int[] assignments = run.cluster(data.asDataSet(), threads, (int[]) null);
+                        String fullName = "Auto " + menuName;
+                        int kSize = 0;
+                        for (int i1 : assignments)
+                            kSize = Math.max(kSize, i1 + 1);
+                        addClusteringToTabbedDisplay(data, kSize, assignments, fullName);
+                    });
                 });
 
                 
@@ -263,6 +329,13 @@ public class ClusterToyWorld extends javax.swing.JFrame
                 JMenuItem clusterItem = new JMenuItem(menuName);
                 clusterItem.addActionListener((ActionEvent ae) ->
                 {
+                    //the data set on screen now is the one to cluster, whatever is loaded while the job waits
+                    final Dataset2D data = dataSet;
+                    if(data == null)
+                    {
+                        JOptionPane.showMessageDialog(rootPane, "Please load a data set first", "Clustering Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
                     if(clusterer instanceof Parameterized)
                     {
                         ParameterPanel pp = new ParameterPanel((Parameterized) clusterer);
@@ -282,21 +355,14 @@ public class ClusterToyWorld extends javax.swing.JFrame
                     if(kSize < 0)
                         return;//TODO show an error dialog
                     
-                    int now = waitingFor.incrementAndGet();
-                    jLabel1.setText("Waiting on " + now + " jobs...");
-                    try
+                    final KClusterer run = (KClusterer) forRun(clusterName, clusterer);
+                    final String fullName = "k = " + kSize + " " + menuName;
+                    final JobScheduler scheduler = JobScheduler.getInstance();
+                    scheduler.submit(fullName, scheduler.getCoreBudget(), (threads) ->
                     {
-                        backgroundJobQueue.put((Runnable) () ->
-                        {
-                            int[] assignments = ((KClusterer)clusterer).cluster(dataSet, kSize, execService, (int[])null);
-                            String fullName = "k = " + kSize + " " + menuName;
-                            addClusteringToTabbedDisplay(kSize, assignments, fullName);
-                        });
-                    }
-                    catch (InterruptedException ex)
-                    {
-                        Logger.getLogger(ClusterToyWorld.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                        int[] assignments = run.cluster(data.asDataSet(), kSize, threads, (int[])null);
+                        addClusteringToTabbedDisplay(data, kSize, assignments, fullName);
+                    });
                 });
 
                 targetMenu.add(clusterItem);
@@ -369,58 +435,33 @@ public class ClusterToyWorld extends javax.swing.JFrame
         if (returnVal == JFileChooser.APPROVE_OPTION) 
         {
             File file = fileChooser.getSelectedFile();
-            String extension = file.toString().substring(file.toString().lastIndexOf(".")+1);
-
-            DataSet tmpDataSet = null;
-            
-            if(extension.equalsIgnoreCase("arff"))
+            ArffDataLoader.Projection projection = null;
+            if(ArffDataLoader.isArff(file))
             {
-                tmpDataSet = ARFFLoader.loadArffFile(file);
-            }
-            else if(extension.equalsIgnoreCase("txt"))
-            {
-                List<DataPoint> dpList = new ArrayList<>();
-                int[] noCatVals = new int[0];
-                CategoricalData[] noCats = new CategoricalData[0];
-                try
-                {
-                    BufferedReader br = new BufferedReader(new FileReader(file));
-                    String line;
-                    while((line = br.readLine()) != null)
-                    {
-                        String[] split = line.trim().split("[\\s,]+");
-                        if(split.length < 2)
-                            continue;
-                        DataPoint dp = new DataPoint(toDenseVec(parseDouble(split[0]),parseDouble(split[1])), noCatVals, noCats);
-                        dpList.add(dp);
-                    }
-                    
-                    tmpDataSet = new SimpleDataSet(dpList);
-                }
-                catch(IOException ex)
-                {
-                    
-                }
+                projection = ArffColumnChooser.choose(this, file, false);
+                if(projection == null)
+                    return;
             }
+            if(currentLoad != null)
+                currentLoad.abort();
             
-            if(tmpDataSet.getNumNumericalVars() != 2)
-                return;//TODO throw an error
-            
-            dataSet = tmpDataSet;
-            dataSet.applyTransform(new LinearTransform(dataSet, 0, 1));
-            
-            final JFXPanel fxPanel = new JFXPanel();
-            Platform.runLater(() ->
+            final DatasetLoadTask<Dataset2D> load = new DatasetLoadTask<>(file, false, projection, ComputeRuntime.getPool(), (points) ->
+            {
+                //same [0, 1] rescaling as LinearTransform, done in place
+                points.rescale(0, 1);
+                return points;
+            }, this::setDataSet, (message) ->
+            {
+                JOptionPane.showMessageDialog(this, message, "Loading Error", JOptionPane.ERROR_MESSAGE);
+            }, jLabel1);
+            load.addPropertyChangeListener((e) ->
             {
-                fxPanel.setScene(new Scene(new BorderPane(Plot.scatter(dataSet))));
+                if(load.isDone() && load == currentLoad)
+                    jMenuItemCancelLoad.setEnabled(false);
             });
-            if(centerTabbed != null)
-                remove(centerTabbed);
-            centerTabbed = new JTabbedPane();
-            centerTabbed.add("Original Data Set", fxPanel);
-            add(centerTabbed, BorderLayout.CENTER);
-            getContentPane().validate();
-            getContentPane().repaint();
+            currentLoad = load;
+            jMenuItemCancelLoad.setEnabled(true);
+            load.start();
         }
     }//GEN-LAST:event_jMenuItemOpenActionPerformed
 
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.Component;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.JOptionPane;
+import jsat.utils.SystemInfo;
+
+/**
+ * The threads all of the worlds compute with. Loading, generating, indexing
+ * and drawing data run on one work stealing pool shared by every open world,
+ * and training jobs are given cores out of the same budget by the
+ * {@link JobScheduler}, so opening more worlds never puts more threads to work
+ * than there are cores.<br>
+ * <br>
+ * The parallelism starts as the {@code toyworld.threads} system property, or
+ * the number of logical cores if it is not set. All of the threads are
+ * daemons, and everything is shut down when the JVM exits.
+ *
+ * @author Edward Raff
+ */
+public class ComputeRuntime
+{
+    /**
+     * How long to wait for running work to finish when shutting down
+     */
+    private static final long SHUTDOWN_WAIT_MILLIS = 1000;
+
+    private static int parallelism = Math.max(1, Integer.getInteger("toyworld.threads", SystemInfo.LogicalCores));
+    private static ForkJoinPool pool;
+    private static boolean shutdown = false;
+
+    static
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread(ComputeRuntime::shutdown, "ToyWorld Shutdown"));
+    }
+
+    private ComputeRuntime()
+    {
+    }
+
+    /**
+     *
+     * @return the pool to run work on
+     * @throws IllegalStateException if the runtime has been shut down
+     */
+    public static synchronized ForkJoinPool getPool()
+    {
+        if(shutdown)
+            throw new IllegalStateException("The compute runtime has been shut down");
+        if(pool == null)
+            pool = newPool(parallelism);
+        return pool;
+    }
+
+    /**
+     *
+     * @return the number of threads work is run on
+     */
+    public static synchronized int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Changes the number of threads work is run on. Work already given to the
+     * old pool finishes there, and the core budget of the
+     * {@link JobScheduler} is changed to match.
+     * @param parallelism the number of threads to use
+     */
+    public static void setParallelism(int parallelism)
+    {
+        if(parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive, not " + parallelism);
+        synchronized(ComputeRuntime.class)
+        {
+            if(shutdown || parallelism == ComputeRuntime.parallelism)
+                return;
+            ComputeRuntime.parallelism = parallelism;
+            if(pool != null)
+            {
+                pool.shutdown();
+                pool = newPool(parallelism);
+            }
+        }
+        JobScheduler.getInstance().setCoreBudget(parallelism);
+    }
+
+    /**
+     * Cancels every job, and stops the pool once the work running on it
+     * finishes or a short wait runs out. Called when the JVM exits, it is
+     * safe to call more than once.
+     */
+    public static void shutdown()
+    {
+        ForkJoinPool toStop;
+        synchronized(ComputeRuntime.class)
+        {
+            if(shutdown)
+                return;
+            shutdown = true;
+            toStop = pool;
+            pool = null;
+        }
+        JobScheduler.getInstance().shutdown();
+        if(toStop == null)
+            return;
+        toStop.shutdown();
+        try
+        {
+            if(!toStop.awaitTermination(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                toStop.shutdownNow();
+        }
+        catch (InterruptedException ex)
+        {
+            toStop.shutdownNow();
+        }
+    }
+
+    /**
+     * Asks the user for the number of threads to use
+     * @param parent the component to show the dialog over
+     */
+    public static void showParallelismDialog(Component parent)
+    {
+        String input = JOptionPane.showInputDialog(parent, "Number of threads to compute with (" + SystemInfo.LogicalCores + " cores)", getParallelism());
+        if(input == null)
+            return;
+        try
+        {
+            setParallelism(Integer.parseInt(input.trim()));
+        }
+        catch (IllegalArgumentException ex)
+        {
+            JOptionPane.showMessageDialog(parent, "The number of threads must be a positive integer", "Threads Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static ForkJoinPool newPool(int parallelism)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return new ForkJoinPool(parallelism, (ForkJoinPool p) ->
+        {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("ToyWorld Compute " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Estimates how well a model does on points it was not trained on with k-fold
+ * cross validation. The points are split into k folds, and every fold is
+ * scored by a copy of the model trained on all of the other folds. Every fold
+ * is trained as its own job of the {@link JobScheduler}, so the folds are
+ * trained at once, and the score of every fold is given out as soon as it is
+ * known. <br>
+ * Any transforms of the model are fit again on the training part of every
+ * fold, so nothing is learned from the points a fold is scored on. A fold
+ * whose model was already trained on the same points is taken from the
+ * {@link ModelCache} by the {@link ModelSweep#cachedClassification cached}
+ * trials, so running the same cross validation again, or with only the number
+ * of threads changed, does not train anything.
+ *
+ * @author Edward Raff
+ * @param <M> the type of the model
+ */
+public class CrossValidation<M>
+{
+    /**
+     * The scores of every fold of a cross validation
+     */
+    public static class Report
+    {
+        public final String name;
+        /**
+         * The results of every fold, in fold order. A fold that failed or was
+         * cancelled has a {@code null} result, or one with an error
+         */
+        public final ModelSweep.Result[] folds;
+
+        private Report(String name, ModelSweep.Result[] folds)
+        {
+            this.name = name;
+            this.folds = folds;
+        }
+
+        /**
+         *
+         * @return the number of folds that were scored
+         */
+        public int getScoredFolds()
+        {
+            int scored = 0;
+            for(ModelSweep.Result fold : folds)
+                if(fold != null && fold.error == null)
+                    scored++;
+            return scored;
+        }
+
+        /**
+         *
+         * @return the mean score of the folds that were scored, or
+         * {@code NaN} if none were
+         */
+        public double getMean()
+        {
+            double sum = 0;
+            for(ModelSweep.Result fold : folds)
+                if(fold != null && fold.error == null)
+                    sum += fold.score;
+            return getScoredFolds() == 0 ? Double.NaN : sum/getScoredFolds();
+        }
+
+        /**
+         *
+         * @return the sample standard deviation of the scores of the folds
+         * that were scored, or {@code NaN} if fewer than two were
+         */
+        public double getStandardDeviation()
+        {
+            int scored = getScoredFolds();
+            if(scored < 2)
+                return Double.NaN;
+            double mean = getMean();
+            double sum = 0;
+            for(ModelSweep.Result fold : folds)
+                if(fold != null && fold.error == null)
+                    sum += (fold.score-mean)*(fold.score-mean);
+            return Math.sqrt(sum/(scored-1));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %.4g +/- %.4g over %d of %d folds", name, getMean(), getStandardDeviation(), getScoredFolds(), folds.length);
+        }
+    }
+
+    private final String name;
+    private final M prototype;
+    private final UnaryOperator<M> copier;
+    private final ParameterSearch.Trial<M> trial;
+    private final int k;
+    private final boolean stratified;
+
+    /**
+     *
+     * @param name the name of the model, used for the names of the jobs
+     * @param prototype the untrained model, with all of its wrappers and
+     * transforms. It is not changed.
+     * @param copier makes a copy of the model to train for a fold
+     * @param trial trains and scores a fold
+     * @param k the number of folds
+     * @param stratified {@code true} to give every fold close to the same
+     * share of every class. The points must be labeled.
+     */
+    public CrossValidation(String name, M prototype, UnaryOperator<M> copier, ParameterSearch.Trial<M> trial, int k, boolean stratified)
+    {
+        if(k < 2)
+            throw new IllegalArgumentException("At least 2 folds are needed, not " + k);
+        this.name = name;
+        this.prototype = prototype;
+        this.copier = copier;
+        this.trial = trial;
+        this.k = k;
+        this.stratified = stratified;
+    }
+
+    /**
+     * Splits the points into folds at random
+     * @param data the points to split
+     * @param k the number of folds
+     * @param stratified {@code true} to give every fold close to the same
+     * share of every class
+     * @param rand the source of randomness
+     * @return the index of every point in each fold
+     */
+    public static int[][] folds(Dataset2D data, int k, boolean stratified, SplittableRandom rand)
+    {
+        int n = data.size();
+        if(n < k)
+            throw new IllegalArgumentException("Can not split " + n + " points into " + k + " folds");
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++)
+            order[i] = i;
+        for(int i = n-1; i > 0; i--)
+        {
+            int j = rand.nextInt(i+1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        if(stratified)
+        {
+            if(!data.isLabeled())
+                throw new IllegalArgumentException("Stratified folds need labeled points");
+            //a stable sort by class keeps the random order within each class
+            int[] start = new int[data.getClassCount()+1];
+            for(int l : data.label)
+                start[l+1]++;
+            for(int c = 0; c < data.getClassCount(); c++)
+                start[c+1] += start[c];
+            int[] byClass = new int[n];
+            for(int i : order)
+                byClass[start[data.label[i]]++] = i;
+            order = byClass;
+        }
+
+        //dealing the points out in turn gives every fold an even share of every class
+        int[][] folds = new int[k][];
+        for(int f = 0; f < k; f++)
+            folds[f] = new int[n/k + (f < n%k ? 1 : 0)];
+        for(int i = 0; i < n; i++)
+            folds[i%k][i/k] = order[i];
+        return folds;
+    }
+
+    /**
+     * Starts the cross validation, which runs in the background
+     * @param data the points to cross validate on, which must not change
+     * until every fold has finished, as each fold's job copies its points
+     * out when it starts. A read only data set, such as a
+     * {@link Dataset2D#weighted(Dataset2D.Weighting) weighted} one, is never
+     * changed.
+     * @param rand the source of randomness for the folds
+     * @param threadsPerFold the number of cores to train each fold with
+     * @param onFold given the result of every fold as soon as it is known,
+     * from the thread that trained it
+     * @return the report of all of the folds, completed once every fold has
+     * finished, failed or been cancelled
+     */
+    public CompletableFuture<Report> start(final Dataset2D data, SplittableRandom rand, final int threadsPerFold, final Consumer<ModelSweep.Result> onFold)
+    {
+        final int[][] folds = folds(data, k, stratified, rand);
+        final ModelSweep.Result[] results = new ModelSweep.Result[k];
+        final CompletableFuture<Report> report = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(k);
+        final JobScheduler scheduler = JobScheduler.getInstance();
+        for(int f = 0; f < k; f++)
+        {
+            final int fold = f;
+            final String foldName = "Fold " + (f+1) + " of " + k;
+            final M model = copier.apply(prototype);
+            JobScheduler.Job job = scheduler.submit("Cross Validate " + name + " " + foldName, threadsPerFold, (threads) ->
+            {
+                try
+                {
+                    //copied here, so only the folds that are running hold a copy of the points
+                    final Dataset2D test = data.subset(folds[fold]);
+                    final Dataset2D train = data.subset(rest(folds, fold, data.size()));
+                    results[fold] = trial.run(foldName, model, train, test, threadsPerFold > 1 ? threads : null);
+                }
+                catch(Exception ex)
+                {
+                    if(!JobScheduler.currentJob().isCancelled())
+                        results[fold] = new ModelSweep.Result(foldName, String.valueOf(ex.getMessage()));
+                    throw ex;
+                }
+                finally
+                {
+                    if(results[fold] != null)
+                        onFold.accept(results[fold]);
+                }
+            });
+            //the job ending happens after its writes, so the results are all visible here
+            job.whenFinished(() ->
+            {
+                if(remaining.decrementAndGet() == 0)
+                    report.complete(new Report(name, results.clone()));
+            });
+        }
+        return report;
+    }
+
+    /**
+     *
+     * @return the index of every point not in the given fold
+     */
+    private static int[] rest(int[][] folds, int skip, int n)
+    {
+        int[] rows = new int[n-folds[skip].length];
+        int pos = 0;
+        for(int f = 0; f < folds.length; f++)
+            if(f != skip)
+            {
+                System.arraycopy(folds[f], 0, rows, pos, folds[f].length);
+                pos += folds[f].length;
+            }
+        //keep the points in their original order, as some models care
+        Arrays.sort(rows);
+        return rows;
+    }
+}
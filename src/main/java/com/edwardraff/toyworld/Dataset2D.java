@@ -0,0 +1,1064 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import jsat.DataSet;
+import jsat.SimpleDataSet;
+import jsat.classifiers.CategoricalData;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.DataPoint;
+import jsat.classifiers.DataPointPair;
+import jsat.linear.DenseVector;
+import jsat.linear.Vec;
+import jsat.regression.RegressionDataSet;
+
+/**
+ * Structure of arrays holder for 2D points. Every point costs only its
+ * coordinates, class id and weight in primitive arrays, rather than the
+ * {@link DataPoint}, {@link DenseVector} and empty categorical arrays JSAT
+ * would use for it. <br>
+ * JSAT code can work with the points through the views returned by
+ * {@link #asClassificationDataSet() }, {@link #asRegressionDataSet() } and
+ * {@link #asDataSet() }. The views do not copy anything, their data points are
+ * made on demand and read and write straight through to these arrays. <br>
+ * Jobs that train at the same time should each use a
+ * {@link #weighted(Weighting) weighted} data set. Weighted data sets share
+ * the points of the data set they came from but have their own weights, and
+ * are read only: every view of one gets its own copy of the weights the
+ * first time it changes one, so one job never sees the weights another job
+ * sets.
+ *
+ * @author Edward Raff
+ */
+public class Dataset2D
+{
+    private static final int[] NO_CAT_VALS = new int[0];
+    private static final CategoricalData[] NO_CATS = new CategoricalData[0];
+    private static final AtomicLong NEXT_LINEAGE = new AtomicLong();
+
+    /**
+     * The ways the points of a {@link #weighted(Weighting) weighted} data set
+     * can be weighted
+     */
+    public enum Weighting
+    {
+        /**
+         * Every point has a weight of 1
+         */
+        UNIFORM,
+        /**
+         * Every point is weighted by one minus the fraction of points that
+         * share its class, so that rare classes are not ignored
+         */
+        BALANCED
+    }
+
+    /**
+     * The first coordinate of every point. This is the input for regression
+     */
+    public final double[] x;
+    /**
+     * The second coordinate of every point. This is the target for regression
+     */
+    public final double[] y;
+    /**
+     * The class id of every point, or {@code null} if the points are unlabeled
+     */
+    public final int[] label;
+    /**
+     * The weight of every point
+     */
+    public final double[] weight;
+    /**
+     * The name of each class id, in order of first appearance in the source.
+     * Empty if there are no labels
+     */
+    public final String[] labelNames;
+    /**
+     * How long it took to produce these points, in nanoseconds
+     */
+    private final long elapsedNanos;
+    /**
+     * Minimum and maximum of each coordinate, {@code NaN} until computed
+     */
+    private double minX = Double.NaN, maxX = Double.NaN, minY = Double.NaN, maxY = Double.NaN;
+    /**
+     * Index used to draw zoomed in views of many points, built on first use
+     */
+    private volatile PointGrid grid;
+    /**
+     * Hash of the coordinates and labels, 0 until computed
+     */
+    private volatile long pointsHash;
+    /**
+     * Shared by a data set and every data set made by appending to it
+     */
+    private long lineage = NEXT_LINEAGE.incrementAndGet();
+    /**
+     * {@code true} if the points and weights of this data set are never
+     * changed, as for a weighted data set or a subset
+     */
+    private boolean readOnly = false;
+    /**
+     * The weighted data sets made from this one, by weighting
+     */
+    private final Map<Weighting, Dataset2D> weightedSets = new EnumMap<>(Weighting.class);
+    /**
+     * The vectors of the rows with both coordinates and with just x, made as
+     * they are asked for by the views of this data set
+     */
+    private volatile AtomicReferenceArray<Vec> rowVecs2, rowVecs1;
+
+    /**
+     * Creates a new data set where every point has a weight of 1
+     * @param x the first coordinate of every point
+     * @param y the second coordinate of every point
+     * @param label the class of every point, or {@code null}
+     * @param labelNames the names of the classes
+     * @param elapsedNanos the time spent creating the points
+     */
+    public Dataset2D(double[] x, double[] y, int[] label, String[] labelNames, long elapsedNanos)
+    {
+        this(x, y, label, uniformWeights(x.length), labelNames, elapsedNanos);
+    }
+
+    /**
+     * Creates a new data set, the given arrays are used as is.
+     * @param x the first coordinate of every point
+     * @param y the second coordinate of every point
+     * @param label the class of every point, or {@code null}
+     * @param weight the weight of every point
+     * @param labelNames the names of the classes
+     * @param elapsedNanos the time spent creating the points
+     */
+    public Dataset2D(double[] x, double[] y, int[] label, double[] weight, String[] labelNames, long elapsedNanos)
+    {
+        if(y.length != x.length || weight.length != x.length || (label != null && label.length != x.length))
+            throw new IllegalArgumentException("All columns must have the same length");
+        this.x = x;
+        this.y = y;
+        this.label = label;
+        this.weight = weight;
+        this.labelNames = labelNames;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    private static double[] uniformWeights(int n)
+    {
+        double[] w = new double[n];
+        Arrays.fill(w, 1.0);
+        return w;
+    }
+
+    /**
+     *
+     * @return the number of points held
+     */
+    public int size()
+    {
+        return x.length;
+    }
+
+    /**
+     *
+     * @return {@code true} if every point has a class label
+     */
+    public boolean isLabeled()
+    {
+        return label != null;
+    }
+
+    /**
+     *
+     * @return the number of classes, 0 if unlabeled
+     */
+    public int getClassCount()
+    {
+        return labelNames.length;
+    }
+
+    /**
+     *
+     * @return the time spent loading these points, in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /**
+     *
+     * @return the load throughput in rows per second
+     */
+    public double getRowsPerSecond()
+    {
+        if(elapsedNanos <= 0)
+            return Double.POSITIVE_INFINITY;
+        return size() / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Creates a data set with the same points, but with new labels. The
+     * coordinate and weight arrays are shared, not copied.
+     * @param newLabel the class of every point
+     * @param newLabelNames the names of the classes
+     * @return a labeled data set sharing these points
+     */
+    public Dataset2D withLabels(int[] newLabel, String[] newLabelNames)
+    {
+        Dataset2D relabeled = new Dataset2D(x, y, newLabel, weight, newLabelNames, 0);
+        relabeled.setBounds(minX, maxX, minY, maxY);
+        relabeled.grid = grid;
+        return relabeled;
+    }
+
+    /**
+     * Returns a read only data set with the same points as this one but with
+     * its own weights, which is safe to train on while other jobs train on
+     * other weightings of the same points. The weights are computed once, and
+     * the same data set is returned for every later call with the same
+     * weighting.
+     * @param weighting how to weight the points
+     * @return a read only data set sharing these points
+     */
+    public synchronized Dataset2D weighted(Weighting weighting)
+    {
+        Dataset2D weighted = weightedSets.get(weighting);
+        if(weighted != null)
+            return weighted;
+        double[] newWeight;
+        if(weighting == Weighting.BALANCED && label != null)
+        {
+            int[] counts = new int[getClassCount()];
+            for(int l : label)
+                counts[l]++;
+            newWeight = new double[size()];
+            for(int i = 0; i < size(); i++)
+                newWeight[i] = 1.0 - counts[label[i]]/(double) size();
+        }
+        else
+            newWeight = uniformWeights(size());
+        weighted = new Dataset2D(x, y, label, newWeight, labelNames, elapsedNanos);
+        weighted.setBounds(minX, maxX, minY, maxY);
+        weighted.grid = grid;
+        weighted.pointsHash = pointsHash;
+        weighted.lineage = lineage;
+        weighted.readOnly = true;
+        weightedSets.put(weighting, weighted);
+        return weighted;
+    }
+
+    /**
+     * Copies some of the points into a new, read only data set. Subsets are
+     * how one set of points is handed to many jobs at once, such as the
+     * splits of a sweep or the folds of a cross validation, so each view of
+     * the subset gets its own copy of the weights on the first change, and a
+     * model that reweights the points never changes what another model is
+     * training on.
+     * @param rows the index of every point to copy, in the order wanted
+     * @return a new data set holding copies of the given points
+     */
+    public Dataset2D subset(int[] rows)
+    {
+        double[] newX = new double[rows.length];
+        double[] newY = new double[rows.length];
+        int[] newLabel = label == null ? null : new int[rows.length];
+        double[] newWeight = new double[rows.length];
+        for(int i = 0; i < rows.length; i++)
+        {
+            newX[i] = x[rows[i]];
+            newY[i] = y[rows[i]];
+            if(label != null)
+                newLabel[i] = label[rows[i]];
+            newWeight[i] = weight[rows[i]];
+        }
+        Dataset2D subset = new Dataset2D(newX, newY, newLabel, newWeight, labelNames, 0);
+        subset.readOnly = true;
+        return subset;
+    }
+
+    /**
+     * Creates a data set with all of these points followed by all of the
+     * given points. Classes are matched by name, and classes only found in
+     * the given points are added after the classes of this data set, so the
+     * class ids of these points do not change.
+     * @param more the points to add after these
+     * @return a new data set holding copies of both sets of points
+     */
+    public Dataset2D append(Dataset2D more)
+    {
+        if(isLabeled() != more.isLabeled())
+            throw new IllegalArgumentException("Can not append " + (more.isLabeled() ? "labeled" : "unlabeled") + " points to " + (isLabeled() ? "labeled" : "unlabeled") + " points");
+        int n = size();
+        int m = more.size();
+        double[] newX = Arrays.copyOf(x, n+m);
+        double[] newY = Arrays.copyOf(y, n+m);
+        double[] newWeight = Arrays.copyOf(weight, n+m);
+        System.arraycopy(more.x, 0, newX, n, m);
+        System.arraycopy(more.y, 0, newY, n, m);
+        System.arraycopy(more.weight, 0, newWeight, n, m);
+        if(!isLabeled())
+        {
+            Dataset2D appended = new Dataset2D(newX, newY, null, newWeight, labelNames, 0);
+            appended.lineage = lineage;
+            return appended;
+        }
+
+        List<String> names = new ArrayList<>(Arrays.asList(labelNames));
+        int[] classMap = new int[more.labelNames.length];
+        for(int c = 0; c < classMap.length; c++)
+        {
+            int id = names.indexOf(more.labelNames[c]);
+            if(id < 0)
+            {
+                id = names.size();
+                names.add(more.labelNames[c]);
+            }
+            classMap[c] = id;
+        }
+        int[] newLabel = Arrays.copyOf(label, n+m);
+        for(int i = 0; i < m; i++)
+            newLabel[n+i] = classMap[more.label[i]];
+        Dataset2D appended = new Dataset2D(newX, newY, newLabel, newWeight, names.toArray(new String[names.size()]), 0);
+        appended.lineage = lineage;
+        return appended;
+    }
+
+    /**
+     * Checks if this data set was made by appending points to another, so
+     * that its first points are the points of the other in the same order.
+     * This takes constant time, the points are not compared.
+     * @param earlier the other data set
+     * @return {@code true} if this data set is the other, or the other with
+     * points appended
+     */
+    public boolean isAppendedTo(Dataset2D earlier)
+    {
+        return lineage == earlier.lineage && size() >= earlier.size();
+    }
+
+    /**
+     * Returns the grid index of the points, building it if needed. The points
+     * must not be moved once the grid has been built.
+     * @param pool the threads to build the grid with
+     * @return the grid index of the points
+     */
+    public PointGrid getGrid(ForkJoinPool pool)
+    {
+        PointGrid g = grid;
+        if(g != null)
+            return g;
+        synchronized(this)
+        {
+            if(grid == null)
+                grid = PointGrid.build(this, pool);
+            return grid;
+        }
+    }
+
+    /**
+     *
+     * @return {@code true} if the grid index has already been built
+     */
+    public boolean hasGrid()
+    {
+        return grid != null;
+    }
+
+    /**
+     * Returns a hash of everything a model is trained on: the coordinates,
+     * labels and weights of the points. Two data sets with the same
+     * fingerprint can be taken to hold the same points. The hash of the
+     * points is kept, but the weights are hashed on every call as they may
+     * change.
+     * @return a fingerprint of the contents of the data set
+     */
+    public long fingerprint()
+    {
+        long h = pointsHash;
+        if(h == 0)
+        {
+            h = mix(size());
+            for(int i = 0; i < size(); i++)
+            {
+                h = mix(h ^ Double.doubleToLongBits(x[i]));
+                h = mix(h ^ Double.doubleToLongBits(y[i]));
+                if(label != null)
+                    h = mix(h ^ label[i]);
+            }
+            h = h == 0 ? 1 : h;
+            pointsHash = h;
+        }
+        for(double w : weight)
+            h = mix(h ^ Double.doubleToLongBits(w));
+        return h;
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator, a cheap well mixed hash step
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Sets the known minimum and maximum of each coordinate, so that they do
+     * not need to be computed again
+     */
+    void setBounds(double minX, double maxX, double minY, double maxY)
+    {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Computes the minimum and maximum of each coordinate if not already known
+     */
+    private void computeBounds()
+    {
+        if(!Double.isNaN(minX))
+            return;
+        double mnX = Double.POSITIVE_INFINITY, mxX = Double.NEGATIVE_INFINITY;
+        double mnY = Double.POSITIVE_INFINITY, mxY = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < size(); i++)
+        {
+            mnX = Math.min(mnX, x[i]);
+            mxX = Math.max(mxX, x[i]);
+            mnY = Math.min(mnY, y[i]);
+            mxY = Math.max(mxY, y[i]);
+        }
+        setBounds(mnX, mxX, mnY, mxY);
+    }
+
+    public double getMinX()
+    {
+        computeBounds();
+        return minX;
+    }
+
+    public double getMaxX()
+    {
+        computeBounds();
+        return maxX;
+    }
+
+    public double getMinY()
+    {
+        computeBounds();
+        return minY;
+    }
+
+    public double getMaxY()
+    {
+        computeBounds();
+        return maxY;
+    }
+
+    /**
+     * Linearly rescales both coordinates, in place, so that they fall in the
+     * range [low, high]. This is the same mapping as a {@link jsat.datatransform.LinearTransform},
+     * but without creating a new data point for every point.
+     * @param low the value the minimum of each coordinate will map to
+     * @param high the value the maximum of each coordinate will map to
+     */
+    public void rescale(double low, double high)
+    {
+        checkWritable();
+        computeBounds();
+        grid = null;
+        pointsHash = 0;
+        rescale(x, minX, maxX, low, high);
+        rescale(y, minY, maxY, low, high);
+        setBounds(low, high, low, high);
+    }
+
+    private static void rescale(double[] vals, double min, double max, double low, double high)
+    {
+        double range = max-min;
+        double scale = range > 0 ? (high-low)/range : 0;
+        for(int i = 0; i < vals.length; i++)
+            vals[i] = (vals[i]-min)*scale + low;
+    }
+
+    /**
+     * Extracts the points from a data set with two numeric features
+     * @param dataSet the data set to get the points from
+     * @return the points of the given data set, with labels if the data set
+     * is a {@link ClassificationDataSet}
+     */
+    public static Dataset2D fromDataSet(DataSet dataSet)
+    {
+        int n = dataSet.getSampleSize();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] weight = new double[n];
+        for(int i = 0; i < n; i++)
+        {
+            DataPoint dp = dataSet.getDataPoint(i);
+            Vec v = dp.getNumericalValues();
+            x[i] = v.get(0);
+            y[i] = v.get(1);
+            weight[i] = dp.getWeight();
+        }
+        if(!(dataSet instanceof ClassificationDataSet))
+            return new Dataset2D(x, y, null, weight, new String[0], 0);
+
+        ClassificationDataSet cds = (ClassificationDataSet) dataSet;
+        int[] label = new int[n];
+        for(int i = 0; i < n; i++)
+            label[i] = cds.getDataPointCategory(i);
+        String[] labelNames = new String[cds.getClassSize()];
+        for(int i = 0; i < labelNames.length; i++)
+            labelNames[i] = cds.getPredicting().getOptionName(i);
+        return new Dataset2D(x, y, label, weight, labelNames, 0);
+    }
+
+    /**
+     * The points of one view of the data set. Each point reads and writes its
+     * values directly from the data set, and its weight from the weights of
+     * the view. The vector of values of a row is made the first time any view
+     * asks for it and then kept by the data set, so going over the points
+     * again, as most training loops do many times, only makes the small
+     * point holding the weight, which nothing keeps once the loop moves on.
+     */
+    private class Rows
+    {
+        private final int dims;
+        private final Weights weights;
+
+        /**
+         *
+         * @param dims 2 for both coordinates, or 1 for just x
+         * @param weights the weights of the view the points belong to
+         */
+        public Rows(int dims, Weights weights)
+        {
+            this.dims = dims;
+            this.weights = weights;
+        }
+
+        /**
+         *
+         * @param i the index of the point
+         * @return the data point for index i
+         */
+        public DataPoint get(int i)
+        {
+            return new RowPoint(rowVec(i, dims), weights, i);
+        }
+
+        /**
+         * Copies a point out of the view, for the twice shallow clones JSAT
+         * expects to have weights of their own
+         * @param i the index of the point
+         * @return a point sharing the values of row i, but with its own
+         * weight
+         */
+        public DataPoint detached(int i)
+        {
+            return new DataPoint(rowVec(i, dims), NO_CAT_VALS, NO_CATS, weights.get(i));
+        }
+    }
+
+    /**
+     * Returns the vector of values of a row, shared by every view of this
+     * data set
+     * @param i the index of the row
+     * @param dims 2 for both coordinates, or 1 for just x
+     * @return the vector of row i
+     */
+    private Vec rowVec(int i, int dims)
+    {
+        AtomicReferenceArray<Vec> vecs = dims == 2 ? rowVecs2 : rowVecs1;
+        if(vecs == null)
+            vecs = allocateRowVecs(dims);
+        Vec v = vecs.get(i);
+        if(v == null)
+        {
+            v = new RowVec(this, i, dims);
+            if(!vecs.compareAndSet(i, null, v))
+                v = vecs.get(i);
+        }
+        return v;
+    }
+
+    private synchronized AtomicReferenceArray<Vec> allocateRowVecs(int dims)
+    {
+        if(dims == 2)
+        {
+            if(rowVecs2 == null)
+                rowVecs2 = new AtomicReferenceArray<>(size());
+            return rowVecs2;
+        }
+        if(rowVecs1 == null)
+            rowVecs1 = new AtomicReferenceArray<>(size());
+        return rowVecs1;
+    }
+
+    /**
+     * Writes the values of a data point back into the arrays
+     */
+    private void setPoint(int i, DataPoint dp, int dims, Weights weights)
+    {
+        checkWritable();
+        Vec v = dp.getNumericalValues();
+        if(v.length() != dims || dp.getCategoricalValues().length != 0)
+            throw new UnsupportedOperationException("A view of a 2D data set can only hold points with " + dims + " numeric features");
+        x[i] = v.get(0);
+        if(dims == 2)
+            y[i] = v.get(1);
+        weights.set(i, dp.getWeight());
+    }
+
+    private void checkWritable()
+    {
+        if(readOnly)
+            throw new UnsupportedOperationException("The points of a weighted data set or a subset can not be changed");
+    }
+
+    /**
+     * The weights seen by one view. The view of a read only data set starts
+     * out reading the shared weights, and copies them the first time it
+     * changes one.
+     */
+    private static class Weights
+    {
+        private volatile double[] values;
+        private volatile boolean shared;
+
+        public Weights(Dataset2D data)
+        {
+            this.values = data.weight;
+            this.shared = data.readOnly;
+        }
+
+        public double get(int i)
+        {
+            return values[i];
+        }
+
+        public void set(int i, double w)
+        {
+            if(shared)
+                copy();
+            values[i] = w;
+        }
+
+        private synchronized void copy()
+        {
+            if(shared)
+            {
+                values = values.clone();
+                shared = false;
+            }
+        }
+    }
+
+    private CategoricalData predictingCategory()
+    {
+        CategoricalData predicting = new CategoricalData(Math.max(labelNames.length, 1));
+        for(int i = 0; i < labelNames.length; i++)
+            predicting.setOptionName(labelNames[i], i);
+        return predicting;
+    }
+
+    /**
+     * Creates a view of the points as a classification problem. The class
+     * names are kept as the option names of the target.
+     * @return a classification data set view of the points
+     */
+    public ClassificationDataSet asClassificationDataSet()
+    {
+        if(label == null)
+            throw new IllegalStateException("The data set has no labels");
+        return new ClassificationView();
+    }
+
+    /**
+     * Creates a view of the points as a 1D regression problem, where
+     * {@link #x} is the only input and {@link #y} is the target value.
+     * @return a regression data set view of the points
+     */
+    public RegressionDataSet asRegressionDataSet()
+    {
+        return new RegressionView();
+    }
+
+    /**
+     * Creates a view of the points with no target
+     * @return an unlabeled data set view of the points
+     */
+    public DataSet asDataSet()
+    {
+        return new UnlabeledView(new RowList(2, new Weights(this)));
+    }
+
+    /**
+     * A list of the points as views, writing back on {@link #set(int, java.lang.Object) }
+     */
+    private class RowList extends AbstractList<DataPoint>
+    {
+        private final int dims;
+        private final Weights weights;
+        private final Rows rows;
+
+        public RowList(int dims, Weights weights)
+        {
+            this.dims = dims;
+            this.weights = weights;
+            this.rows = new Rows(dims, weights);
+        }
+
+        @Override
+        public DataPoint get(int index)
+        {
+            return rows.get(index);
+        }
+
+        public DataPoint detached(int index)
+        {
+            return rows.detached(index);
+        }
+
+        @Override
+        public DataPoint set(int index, DataPoint element)
+        {
+            DataPoint old = new DataPoint(new RowVec(Dataset2D.this, index, dims).clone(), NO_CAT_VALS, NO_CATS, weights.get(index));
+            setPoint(index, element, dims, weights);
+            return old;
+        }
+
+        @Override
+        public int size()
+        {
+            return Dataset2D.this.size();
+        }
+    }
+
+    private class ClassificationView extends ClassificationDataSet
+    {
+        private final Weights weights = new Weights(Dataset2D.this);
+        private final Rows rows = new Rows(2, weights);
+
+        public ClassificationView()
+        {
+            super(2, NO_CATS, predictingCategory());
+        }
+
+        @Override
+        public int getSampleSize()
+        {
+            return size();
+        }
+
+        @Override
+        public DataPoint getDataPoint(int i)
+        {
+            return rows.get(i);
+        }
+
+        @Override
+        public void setDataPoint(int i, DataPoint dp)
+        {
+            setPoint(i, dp, 2, weights);
+        }
+
+        @Override
+        public int getDataPointCategory(int i)
+        {
+            return label[i];
+        }
+
+        @Override
+        public int classSampleCount(int targetClass)
+        {
+            int count = 0;
+            for(int l : label)
+                if(l == targetClass)
+                    count++;
+            return count;
+        }
+
+        @Override
+        public double[] getPriors()
+        {
+            double[] priors = new double[getClassSize()];
+            double sum = 0;
+            for(int i = 0; i < size(); i++)
+            {
+                priors[label[i]] += weights.get(i);
+                sum += weights.get(i);
+            }
+            for(int i = 0; i < priors.length; i++)
+                priors[i] /= sum;
+            return priors;
+        }
+
+        @Override
+        public List<DataPointPair<Integer>> getAsDPPList()
+        {
+            List<DataPointPair<Integer>> list = new ArrayList<>(size());
+            for(int i = 0; i < size(); i++)
+                list.add(new DataPointPair<>(rows.get(i), label[i]));
+            return list;
+        }
+
+        @Override
+        public void addDataPoint(Vec v, int[] classes, int classification)
+        {
+            throw new UnsupportedOperationException("Points can not be added to a view of a 2D data set");
+        }
+
+        @Override
+        public ClassificationDataSet getTwiceShallowClone()
+        {
+            ClassificationDataSet clone = new ClassificationDataSet(2, NO_CATS, getPredicting().clone());
+            for(int i = 0; i < size(); i++)
+                clone.addDataPoint(rows.detached(i), label[i]);
+            return clone;
+        }
+    }
+
+    private class RegressionView extends RegressionDataSet
+    {
+        private final Weights weights = new Weights(Dataset2D.this);
+        private final Rows rows = new Rows(1, weights);
+
+        public RegressionView()
+        {
+            super(1, NO_CATS);
+        }
+
+        @Override
+        public int getSampleSize()
+        {
+            return size();
+        }
+
+        @Override
+        public DataPoint getDataPoint(int i)
+        {
+            return rows.get(i);
+        }
+
+        @Override
+        public void setDataPoint(int i, DataPoint dp)
+        {
+            setPoint(i, dp, 1, weights);
+        }
+
+        @Override
+        public double getTargetValue(int i)
+        {
+            return y[i];
+        }
+
+        @Override
+        public Vec getTargetValues()
+        {
+            return new DenseVector(y);
+        }
+
+        @Override
+        public List<DataPointPair<Double>> getAsDPPList()
+        {
+            List<DataPointPair<Double>> list = new ArrayList<>(size());
+            for(int i = 0; i < size(); i++)
+                list.add(new DataPointPair<>(rows.get(i), y[i]));
+            return list;
+        }
+
+        @Override
+        public void addDataPoint(DataPoint dp, double val)
+        {
+            throw new UnsupportedOperationException("Points can not be added to a view of a 2D data set");
+        }
+
+        @Override
+        public RegressionDataSet getTwiceShallowClone()
+        {
+            RegressionDataSet clone = new RegressionDataSet(1, NO_CATS);
+            for(int i = 0; i < size(); i++)
+                clone.addDataPoint(rows.detached(i), y[i]);
+            return clone;
+        }
+    }
+
+    private class UnlabeledView extends SimpleDataSet
+    {
+        private final RowList rows;
+
+        public UnlabeledView(RowList rows)
+        {
+            super(rows);
+            this.rows = rows;
+        }
+
+        @Override
+        public int getSampleSize()
+        {
+            return size();
+        }
+
+        @Override
+        public DataPoint getDataPoint(int i)
+        {
+            return rows.get(i);
+        }
+
+        @Override
+        public void setDataPoint(int i, DataPoint dp)
+        {
+            rows.set(i, dp);
+        }
+
+        @Override
+        public SimpleDataSet getTwiceShallowClone()
+        {
+            List<DataPoint> points = new ArrayList<>(size());
+            for(int i = 0; i < size(); i++)
+                points.add(rows.detached(i));
+            return new SimpleDataSet(points);
+        }
+    }
+
+    /**
+     * A data point whose values and weight live in a {@link Dataset2D}
+     */
+    private static class RowPoint extends DataPoint
+    {
+        private final Weights weights;
+        private final int index;
+
+        public RowPoint(Vec values, Weights weights, int index)
+        {
+            super(values, NO_CAT_VALS, NO_CATS);
+            this.weights = weights;
+            this.index = index;
+        }
+
+        @Override
+        public double getWeight()
+        {
+            return weights.get(index);
+        }
+
+        @Override
+        public void setWeight(double weight)
+        {
+            //called by the super constructor before weights is set
+            if(weights == null)
+                return;
+            if(weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight))
+                throw new ArithmeticException("Invalid weight assignment of " + weight);
+            weights.set(index, weight);
+        }
+
+        /**
+         * Models that keep their training points, such as nearest neighbours
+         * and support vector machines, are serialized with a plain copy of
+         * each point rather than the data set it lives in
+         */
+        private Object writeReplace()
+        {
+            return new DataPoint(getNumericalValues(), NO_CAT_VALS, NO_CATS, getWeight());
+        }
+    }
+
+    /**
+     * A vector whose values live in a {@link Dataset2D}. With one dimension
+     * only the x coordinate is visible.
+     */
+    private static class RowVec extends Vec
+    {
+        private final Dataset2D data;
+        private final int index;
+        private final int dims;
+
+        public RowVec(Dataset2D data, int index, int dims)
+        {
+            this.data = data;
+            this.index = index;
+            this.dims = dims;
+        }
+
+        @Override
+        public int length()
+        {
+            return dims;
+        }
+
+        /**
+         * Serialized as a copy of its values, as models that keep training
+         * vectors must not drag the whole data set along
+         */
+        private Object writeReplace()
+        {
+            return dims == 2 ? new DenseVector(new double[]{data.x[index], data.y[index]}) : new DenseVector(new double[]{data.x[index]});
+        }
+
+        @Override
+        public double get(int i)
+        {
+            if(i == 0)
+                return data.x[index];
+            else if(i == 1 && dims == 2)
+                return data.y[index];
+            throw new IndexOutOfBoundsException("Index " + i + " for a vector of length " + dims);
+        }
+
+        @Override
+        public void set(int i, double val)
+        {
+            data.checkWritable();
+            if(i == 0)
+                data.x[index] = val;
+            else if(i == 1 && dims == 2)
+                data.y[index] = val;
+            else
+                throw new IndexOutOfBoundsException("Index " + i + " for a vector of length " + dims);
+        }
+
+        @Override
+        public boolean isSparse()
+        {
+            return false;
+        }
+
+        @Override
+        public Vec clone()
+        {
+            if(dims == 1)
+                return new DenseVector(new double[]{data.x[index]});
+            return new DenseVector(new double[]{data.x[index], data.y[index]});
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Binary columnar cache of a loaded data set, stored as a sidecar file next to
+ * the source. The file is a small header followed by the raw x and y columns
+ * as little endian doubles and the class ids as ints, so re-opening a source
+ * only needs to map the columns back in rather than parse it again.<br>
+ * <br>
+ * The header records the length, modification time and a sampled checksum of
+ * the source so that a stale cache is ignored, and a checksum of the column
+ * data. Checking the column data means reading all of it a second time, so
+ * it is only done when asked for, or for every read when the
+ * {@code toyworld.datasetcache.verify} system property is {@code true}. The
+ * min / max of each coordinate are stored as well, so rescaling needs no
+ * extra pass.<br>
+ * <br>
+ * The cache of a newly parsed source is {@link #writeLater written} in the
+ * background, so the load that parsed it does not wait on the disk.
+ *
+ * @author Edward Raff
+ */
+public class DatasetCache
+{
+    private static final long MAGIC = 0x324454574341434CL;//"2DTWCACL"
+    private static final int VERSION = 1;
+    /**
+     * Size of the blocks of the source file that are used for its checksum
+     */
+    private static final int SAMPLE_BLOCK = 1 << 16;
+    /**
+     * Number of evenly spaced blocks of the source file to checksum
+     */
+    private static final int SAMPLE_BLOCKS = 16;
+    /**
+     * Largest region of a file that will be mapped at once
+     */
+    private static final int MAP_WINDOW = 1 << 28;
+    /**
+     * Writes caches one at a time, in the background
+     */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor((Runnable r) ->
+    {
+        Thread t = new Thread(r, "Dataset Cache Writer");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private DatasetCache()
+    {
+    }
+
+    /**
+     * Returns the sidecar file the cache for the given source is stored in.
+     * Labeled and unlabeled reads of the same source accept different lines,
+     * so they are cached separately, as are different column choices.
+     * @param source the original data file
+     * @param labeled whether the cache holds class labels
+     * @param variant identifies which columns of the source were read, or
+     * {@code null} if there is no choice
+     * @return the location of the cache file
+     */
+    public static File sidecarFor(File source, boolean labeled, String variant)
+    {
+        return new File(source.getPath() + (variant != null ? "." + variant : "") + (labeled ? ".labeled" : "") + ".2dcache");
+    }
+
+    /**
+     * Attempts to read the cached columns for the given source. The column
+     * data is only checked if the {@code toyworld.datasetcache.verify} system
+     * property is {@code true}.
+     * @param source the original data file
+     * @param labeled whether class labels are needed
+     * @param variant identifies which columns of the source were read, or
+     * {@code null} if there is no choice
+     * @return the cached columns, or {@code null} if there is no valid cache
+     * for the source
+     */
+    public static Dataset2D read(File source, boolean labeled, String variant)
+    {
+        return read(source, labeled, variant, Boolean.getBoolean("toyworld.datasetcache.verify"));
+    }
+
+    /**
+     * Attempts to read the cached columns for the given source.
+     * @param source the original data file
+     * @param labeled whether class labels are needed
+     * @param variant identifies which columns of the source were read, or
+     * {@code null} if there is no choice
+     * @param verify {@code true} to check the column data against its
+     * checksum, which reads it all a second time
+     * @return the cached columns, or {@code null} if there is no valid cache
+     * for the source
+     */
+    public static Dataset2D read(File source, boolean labeled, String variant, boolean verify)
+    {
+        File cacheFile = sidecarFor(source, labeled, variant);
+        if(!cacheFile.isFile())
+            return null;
+        long start = System.nanoTime();
+        try(FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            if(header.getLong() != MAGIC || header.getInt() != VERSION)
+                return null;
+            boolean hasLabels = header.getInt() != 0;
+            if(hasLabels != labeled)
+                return null;
+            if(header.getLong() != source.length() || header.getLong() != source.lastModified())
+                return null;
+            if(header.getLong() != sourceChecksum(source))
+                return null;
+            int n = header.getInt();
+            int labelCount = header.getInt();
+            long dataChecksum = header.getLong();
+
+            //label names follow the fixed part of the header
+            String[] labelNames = new String[labelCount];
+            long pos = header.capacity();
+            ByteBuffer len = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for(int i = 0; i < labelCount; i++)
+            {
+                len.clear();
+                readFully(channel, len, pos);
+                len.flip();
+                ByteBuffer name = ByteBuffer.allocate(len.getInt());
+                readFully(channel, name, pos+4);
+                labelNames[i] = new String(name.array(), StandardCharsets.UTF_8);
+                pos += 4 + name.capacity();
+            }
+            pos = align8(pos);
+
+            ByteBuffer bounds = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, bounds, pos);
+            bounds.flip();
+            pos += bounds.capacity();
+
+            CRC32 crc = verify ? new CRC32() : null;
+            double[] x = new double[n];
+            double[] y = new double[n];
+            int[] label = labeled ? new int[n] : null;
+            pos = readColumn(channel, pos, x, crc);
+            pos = readColumn(channel, pos, y, crc);
+            if(labeled)
+                readColumn(channel, pos, label, crc);
+            if(verify && crc.getValue() != dataChecksum)
+                return null;
+
+            Dataset2D columns = new Dataset2D(x, y, label, labelNames, System.nanoTime()-start);
+            columns.setBounds(bounds.getDouble(), bounds.getDouble(), bounds.getDouble(), bounds.getDouble());
+            return columns;
+        }
+        catch(IOException | RuntimeException ex)
+        {
+            //an unreadable cache is the same as no cache, it will be rewritten
+            return null;
+        }
+    }
+
+    /**
+     * Writes the columns to the sidecar cache of the given source. The cache is
+     * written to a temporary file first, so a partially written cache is never
+     * picked up.
+     * @param source the original data file the columns were loaded from
+     * @param columns the columns loaded from the source, before any rescaling
+     * @param variant identifies which columns of the source were read, or
+     * {@code null} if there is no choice
+     * @throws IOException if the cache could not be written
+     */
+    public static void write(File source, Dataset2D columns, String variant) throws IOException
+    {
+        boolean labeled = columns.label != null;
+        File cacheFile = sidecarFor(source, labeled, variant);
+        Path tmp = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(), cacheFile.getName(), ".tmp");
+        try
+        {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                //compute the data checksum first, it goes in the header
+                CRC32 crc = new CRC32();
+                ByteBuffer staging = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                writeColumn(null, 0, columns.x, staging, crc);
+                writeColumn(null, 0, columns.y, staging, crc);
+                if(labeled)
+                    writeColumn(null, 0, columns.label, staging, crc);
+
+                byte[][] names = new byte[columns.labelNames.length][];
+                int namesSize = 0;
+                for(int i = 0; i < names.length; i++)
+                {
+                    names[i] = columns.labelNames[i].getBytes(StandardCharsets.UTF_8);
+                    namesSize += 4 + names[i].length;
+                }
+
+                ByteBuffer header = ByteBuffer.allocate((int) align8(64+namesSize) + 32).order(ByteOrder.LITTLE_ENDIAN);
+                header.putLong(MAGIC).putInt(VERSION).putInt(labeled ? 1 : 0);
+                header.putLong(source.length()).putLong(source.lastModified()).putLong(sourceChecksum(source));
+                header.putInt(columns.size()).putInt(names.length).putLong(crc.getValue());
+                header.position(64);
+                for(byte[] name : names)
+                    header.putInt(name.length).put(name);
+                header.position((int) align8(64+namesSize));
+                header.putDouble(columns.getMinX()).putDouble(columns.getMaxX());
+                header.putDouble(columns.getMinY()).putDouble(columns.getMaxY());
+                header.flip();
+                long pos = 0;
+                while(header.hasRemaining())
+                    pos += channel.write(header, pos);
+
+                pos = writeColumn(channel, pos, columns.x, staging, null);
+                pos = writeColumn(channel, pos, columns.y, staging, null);
+                if(labeled)
+                    writeColumn(channel, pos, columns.label, staging, null);
+                channel.force(false);
+            }
+            Files.move(tmp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the cache for the given source, logging rather than failing if it
+     * can not be written. A missing cache only costs time on the next load.
+     * @param source the original data file the columns were loaded from
+     * @param columns the columns loaded from the source, before any rescaling
+     * @param variant identifies which columns of the source were read, or
+     * {@code null} if there is no choice
+     */
+    public static void writeQuietly(File source, Dataset2D columns, String variant)
+    {
+        try
+        {
+            write(source, columns, variant);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(DatasetCache.class.getName()).log(Level.WARNING, "Could not write cache for " + source, ex);
+        }
+    }
+
+    /**
+     * Writes the cache for the given source in the background, logging rather
+     * than failing if it can not be written. The columns are copied first, so
+     * they may be changed, such as by {@link Dataset2D#rescale(double, double) },
+     * as soon as this returns. If the source changes before the cache is
+     * written, no cache is written.
+     * @param source the original data file the columns were loaded from
+     * @param columns the columns loaded from the source, before any rescaling
+     * @param variant identifies which columns of the source were read, or
+     * {@code null} if there is no choice
+     */
+    public static void writeLater(final File source, Dataset2D columns, final String variant)
+    {
+        final Dataset2D copy = new Dataset2D(columns.x.clone(), columns.y.clone(), columns.label, columns.labelNames, 0);
+        copy.setBounds(columns.getMinX(), columns.getMaxX(), columns.getMinY(), columns.getMaxY());
+        final long length = source.length();
+        final long modified = source.lastModified();
+        writer.execute(() ->
+        {
+            if(source.length() == length && source.lastModified() == modified)
+                writeQuietly(source, copy, variant);
+        });
+    }
+
+    /**
+     * Cheap fingerprint of the source file's contents. Rather than reading a
+     * file that may be many GB, evenly spaced blocks of it are checksummed
+     * along with its length. Together with the modification time this catches
+     * any normal edit of the source.
+     * @param source the file to fingerprint
+     * @return the checksum of the sampled contents
+     * @throws IOException
+     */
+    static long sourceChecksum(File source) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        try(FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(SAMPLE_BLOCK);
+            long step = Math.max(SAMPLE_BLOCK, size/SAMPLE_BLOCKS);
+            for(long pos = 0; pos < size; pos += step)
+            {
+                block.clear();
+                int read = channel.read(block, pos);
+                if(read <= 0)
+                    break;
+                block.flip();
+                crc.update(block);
+            }
+            //always include the tail, that is where appended rows go
+            if(size > SAMPLE_BLOCK)
+            {
+                block.clear();
+                channel.read(block, size-SAMPLE_BLOCK);
+                block.flip();
+                crc.update(block);
+            }
+            crc.update((int) size);
+            crc.update((int) (size >>> 32));
+        }
+        return crc.getValue();
+    }
+
+    static long align8(long pos)
+    {
+        return (pos + 7) & ~7L;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException
+    {
+        while(buf.hasRemaining())
+        {
+            int read = channel.read(buf, pos);
+            if(read < 0)
+                throw new IOException("Unexpected end of cache file");
+            pos += read;
+        }
+    }
+
+    /**
+     * Reads a column from the file, updating the checksum with its bytes
+     * unless {@code crc} is {@code null}
+     */
+    static long readColumn(FileChannel channel, long pos, double[] column, CRC32 crc) throws IOException
+    {
+        int done = 0;
+        while(done < column.length)
+        {
+            int count = Math.min(column.length-done, MAP_WINDOW/Double.BYTES);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, pos, (long) count*Double.BYTES);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            mapped.asDoubleBuffer().get(column, done, count);
+            if(crc != null)
+                crc.update(mapped);
+            done += count;
+            pos += (long) count*Double.BYTES;
+        }
+        return pos;
+    }
+
+    private static long readColumn(FileChannel channel, long pos, int[] column, CRC32 crc) throws IOException
+    {
+        int done = 0;
+        while(done < column.length)
+        {
+            int count = Math.min(column.length-done, MAP_WINDOW/Integer.BYTES);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, pos, (long) count*Integer.BYTES);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            mapped.asIntBuffer().get(column, done, count);
+            if(crc != null)
+                crc.update(mapped);
+            done += count;
+            pos += (long) count*Integer.BYTES;
+        }
+        return pos;
+    }
+
+    /**
+     * Writes the column through the staging buffer. If {@code channel} is
+     * {@code null} nothing is written and only the checksum is updated.
+     */
+    static long writeColumn(FileChannel channel, long pos, double[] column, ByteBuffer staging, CRC32 crc) throws IOException
+    {
+        int perBuffer = staging.capacity()/Double.BYTES;
+        for(int done = 0; done < column.length; done += perBuffer)
+        {
+            int count = Math.min(perBuffer, column.length-done);
+            staging.clear();
+            staging.asDoubleBuffer().put(column, done, count);
+            staging.limit(count*Double.BYTES);
+            pos = flush(channel, pos, staging, crc);
+        }
+        return pos;
+    }
+
+    private static long writeColumn(FileChannel channel, long pos, int[] column, ByteBuffer staging, CRC32 crc) throws IOException
+    {
+        int perBuffer = staging.capacity()/Integer.BYTES;
+        for(int done = 0; done < column.length; done += perBuffer)
+        {
+            int count = Math.min(perBuffer, column.length-done);
+            staging.clear();
+            staging.asIntBuffer().put(column, done, count);
+            staging.limit(count*Integer.BYTES);
+            pos = flush(channel, pos, staging, crc);
+        }
+        return pos;
+    }
+
+    private static long flush(FileChannel channel, long pos, ByteBuffer staging, CRC32 crc) throws IOException
+    {
+        if(crc != null)
+            crc.update(staging);
+        if(channel != null)
+            while(staging.hasRemaining())
+                pos += channel.write(staging, pos);
+        return pos;
+    }
+}
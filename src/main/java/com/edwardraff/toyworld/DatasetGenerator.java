@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import jsat.parameters.DoubleParameter;
+import jsat.parameters.IntParameter;
+import jsat.parameters.Parameter;
+import jsat.parameters.Parameterized;
+
+/**
+ * Generates synthetic 2D data sets for the classifier and cluster worlds. The
+ * settings of every generator, including the number of points and the random
+ * seed, are exposed as JSAT parameters so they can be edited with a
+ * {@link com.edwardraff.jsatfx.swing.ParameterPanel}.<br>
+ * <br>
+ * Points are written straight into primitive arrays in parallel chunks. Every
+ * chunk gets its own random stream, split off of a root stream made from the
+ * seed in a fixed order, so the same settings always give the same data no
+ * matter how many threads are used.
+ *
+ * @author Edward Raff
+ */
+public abstract class DatasetGenerator implements Parameterized
+{
+    /**
+     * The most points that may be generated
+     */
+    public static final int MAX_SIZE = 100_000_000;
+    /**
+     * Points generated per task
+     */
+    private static final int CHUNK = 1 << 16;
+
+    private int size = 1000;
+    private int seed = 1;
+    /**
+     * The standard deviation of the Gaussian noise added to the points
+     */
+    protected double noise = 0.1;
+    /**
+     * The number of classes generated, fixed unless the subclass calls
+     * {@link #addClassesParameter(int, int, int) }
+     */
+    protected int classes = 2;
+    private final List<Parameter> params = new ArrayList<>();
+
+    public DatasetGenerator()
+    {
+        params.add(new IntParameter()
+        {
+            @Override
+            public int getValue()
+            {
+                return size;
+            }
+
+            @Override
+            public boolean setValue(int val)
+            {
+                if(val <= 0 || val > MAX_SIZE)
+                    return false;
+                size = val;
+                return true;
+            }
+
+            @Override
+            public String getASCIIName()
+            {
+                return "Sample Size";
+            }
+        });
+        params.add(new IntParameter()
+        {
+            @Override
+            public int getValue()
+            {
+                return seed;
+            }
+
+            @Override
+            public boolean setValue(int val)
+            {
+                seed = val;
+                return true;
+            }
+
+            @Override
+            public String getASCIIName()
+            {
+                return "Seed";
+            }
+        });
+        params.add(new DoubleParameter()
+        {
+            @Override
+            public double getValue()
+            {
+                return noise;
+            }
+
+            @Override
+            public boolean setValue(double val)
+            {
+                if(val < 0 || Double.isNaN(val) || Double.isInfinite(val))
+                    return false;
+                noise = val;
+                return true;
+            }
+
+            @Override
+            public String getASCIIName()
+            {
+                return "Noise";
+            }
+        });
+    }
+
+    /**
+     * Adds a parameter that sets the number of classes
+     * @param min the fewest classes allowed
+     * @param max the most classes allowed
+     * @param initial the starting number of classes
+     */
+    protected void addClassesParameter(final int min, final int max, int initial)
+    {
+        classes = initial;
+        params.add(new IntParameter()
+        {
+            @Override
+            public int getValue()
+            {
+                return classes;
+            }
+
+            @Override
+            public boolean setValue(int val)
+            {
+                if(val < min || val > max)
+                    return false;
+                classes = val;
+                return true;
+            }
+
+            @Override
+            public String getASCIIName()
+            {
+                return "Classes";
+            }
+        });
+    }
+
+    /**
+     * Adds a parameter to the ones shown to the user
+     * @param param the parameter to add
+     */
+    protected void addParameter(Parameter param)
+    {
+        params.add(param);
+    }
+
+    @Override
+    public List<Parameter> getParameters()
+    {
+        return params;
+    }
+
+    @Override
+    public Parameter getParameter(String paramName)
+    {
+        return Parameter.toParameterMap(params).get(paramName);
+    }
+
+    /**
+     *
+     * @return the number of points that will be generated
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Called once before any points are generated, for generators that need
+     * to draw random values shared by all of the points
+     * @param rand the random stream to draw from
+     */
+    protected void prepare(SplittableRandom rand)
+    {
+    }
+
+    /**
+     * Generates one point. This is called from many threads at once, so it
+     * must not change the state of the generator.
+     * @param i the index of the point
+     * @param rand the random stream of the chunk the point is in
+     * @param xy the array to store the x and y value of the point in
+     * @return the class of the point
+     */
+    protected abstract int point(int i, SplittableRandom rand, double[] xy);
+
+    /**
+     * Generates the data set
+     * @param labeled {@code true} to keep the class of every point,
+     * {@code false} to return unlabeled points
+     * @param pool the threads to generate with
+     * @return the generated points
+     */
+    public Dataset2D generate(boolean labeled, ForkJoinPool pool)
+    {
+        final long startTime = System.nanoTime();
+        final int n = size;
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        final int[] label = labeled ? new int[n] : null;
+        SplittableRandom rand = new SplittableRandom(seed);
+        prepare(rand.split());
+
+        List<Future<?>> futures = new ArrayList<>();
+        for(int from = 0; from < n; from += CHUNK)
+        {
+            final int chunkStart = from, chunkEnd = Math.min(n, from+CHUNK);
+            final SplittableRandom chunkRand = rand.split();
+            futures.add(pool.submit(() ->
+            {
+                double[] xy = new double[2];
+                for(int i = chunkStart; i < chunkEnd; i++)
+                {
+                    int c = point(i, chunkRand, xy);
+                    x[i] = xy[0];
+                    y[i] = xy[1];
+                    if(label != null)
+                        label[i] = c;
+                }
+            }));
+        }
+        for(Future<?> future : futures)
+        {
+            try
+            {
+                future.get();
+            }
+            catch (InterruptedException | ExecutionException ex)
+            {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        String[] labelNames = new String[labeled ? classes : 0];
+        for(int c = 0; c < labelNames.length; c++)
+            labelNames[c] = "Class " + c;
+        return new Dataset2D(x, y, label, labelNames, System.nanoTime()-startTime);
+    }
+
+    /**
+     * Draws from a standard normal distribution
+     * @param rand the source of randomness
+     * @return a normally distributed value
+     */
+    protected static double gaussian(SplittableRandom rand)
+    {
+        //Marsaglia's polar method, throwing away the second value
+        double u, v, s;
+        do
+        {
+            u = 2*rand.nextDouble()-1;
+            v = 2*rand.nextDouble()-1;
+            s = u*u + v*v;
+        }
+        while(s >= 1 || s == 0);
+        return u*Math.sqrt(-2*Math.log(s)/s);
+    }
+
+    /**
+     * Creates a new instance of every kind of generator, with default settings
+     * @return the generators by name
+     */
+    public static Map<String, DatasetGenerator> all()
+    {
+        Map<String, DatasetGenerator> generators = new LinkedHashMap<>();
+        generators.put("Gaussian Blobs", new Blobs());
+        generators.put("Two Moons", new Moons());
+        generators.put("Spirals", new Spirals());
+        generators.put("XOR", new Xor());
+        generators.put("Concentric Rings", new Rings());
+        generators.put("Imbalanced Mixture", new Imbalanced());
+        return generators;
+    }
+
+    /**
+     * Gaussian clusters, one per class, with centers drawn at random from
+     * [-5, 5]<sup>2</sup>
+     */
+    public static class Blobs extends DatasetGenerator
+    {
+        private double[] centers;
+
+        public Blobs()
+        {
+            noise = 1;
+            addClassesParameter(1, 1000, 3);
+        }
+
+        @Override
+        protected void prepare(SplittableRandom rand)
+        {
+            centers = new double[classes*2];
+            for(int i = 0; i < centers.length; i++)
+                centers[i] = rand.nextDouble()*10-5;
+        }
+
+        @Override
+        protected int point(int i, SplittableRandom rand, double[] xy)
+        {
+            int c = i % classes;
+            xy[0] = centers[c*2] + noise*gaussian(rand);
+            xy[1] = centers[c*2+1] + noise*gaussian(rand);
+            return c;
+        }
+    }
+
+    /**
+     * Two interleaving half circles
+     */
+    public static class Moons extends DatasetGenerator
+    {
+        @Override
+        protected int point(int i, SplittableRandom rand, double[] xy)
+        {
+            int c = i & 1;
+            double t = rand.nextDouble()*Math.PI;
+            if(c == 0)
+            {
+                xy[0] = Math.cos(t);
+                xy[1] = Math.sin(t);
+            }
+            else
+            {
+                xy[0] = 1 - Math.cos(t);
+                xy[1] = 0.5 - Math.sin(t);
+            }
+            xy[0] += noise*gaussian(rand);
+            xy[1] += noise*gaussian(rand);
+            return c;
+        }
+    }
+
+    /**
+     * Spiral arms winding out from the origin, one per class
+     */
+    public static class Spirals extends DatasetGenerator
+    {
+        private double turns = 1.5;
+
+        public Spirals()
+        {
+            noise = 0.05;
+            addClassesParameter(1, 100, 2);
+            addParameter(new DoubleParameter()
+            {
+                @Override
+                public double getValue()
+                {
+                    return turns;
+                }
+
+                @Override
+                public boolean setValue(double val)
+                {
+                    if(!(val > 0) || Double.isInfinite(val))
+                        return false;
+                    turns = val;
+                    return true;
+                }
+
+                @Override
+                public String getASCIIName()
+                {
+                    return "Turns";
+                }
+            });
+        }
+
+        @Override
+        protected int point(int i, SplittableRandom rand, double[] xy)
+        {
+            int c = i % classes;
+            double r = rand.nextDouble();
+            double theta = turns*2*Math.PI*r + 2*Math.PI*c/classes;
+            xy[0] = r*Math.cos(theta) + noise*gaussian(rand);
+            xy[1] = r*Math.sin(theta) + noise*gaussian(rand);
+            return c;
+        }
+    }
+
+    /**
+     * Points spread uniformly over [-1, 1]<sup>2</sup>, with the class given
+     * by whether the signs of x and y match
+     */
+    public static class Xor extends DatasetGenerator
+    {
+        public Xor()
+        {
+            noise = 0;
+        }
+
+        @Override
+        protected int point(int i, SplittableRandom rand, double[] xy)
+        {
+            double x = rand.nextDouble()*2-1;
+            double y = rand.nextDouble()*2-1;
+            int c = (x > 0) != (y > 0) ? 1 : 0;
+            xy[0] = x + noise*gaussian(rand);
+            xy[1] = y + noise*gaussian(rand);
+            return c;
+        }
+    }
+
+    /**
+     * Rings around the origin, with the ring of radius c+1 holding class c
+     */
+    public static class Rings extends DatasetGenerator
+    {
+        public Rings()
+        {
+            addClassesParameter(1, 100, 2);
+        }
+
+        @Override
+        protected int point(int i, SplittableRandom rand, double[] xy)
+        {
+            int c = i % classes;
+            double theta = rand.nextDouble()*2*Math.PI;
+            xy[0] = (c+1)*Math.cos(theta) + noise*gaussian(rand);
+            xy[1] = (c+1)*Math.sin(theta) + noise*gaussian(rand);
+            return c;
+        }
+    }
+
+    /**
+     * Two overlapping Gaussians, where only a small fraction of the points
+     * belong to the second class
+     */
+    public static class Imbalanced extends DatasetGenerator
+    {
+        private double minorityFrac = 0.05;
+        private double separation = 2;
+
+        public Imbalanced()
+        {
+            noise = 1;
+            addParameter(new DoubleParameter()
+            {
+                @Override
+                public double getValue()
+                {
+                    return minorityFrac;
+                }
+
+                @Override
+                public boolean setValue(double val)
+                {
+                    if(!(val > 0) || val >= 1)
+                        return false;
+                    minorityFrac = val;
+                    return true;
+                }
+
+                @Override
+                public String getASCIIName()
+                {
+                    return "Minority Fraction";
+                }
+            });
+            addParameter(new DoubleParameter()
+            {
+                @Override
+                public double getValue()
+                {
+                    return separation;
+                }
+
+                @Override
+                public boolean setValue(double val)
+                {
+                    if(val < 0 || Double.isInfinite(val))
+                        return false;
+                    separation = val;
+                    return true;
+                }
+
+                @Override
+                public String getASCIIName()
+                {
+                    return "Separation";
+                }
+            });
+        }
+
+        @Override
+        protected int point(int i, SplittableRandom rand, double[] xy)
+        {
+            int c = rand.nextDouble() < minorityFrac ? 1 : 0;
+            xy[0] = c*separation + noise*gaussian(rand);
+            xy[1] = c*separation + noise*gaussian(rand);
+            return c;
+        }
+    }
+}
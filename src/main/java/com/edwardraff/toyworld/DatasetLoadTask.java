@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.io.File;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.swing.JLabel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Loads a data set on a background thread, showing the progress in a label.
+ * Everything that is expensive, including building the data set object the
+ * world will use, happens off the event thread. The finished result is only
+ * handed to the world once it is complete, on the event thread, so the world
+ * can swap it in all at once.
+ *
+ * @author Edward Raff
+ * @param <T> the type of data set the world works with
+ */
+public class DatasetLoadTask<T> extends SwingWorker<T, Void>
+{
+    /**
+     * How often, in milliseconds, the progress label is refreshed
+     */
+    private static final int PROGRESS_REFRESH = 100;
+    /**
+     * Loads run on their own threads, so a long load never waits behind (or
+     * holds up) a training job
+     */
+    private static final ExecutorService loadExecutor = Executors.newCachedThreadPool((Runnable r) ->
+    {
+        Thread t = new Thread(r, "Dataset Loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final File file;
+    private final boolean labeled;
+    private final ArffDataLoader.Projection projection;
+    private final ExecutorService execService;
+    private final Function<Dataset2D, T> finisher;
+    private final Consumer<T> onLoaded;
+    private final Consumer<String> onProblem;
+    private final LoadMonitor monitor = new LoadMonitor();
+    private final JLabel progressLabel;
+    private final Timer progressTimer;
+    /**
+     * What was loaded and how long it took, shown once the load is done
+     */
+    private volatile String summary = " ";
+
+    /**
+     *
+     * @param file the file to load
+     * @param labeled {@code true} if class labels are required
+     * @param projection the columns to read if the file is an ARFF file, or
+     * {@code null} for the defaults
+     * @param execService the threads to parse with
+     * @param finisher turns the raw points into the data set the world wants.
+     * Called on the background thread
+     * @param onLoaded receives the finished data set, on the event thread
+     * @param onProblem receives the error message if the load failed, or any
+     * warnings from a successful load, on the event thread
+     * @param progressLabel the label to show progress in
+     */
+    public DatasetLoadTask(File file, boolean labeled, ArffDataLoader.Projection projection, ExecutorService execService, Function<Dataset2D, T> finisher, Consumer<T> onLoaded, Consumer<String> onProblem, JLabel progressLabel)
+    {
+        this.file = file;
+        this.labeled = labeled;
+        this.projection = projection;
+        this.execService = execService;
+        this.finisher = finisher;
+        this.onLoaded = onLoaded;
+        this.onProblem = onProblem;
+        this.progressLabel = progressLabel;
+        this.progressTimer = new Timer(PROGRESS_REFRESH, (e) -> progressLabel.setText(monitor.describe()));
+    }
+
+    /**
+     * Starts the load in the background. Must be called from the event thread
+     */
+    public void start()
+    {
+        progressLabel.setText(monitor.describe());
+        progressTimer.start();
+        loadExecutor.execute(this);
+    }
+
+    /**
+     * Stops the load. The world's current data set is left as is.
+     */
+    public void abort()
+    {
+        monitor.cancel();
+        cancel(true);
+    }
+
+    @Override
+    protected T doInBackground() throws Exception
+    {
+        Dataset2D columns = DatasetLoader.load(file, labeled, projection, execService, monitor);
+        summary = String.format("Loaded %,d points from %s in %.3f seconds", columns.size(), file.getName(), columns.getElapsedNanos()/1e9);
+        monitor.checkCancelled();
+        T result = finisher.apply(columns);
+        monitor.checkCancelled();
+        return result;
+    }
+
+    @Override
+    protected void done()
+    {
+        progressTimer.stop();
+        if(isCancelled())
+        {
+            progressLabel.setText("Load of " + file.getName() + " cancelled");
+            return;
+        }
+        try
+        {
+            T result = get();
+            progressLabel.setText(summary);
+            onLoaded.accept(result);
+            for(String warning : monitor.getWarnings())
+                onProblem.accept(warning);
+        }
+        catch (InterruptedException | CancellationException ex)
+        {
+            progressLabel.setText("Load of " + file.getName() + " cancelled");
+        }
+        catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if(cause instanceof CancellationException)
+            {
+                progressLabel.setText("Load of " + file.getName() + " cancelled");
+                return;
+            }
+            progressLabel.setText(" ");
+            onProblem.accept(cause.getMessage());
+        }
+    }
+}
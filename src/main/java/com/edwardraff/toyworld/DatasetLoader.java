@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the points of a data file for any of the worlds, going through the
+ * {@link DatasetCache} when possible. All of the problems a user could cause
+ * with their file are reported as an {@link IOException} with a message
+ * suitable for showing to them.
+ *
+ * @author Edward Raff
+ */
+public class DatasetLoader
+{
+    private static final Logger LOG = Logger.getLogger(DatasetLoader.class.getName());
+
+    private DatasetLoader()
+    {
+    }
+
+    /**
+     * Loads the points from the given file, which may be an ARFF file or a
+     * "#, #, className" text file. The cache is read if valid, and written in
+     * the background otherwise.
+     *
+     * @param file the file to load
+     * @param labeled {@code true} if class labels are required
+     * @param projection the columns to read from an ARFF file, or
+     * {@code null} to use the default columns
+     * @param execService the source of threads to parse with
+     * @param monitor the monitor to report progress to
+     * @return the raw, un-scaled points in the file
+     * @throws IOException if the file could not be loaded
+     */
+    public static Dataset2D load(File file, boolean labeled, ArffDataLoader.Projection projection, ExecutorService execService, LoadMonitor monitor) throws IOException
+    {
+        String extension = file.toString().substring(file.toString().lastIndexOf(".")+1);
+        monitor.setTotalBytes(file.length());
+
+        ArffDataLoader.Header header = null;
+        if(extension.equalsIgnoreCase("arff"))
+        {
+            header = ArffDataLoader.readHeader(file);
+            if(projection == null)
+                projection = ArffDataLoader.Projection.defaultFor(header, labeled);
+        }
+        String variant = header != null ? projection.cacheKey() : null;
+
+        Dataset2D columns = DatasetCache.read(file, labeled, variant);
+        if(columns != null)
+        {
+            monitor.addProgress(file.length(), columns.size());
+            if(LOG.isLoggable(Level.FINE))
+                LOG.log(Level.FINE, String.format("Read %d rows of %s from cache in %.3f seconds", columns.size(), file, columns.getElapsedNanos()/1e9));
+            return columns;
+        }
+
+        if(header != null)
+        {
+            columns = ArffDataLoader.load(file, header, projection, monitor);
+            logParsed(file, columns);
+            if(columns.size() == 0)
+                throw new IOException("The ARFF file has no rows with values in the chosen columns");
+        }
+        else if(extension.equalsIgnoreCase("txt"))
+        {
+            try
+            {
+                columns = TextDataLoader.load(file, labeled ? 3 : 2, execService, monitor);
+            }
+            catch(NumberFormatException ex)
+            {
+                throw new IOException(ex.getMessage(), ex);
+            }
+            logParsed(file, columns);
+
+            //empty? Means none of the lines looked like data points
+            if(columns.size() == 0)
+                throw new IOException(labeled ?
+                        "The text file dosn't appear to be formated as \"#, #, className\", no lines were found matching this pattern" :
+                        "The text file dosn't appear to be formated as \"#, #\", no lines were found matching this pattern");
+        }
+        else
+            throw new IOException("Unknown file type \"" + extension + "\", only .arff and .txt files can be loaded");
+
+        monitor.checkCancelled();
+        DatasetCache.writeLater(file, columns, variant);
+        return columns;
+    }
+
+    private static void logParsed(File file, Dataset2D columns)
+    {
+        if(LOG.isLoggable(Level.FINE))
+            LOG.log(Level.FINE, String.format("Parsed %d rows of %s in %.3f seconds (%.0f rows/sec)", columns.size(), file, columns.getElapsedNanos()/1e9, columns.getRowsPerSecond()));
+    }
+}
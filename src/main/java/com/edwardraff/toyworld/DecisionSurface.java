@@ -0,0 +1,551 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import jsat.classifiers.CategoricalData;
+import jsat.classifiers.CategoricalResults;
+import jsat.classifiers.Classifier;
+import jsat.classifiers.DataPoint;
+import jsat.classifiers.bayesian.NaiveBayes;
+import jsat.classifiers.linear.LogisticRegressionDCD;
+import jsat.classifiers.linear.PassiveAggressive;
+import jsat.classifiers.linear.SPA;
+import jsat.classifiers.neuralnetwork.Perceptron;
+import jsat.classifiers.svm.DCDs;
+import jsat.classifiers.trees.DecisionStump;
+import jsat.classifiers.trees.DecisionTree;
+import jsat.linear.DenseVector;
+
+/**
+ * Evaluates a classifier over a grid of cells covering a region of the plane,
+ * giving the class and confidence of the center of every cell. The grid is
+ * split into square tiles that are evaluated in parallel with fork-join. Every
+ * worker thread asks the classifier about one mutable point, moved from cell
+ * to cell, so no data point is made per cell, and the results go straight
+ * into primitive arrays.<br>
+ * <br>
+ * The grid may also be evaluated {@link #evaluateAdaptive adaptively}, where
+ * only the corners of a block of cells are asked about, and the block is split
+ * in four only when they do not all agree on the class. Blocks inside a region
+ * of one class are filled in without asking about their other cells.
+ * Neighbouring blocks share their edges, so a corner is asked about once for
+ * every block around it, and the cost is about one prediction for every
+ * {@link #ADAPTIVE_BLOCK} squared cells of area, plus a few for every cell
+ * along the boundaries between classes, rather than one for every cell.<br>
+ * Blocks deliberately start at {@link #ADAPTIVE_BLOCK} cells on a side rather
+ * than at the whole grid: a region of a class that falls between the corners
+ * of a block is never seen, so the block size bounds the smallest region that
+ * is sure to be found.
+ *
+ * @author Edward Raff
+ */
+public class DecisionSurface
+{
+    /**
+     * The width and height of a tile in cells
+     */
+    public static final int TILE_SIZE = 16;
+    /**
+     * The width and height in cells of the largest block an adaptive
+     * evaluation fills in from its corners alone, and so the most it saves
+     * inside a region of one class: one prediction for this many squared
+     * cells. A region of a class smaller than this may be missed.
+     */
+    public static final int ADAPTIVE_BLOCK = 16;
+    /**
+     * The classifiers known to only read their trained state when they
+     * classify, so one copy can be shared by every worker. Matched by exact
+     * class, so wrappers and subclasses are always copied.
+     */
+    private static final Set<Class<?>> SHAREABLE = new HashSet<>(Arrays.asList(
+            DecisionStump.class, DecisionTree.class, NaiveBayes.class,
+            LogisticRegressionDCD.class, DCDs.class, Perceptron.class,
+            PassiveAggressive.class, SPA.class));
+
+    /**
+     * A grid of cells over a region of the plane, row by row from the top
+     * left
+     */
+    public static class Grid
+    {
+        public final int width;
+        public final int height;
+        public final double minX, maxX, minY, maxY;
+
+        /**
+         *
+         * @param width the number of columns of cells
+         * @param height the number of rows of cells
+         * @param minX the x value of the left edge
+         * @param maxX the x value of the right edge
+         * @param minY the y value of the bottom edge
+         * @param maxY the y value of the top edge
+         */
+        public Grid(int width, int height, double minX, double maxX, double minY, double maxY)
+        {
+            this.width = width;
+            this.height = height;
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        /**
+         *
+         * @return {@code true} if the other grid has the same cells
+         */
+        public boolean sameCells(Grid other)
+        {
+            return other != null && width == other.width && height == other.height && minX == other.minX && maxX == other.maxX && minY == other.minY && maxY == other.maxY;
+        }
+
+        /**
+         * @return the x value of the center of the given column of cells
+         */
+        public double cellX(int column)
+        {
+            return minX + (column+0.5)*(maxX-minX)/width;
+        }
+
+        /**
+         * @return the y value of the center of the given row of cells
+         */
+        public double cellY(int row)
+        {
+            return maxY - (row+0.5)*(maxY-minY)/height;
+        }
+    }
+
+    /**
+     * The classes and confidences of the cells of a grid
+     */
+    public static class Raster extends Grid
+    {
+        /**
+         * The most likely class of every cell
+         */
+        public final int[] classes;
+        /**
+         * The probability of the most likely class of every cell
+         */
+        public final float[] confidence;
+        /**
+         * The number of times the classifier was asked about a point to make
+         * this raster, 0 if it was resampled from another raster
+         */
+        public long predictions;
+
+        public Raster(Grid grid)
+        {
+            super(grid.width, grid.height, grid.minX, grid.maxX, grid.minY, grid.maxY);
+            this.classes = new int[width*height];
+            this.confidence = new float[width*height];
+        }
+    }
+
+    private DecisionSurface()
+    {
+    }
+
+    /**
+     * Makes the grid with square cells of the given width in pixels over the
+     * view of a plot. Cells past the edge of the plot are cut off, so the grid
+     * covers a little more than the view.
+     * @param cellPixels the width of a cell in pixels
+     * @param plotW the width of the plot in pixels
+     * @param plotH the height of the plot in pixels
+     * @param minX the x value of the left edge of the view
+     * @param maxX the x value of the right edge of the view
+     * @param minY the y value of the bottom edge of the view
+     * @param maxY the y value of the top edge of the view
+     * @return the grid, with its top left cell at the top left of the view
+     */
+    public static Grid grid(int cellPixels, int plotW, int plotH, double minX, double maxX, double minY, double maxY)
+    {
+        final int cellsW = (plotW+cellPixels-1)/cellPixels;
+        final int cellsH = (plotH+cellPixels-1)/cellPixels;
+        final double right = minX + cellsW*cellPixels*(maxX-minX)/plotW;
+        final double bottom = maxY - cellsH*cellPixels*(maxY-minY)/plotH;
+        return new Grid(cellsW, cellsH, minX, right, bottom, maxY);
+    }
+
+    /**
+     *
+     * @param model a trained classifier
+     * @return {@code true} if every worker of an evaluation needs its own
+     * clone of the classifier. Only classifiers known not to change when
+     * classifying are shared; pipelines, kernel models with caches and meta
+     * wrappers are copied.
+     */
+    public static boolean needsCopyPerWorker(Classifier model)
+    {
+        return !SHAREABLE.contains(model.getClass());
+    }
+
+    /**
+     * Evaluates a classifier over a grid
+     * @param model the trained classifier
+     * @param copyPerWorker {@code true} to give every worker thread its own
+     * clone of the classifier, for classifiers that are not safe to use from
+     * many threads at once, as told by {@link #needsCopyPerWorker}
+     * @param grid the cells to evaluate
+     * @param pool the threads to evaluate with
+     * @param cancelled checked between tiles, the evaluation stops once it
+     * returns {@code true}
+     * @return the raster of the classifier, or {@code null} if cancelled
+     */
+    public static Raster evaluate(Classifier model, boolean copyPerWorker, Grid grid, ForkJoinPool pool, BooleanSupplier cancelled)
+    {
+        return evaluate(model, copyPerWorker, grid, pool, cancelled, false);
+    }
+
+    /**
+     * Evaluates a classifier over a grid, asking about the cells inside a
+     * region of one class only at the corners of blocks of up to
+     * {@link #ADAPTIVE_BLOCK} cells. Every cell gets the right class unless a
+     * region smaller than a block falls between the corners. The confidence
+     * of a cell that was not asked about is interpolated from the corners of
+     * its block, so it is only approximate.
+     * @param model the trained classifier
+     * @param copyPerWorker {@code true} to give every worker thread its own
+     * clone of the classifier, see {@link #needsCopyPerWorker}
+     * @param grid the cells to evaluate
+     * @param pool the threads to evaluate with
+     * @param cancelled checked between tiles, the evaluation stops once it
+     * returns {@code true}
+     * @return the raster of the classifier, or {@code null} if cancelled
+     */
+    public static Raster evaluateAdaptive(Classifier model, boolean copyPerWorker, Grid grid, ForkJoinPool pool, BooleanSupplier cancelled)
+    {
+        return evaluate(model, copyPerWorker, grid, pool, cancelled, true);
+    }
+
+    private static Raster evaluate(Classifier model, boolean copyPerWorker, Grid grid, ForkJoinPool pool, BooleanSupplier cancelled, boolean adaptive)
+    {
+        final Raster raster = new Raster(grid);
+        final int tileSize = adaptive ? ADAPTIVE_BLOCK : TILE_SIZE;
+        final int tilesX = (grid.width+tileSize-1)/tileSize;
+        final int tilesY = (grid.height+tileSize-1)/tileSize;
+        final ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker(copyPerWorker ? model.clone() : model));
+        final LongAdder predictions = new LongAdder();
+        final boolean[] known = adaptive ? new boolean[raster.classes.length] : null;
+        if(adaptive)
+        {
+            /*
+             * the corners shared by the first blocks of every tile are asked
+             * about up front, after which a tile only writes its own cells and
+             * asks about a neighbour's cells without keeping the answer, so
+             * every cell is only touched by one thread at a time
+             */
+            int[] rows = lattice(grid.height);
+            pool.invoke(new LatticeTask(raster, workers, rows, lattice(grid.width), 0, rows.length, cancelled, known, predictions));
+        }
+        pool.invoke(new TileTask(raster, workers, tileSize, tilesX, 0, tilesX*tilesY, cancelled, known, predictions));
+        raster.predictions = predictions.sum();
+        return cancelled.getAsBoolean() ? null : raster;
+    }
+
+    /**
+     *
+     * @param cells the number of columns or rows of a grid
+     * @return the first column or row of every adaptive tile, and the last of
+     * the grid, in order
+     */
+    private static int[] lattice(int cells)
+    {
+        int n = (cells-1)/ADAPTIVE_BLOCK + 1;
+        boolean lastOnBlock = (cells-1) % ADAPTIVE_BLOCK == 0;
+        int[] lines = new int[lastOnBlock ? n : n+1];
+        for(int i = 0; i < n; i++)
+            lines[i] = i*ADAPTIVE_BLOCK;
+        lines[lines.length-1] = cells-1;
+        return lines;
+    }
+
+    /**
+     * @return the class and confidence of a cell packed in one value, read
+     * back with {@link #classOf} and {@link #confidenceOf}
+     */
+    private static long pack(int cls, float confidence)
+    {
+        return ((long) cls << 32) | (Float.floatToRawIntBits(confidence) & 0xFFFFFFFFL);
+    }
+
+    private static int classOf(long packed)
+    {
+        return (int) (packed >>> 32);
+    }
+
+    private static float confidenceOf(long packed)
+    {
+        return Float.intBitsToFloat((int) packed);
+    }
+
+    /**
+     * The state of one worker thread: its copy of the classifier and the
+     * point it moves around
+     */
+    private static class Worker
+    {
+        final Classifier model;
+        final DenseVector vec = new DenseVector(2);
+        final DataPoint point = new DataPoint(vec, new int[0], new CategoricalData[0]);
+
+        Worker(Classifier model)
+        {
+            this.model = model;
+        }
+
+        void classify(Raster raster, int cell, double x, double y)
+        {
+            long result = predict(x, y);
+            raster.classes[cell] = classOf(result);
+            raster.confidence[cell] = confidenceOf(result);
+        }
+
+        /**
+         * @return the class and confidence of a point, {@link #pack packed}
+         */
+        long predict(double x, double y)
+        {
+            vec.set(0, x);
+            vec.set(1, y);
+            CategoricalResults result = model.classify(point);
+            int best = result.mostLikely();
+            return pack(best, (float) result.getProb(best));
+        }
+    }
+
+    /**
+     * Asks about the cells where the given rows and columns cross, for a
+     * range of the rows, splitting it in half until one row is left
+     */
+    private static class LatticeTask extends RecursiveAction
+    {
+        private final Raster raster;
+        private final ThreadLocal<Worker> workers;
+        private final int[] rows, cols;
+        private final int from, to;
+        private final BooleanSupplier cancelled;
+        private final boolean[] known;
+        private final LongAdder predictions;
+
+        LatticeTask(Raster raster, ThreadLocal<Worker> workers, int[] rows, int[] cols, int from, int to, BooleanSupplier cancelled, boolean[] known, LongAdder predictions)
+        {
+            this.raster = raster;
+            this.workers = workers;
+            this.rows = rows;
+            this.cols = cols;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+            this.known = known;
+            this.predictions = predictions;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(cancelled.getAsBoolean())
+                return;
+            if(to-from > 1)
+            {
+                int mid = (from+to) >>> 1;
+                invokeAll(new LatticeTask(raster, workers, rows, cols, from, mid, cancelled, known, predictions), new LatticeTask(raster, workers, rows, cols, mid, to, cancelled, known, predictions));
+                return;
+            }
+            Worker worker = workers.get();
+            int row = rows[from];
+            double y = raster.cellY(row);
+            for(int col : cols)
+            {
+                int cell = row*raster.width+col;
+                worker.classify(raster, cell, raster.cellX(col), y);
+                known[cell] = true;
+            }
+            predictions.add(cols.length);
+        }
+    }
+
+    /**
+     * Evaluates a range of tiles, splitting it in half until one is left
+     */
+    private static class TileTask extends RecursiveAction
+    {
+        private final Raster raster;
+        private final ThreadLocal<Worker> workers;
+        private final int tileSize;
+        private final int tilesX;
+        private final int from, to;
+        private final BooleanSupplier cancelled;
+        /**
+         * Which cells have been asked about, or {@code null} to ask about
+         * every cell
+         */
+        private final boolean[] known;
+        private final LongAdder predictions;
+        /**
+         * The end, exclusive, of the cells of the tile being evaluated
+         */
+        private int endX, endY;
+
+        TileTask(Raster raster, ThreadLocal<Worker> workers, int tileSize, int tilesX, int from, int to, BooleanSupplier cancelled, boolean[] known, LongAdder predictions)
+        {
+            this.raster = raster;
+            this.workers = workers;
+            this.tileSize = tileSize;
+            this.tilesX = tilesX;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+            this.known = known;
+            this.predictions = predictions;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(cancelled.getAsBoolean())
+                return;
+            if(to-from > 1)
+            {
+                int mid = (from+to) >>> 1;
+                invokeAll(new TileTask(raster, workers, tileSize, tilesX, from, mid, cancelled, known, predictions), new TileTask(raster, workers, tileSize, tilesX, mid, to, cancelled, known, predictions));
+                return;
+            }
+            Worker worker = workers.get();
+            int startX = (from % tilesX)*tileSize;
+            int startY = (from / tilesX)*tileSize;
+            endX = Math.min(startX+tileSize, raster.width);
+            endY = Math.min(startY+tileSize, raster.height);
+            if(known != null)
+            {
+                //the block reaches the first cells of the next tiles, or the last of the grid
+                refine(worker, startX, startY, Math.min(startX+tileSize, raster.width-1), Math.min(startY+tileSize, raster.height-1));
+                return;
+            }
+            for(int row = startY; row < endY; row++)
+            {
+                double y = raster.cellY(row);
+                for(int col = startX; col < endX; col++)
+                    worker.classify(raster, row*raster.width+col, raster.cellX(col), y);
+            }
+            predictions.add((endX-startX)*(endY-startY));
+        }
+
+        /**
+         * Fills in the cells of this tile in the block between two corners,
+         * inclusive, from its four corners if they agree, or else from its
+         * halves or quarters, which share the cells along their middle
+         */
+        private void refine(Worker worker, int x0, int y0, int x1, int y1)
+        {
+            long c00 = probe(worker, x0, y0);
+            long c10 = probe(worker, x1, y0);
+            long c01 = probe(worker, x0, y1);
+            long c11 = probe(worker, x1, y1);
+            final boolean splitX = x1-x0 >= 2;
+            final boolean splitY = y1-y0 >= 2;
+            if(!splitX && !splitY)
+                return;//every cell is a corner
+            final int cls = classOf(c00);
+            if(cls == classOf(c10) && cls == classOf(c01) && cls == classOf(c11))
+            {
+                float[] conf = raster.confidence;
+                float f00 = confidenceOf(c00), f10 = confidenceOf(c10);
+                float f01 = confidenceOf(c01), f11 = confidenceOf(c11);
+                int lastX = Math.min(x1, endX-1);
+                int lastY = Math.min(y1, endY-1);
+                for(int row = y0; row <= lastY; row++)
+                {
+                    float v = y1 == y0 ? 0 : (row-y0)/(float) (y1-y0);
+                    for(int col = x0; col <= lastX; col++)
+                    {
+                        int cell = row*raster.width+col;
+                        if(known[cell])
+                            continue;
+                        float u = x1 == x0 ? 0 : (col-x0)/(float) (x1-x0);
+                        raster.classes[cell] = cls;
+                        conf[cell] = (1-v)*((1-u)*f00 + u*f10) + v*((1-u)*f01 + u*f11);
+                    }
+                }
+                return;
+            }
+            int midX = (x0+x1) >>> 1;
+            int midY = (y0+y1) >>> 1;
+            if(splitX && splitY)
+            {
+                refine(worker, x0, y0, midX, midY);
+                refine(worker, midX, y0, x1, midY);
+                refine(worker, x0, midY, midX, y1);
+                refine(worker, midX, midY, x1, y1);
+            }
+            else if(splitX)
+            {
+                refine(worker, x0, y0, midX, y1);
+                refine(worker, midX, y0, x1, y1);
+            }
+            else
+            {
+                refine(worker, x0, y0, x1, midY);
+                refine(worker, x0, midY, x1, y1);
+            }
+        }
+
+        /**
+         * Asks about a cell of this tile if it has not been asked about yet,
+         * and about a cell of a neighbouring tile without keeping the answer,
+         * unless it was asked about up front
+         * @return the class and confidence of the cell, {@link #pack packed}
+         */
+        private long probe(Worker worker, int col, int row)
+        {
+            int cell = row*raster.width+col;
+            if(col < endX && row < endY)
+            {
+                if(!known[cell])
+                {
+                    worker.classify(raster, cell, raster.cellX(col), raster.cellY(row));
+                    known[cell] = true;
+                    predictions.increment();
+                }
+            }
+            else if(!onLattice(col, raster.width) || !onLattice(row, raster.height))
+            {
+                predictions.increment();
+                return worker.predict(raster.cellX(col), raster.cellY(row));
+            }
+            return pack(raster.classes[cell], raster.confidence[cell]);
+        }
+
+        /**
+         * @return {@code true} if the column or row was asked about up front
+         */
+        private boolean onLattice(int line, int cells)
+        {
+            return line % ADAPTIVE_BLOCK == 0 || line == cells-1;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Draws a 2D histogram of a {@link Dataset2D} with one bin per pixel. Each
+ * pixel is shaded by the log of how many points fall in it, and colored by the
+ * mix of the classes of those points. The rows are split into bands, and the
+ * points are first sorted into their bands in parallel, by counting the
+ * points of every band in each block of points and then copying their
+ * indices out, as a {@link PointGrid} is built. Each band is then filled by
+ * one thread from its own points, so a single histogram is allocated and
+ * nothing has to be merged.
+ *
+ * @author Edward Raff
+ */
+public class DensityRaster
+{
+    /**
+     * The least opacity a pixel with a single point in it is drawn with, so
+     * that outliers stay visible
+     */
+    private static final double MIN_ALPHA = 0.3;
+
+    private DensityRaster()
+    {
+    }
+
+    /**
+     * Renders the points that fall in the given region
+     * @param data the points to draw
+     * @param minX the x value of the left edge
+     * @param maxX the x value of the right edge
+     * @param minY the y value of the bottom edge
+     * @param maxY the y value of the top edge
+     * @param width the width of the raster in pixels
+     * @param height the height of the raster in pixels
+     * @param pool the threads to render with
+     * @return the ARGB pixels of the raster, row by row from the top left
+     */
+    public static int[] render(Dataset2D data, double minX, double maxX, double minY, double maxY, int width, int height, ForkJoinPool pool)
+    {
+        final int pixels = width*height;
+        final int n = data.size();
+        final int tasks = Math.max(1, Math.min(Math.min(pool.getParallelism(), height), n/(1 << 16)));
+        final double scaleX = width/(maxX-minX);
+        final double scaleY = height/(maxY-minY);
+        //the count, and the sum of the red, green and blue of the points
+        final int[] counts = new int[pixels];
+        final long[][] sums = new long[3][pixels];
+
+        //count the points of every band in each block of points
+        List<Future<int[]>> countFutures = new ArrayList<>(tasks);
+        for(int t = 0; t < tasks; t++)
+        {
+            final int from = (int) ((long) n*t/tasks), to = (int) ((long) n*(t+1)/tasks);
+            countFutures.add(pool.submit(() ->
+            {
+                int[] bandCounts = new int[tasks];
+                for(int i = from; i < to; i++)
+                {
+                    int p = pixel(data, i, minX, maxY, scaleX, scaleY, width, height);
+                    if(p >= 0)
+                        bandCounts[band(p/width, tasks, height)]++;
+                }
+                return bandCounts;
+            }));
+        }
+        int[][] blockCounts = new int[tasks][];
+        for(int t = 0; t < tasks; t++)
+            blockCounts[t] = get(countFutures.get(t));
+
+        //every block copies its points to its own slice of each band
+        final int[] bandStart = new int[tasks+1];
+        final int[][] blockOffsets = new int[tasks][tasks];
+        int pos = 0;
+        for(int band = 0; band < tasks; band++)
+        {
+            bandStart[band] = pos;
+            for(int t = 0; t < tasks; t++)
+            {
+                blockOffsets[t][band] = pos;
+                pos += blockCounts[t][band];
+            }
+        }
+        bandStart[tasks] = pos;
+
+        final int[] order = new int[pos];
+        List<Future<?>> futures = new ArrayList<>(tasks);
+        for(int t = 0; t < tasks; t++)
+        {
+            final int from = (int) ((long) n*t/tasks), to = (int) ((long) n*(t+1)/tasks);
+            final int[] offsets = blockOffsets[t];
+            futures.add(pool.submit(() ->
+            {
+                for(int i = from; i < to; i++)
+                {
+                    int p = pixel(data, i, minX, maxY, scaleX, scaleY, width, height);
+                    if(p >= 0)
+                        order[offsets[band(p/width, tasks, height)]++] = i;
+                }
+            }));
+        }
+        for(Future<?> future : futures)
+            get(future);
+
+        //each band is filled from its own points, so no two threads touch the same pixel
+        futures.clear();
+        for(int t = 0; t < tasks; t++)
+        {
+            final int from = bandStart[t], to = bandStart[t+1];
+            futures.add(pool.submit(() ->
+            {
+                for(int j = from; j < to; j++)
+                {
+                    int i = order[j];
+                    int p = pixel(data, i, minX, maxY, scaleX, scaleY, width, height);
+                    int color = data.label == null ? PlotColors.UNLABELED : PlotColors.forClass(data.label[i]);
+                    counts[p]++;
+                    sums[0][p] += (color >> 16) & 0xFF;
+                    sums[1][p] += (color >> 8) & 0xFF;
+                    sums[2][p] += color & 0xFF;
+                }
+            }));
+        }
+        for(Future<?> future : futures)
+            get(future);
+
+        long maxCount = 1;
+        for(int p = 0; p < pixels; p++)
+            maxCount = Math.max(maxCount, counts[p]);
+        final double logMax = Math.log1p(maxCount);
+
+        int[] argb = new int[pixels];
+        for(int p = 0; p < pixels; p++)
+        {
+            long count = counts[p];
+            if(count == 0)
+            {
+                argb[p] = PlotColors.BACKGROUND;
+                continue;
+            }
+            double alpha = MIN_ALPHA + (1-MIN_ALPHA)*Math.log1p(count)/logMax;
+            int r = blend(sums[0][p]/count, alpha);
+            int g = blend(sums[1][p]/count, alpha);
+            int b = blend(sums[2][p]/count, alpha);
+            argb[p] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        return argb;
+    }
+
+    /**
+     *
+     * @return the pixel point i falls in, or -1 if it is outside the raster
+     */
+    private static int pixel(Dataset2D data, int i, double minX, double maxY, double scaleX, double scaleY, int width, int height)
+    {
+        double px = (data.x[i]-minX)*scaleX;
+        double py = (maxY-data.y[i])*scaleY;
+        if(!(px >= 0 && px < width && py >= 0 && py < height))
+            return -1;
+        return (int) py*width + (int) px;
+    }
+
+    /**
+     *
+     * @return the band of rows the given row is filled by
+     */
+    private static int band(int row, int bands, int height)
+    {
+        return (int) ((long) row*bands/height);
+    }
+
+    /**
+     * Blends a color channel over the white background
+     */
+    private static int blend(long channel, double alpha)
+    {
+        return (int) (255 - (255 - channel)*alpha);
+    }
+
+    private static <T> T get(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import com.edwardraff.jsatfx.swing.ParameterPanel;
+import java.awt.Window;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * Menu of all the {@link DatasetGenerator synthetic data sets}. Picking one
+ * shows its parameters, and then generates it in the background. The points
+ * are rescaled to [0, 1] like a loaded data set before they are handed over.
+ * Each generator keeps its settings between uses.
+ *
+ * @author Edward Raff
+ */
+public class GenerateMenu extends JMenu
+{
+    private final Window parent;
+    private final JLabel status;
+    /**
+     * {@code true} while a data set is being generated
+     */
+    private volatile boolean running = false;
+
+    /**
+     *
+     * @param parent the window to show dialogs over
+     * @param labeled {@code true} to generate labeled data, {@code false} to
+     * drop the classes of the points
+     * @param onGenerated called on the event thread with every generated data
+     * set
+     * @param status the label to show progress in
+     */
+    public GenerateMenu(Window parent, boolean labeled, Consumer<Dataset2D> onGenerated, JLabel status)
+    {
+        this(parent, labeled, onGenerated, null, status);
+    }
+
+    /**
+     *
+     * @param parent the window to show dialogs over
+     * @param labeled {@code true} to generate labeled data, {@code false} to
+     * drop the classes of the points
+     * @param onGenerated called on the event thread with every generated data
+     * set
+     * @param onAppended called on the event thread instead of
+     * {@code onGenerated} with the generated points while "Append to Current
+     * Data" is checked, or {@code null} to not offer appending
+     * @param status the label to show progress in
+     */
+    public GenerateMenu(Window parent, boolean labeled, Consumer<Dataset2D> onGenerated, Consumer<Dataset2D> onAppended, JLabel status)
+    {
+        super("Generate");
+        this.parent = parent;
+        this.status = status;
+        final JCheckBoxMenuItem append = new JCheckBoxMenuItem("Append to Current Data");
+        if(onAppended != null)
+        {
+            add(append);
+            addSeparator();
+        }
+        for(Map.Entry<String, DatasetGenerator> entry : DatasetGenerator.all().entrySet())
+        {
+            final String name = entry.getKey();
+            final DatasetGenerator generator = entry.getValue();
+            JMenuItem item = new JMenuItem(name);
+            item.addActionListener((e) ->
+            {
+                if(running)
+                {
+                    JOptionPane.showMessageDialog(parent, "Please wait for the current data set to finish generating", "Generate " + name, JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                ParameterPanel.showParameterDiag(parent, "Generate " + name, generator);
+                generate(name, generator, labeled, append.isSelected() ? onAppended : onGenerated);
+            });
+            add(item);
+        }
+    }
+
+    private void generate(String name, DatasetGenerator generator, boolean labeled, Consumer<Dataset2D> onGenerated)
+    {
+        running = true;
+        status.setText(String.format("Generating %,d points of %s...", generator.getSize(), name));
+        ComputeRuntime.getPool().execute(() ->
+        {
+            Dataset2D generated = null;
+            Throwable failure = null;
+            try
+            {
+                generated = generator.generate(labeled, ComputeRuntime.getPool());
+                generated.rescale(0, 1);
+            }
+            catch (Throwable ex)
+            {
+                failure = ex;
+                Logger.getLogger(GenerateMenu.class.getName()).log(Level.WARNING, "Could not generate " + name, ex);
+            }
+            finally
+            {
+                final Dataset2D data = generated;
+                final Throwable problem = failure;
+                SwingUtilities.invokeLater(() ->
+                {
+                    running = false;
+                    if(data == null)
+                    {
+                        status.setText(" ");
+                        JOptionPane.showMessageDialog(parent, failureMessage(generator, problem), "Generate " + name, JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    status.setText(String.format("Generated %,d points in %.3f seconds", data.size(), data.getElapsedNanos()/1e9));
+                    onGenerated.accept(data);
+                });
+            }
+        });
+    }
+
+    /**
+     *
+     * @return what to tell the user when generating failed
+     */
+    private static String failureMessage(DatasetGenerator generator, Throwable failure)
+    {
+        //an OutOfMemoryError in a chunk of the points comes back wrapped
+        for(Throwable cause = failure; cause != null; cause = cause.getCause())
+            if(cause instanceof OutOfMemoryError)
+                return "Not enough memory to generate " + generator.getSize() + " points";
+        return "Error: " + (failure == null ? "unknown" : failure.getMessage());
+    }
+}
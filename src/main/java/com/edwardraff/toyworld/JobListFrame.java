@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A window listing the jobs of the {@link JobScheduler}, from which they can
+ * be cancelled and given limits. There is one window shared by all of the
+ * worlds.
+ *
+ * @author Edward Raff
+ */
+public class JobListFrame extends JFrame
+{
+    private static final String[] COLUMNS = new String[]
+    {
+        "Job", "State", "Cores", "Waited", "Ran", "Allocated", "Note"
+    };
+    private static JobListFrame instance;
+
+    private final JobScheduler scheduler = JobScheduler.getInstance();
+    /**
+     * The jobs shown in the table, only touched from the event thread
+     */
+    private List<JobScheduler.Job> shown = new ArrayList<>();
+    private final JobTableModel model = new JobTableModel();
+    private final JTable table = new JTable(model);
+    private final JSpinner timeLimit = new JSpinner(new SpinnerNumberModel(0.0, 0.0, 1e7, 10.0));
+    private final JSpinner memoryLimit = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 256));
+
+    private JobListFrame()
+    {
+        super("Jobs");
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton cancel = new JButton("Cancel");
+        cancel.addActionListener((ActionEvent e) ->
+        {
+            for(JobScheduler.Job job : getSelected())
+                job.cancel();
+        });
+        buttons.add(cancel);
+        JButton clear = new JButton("Clear Finished");
+        clear.addActionListener((ActionEvent e) -> scheduler.clearFinished());
+        buttons.add(clear);
+        getContentPane().add(buttons, BorderLayout.PAGE_END);
+
+        //limits given to new jobs, and to the selected ones on request
+        JPanel limits = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        limits.add(new JLabel("Time limit (s):"));
+        timeLimit.setValue(scheduler.getDefaultTimeLimitMillis()/1000.0);
+        timeLimit.addChangeListener((e) -> scheduler.setDefaultTimeLimitMillis(getTimeLimitMillis()));
+        limits.add(timeLimit);
+        limits.add(new JLabel("Memory limit (MB):"));
+        memoryLimit.setValue((int) (scheduler.getDefaultMemoryLimitBytes() >> 20));
+        memoryLimit.addChangeListener((e) -> scheduler.setDefaultMemoryLimitBytes(getMemoryLimitBytes()));
+        memoryLimit.setEnabled(JobScheduler.isMemoryLimitSupported());
+        limits.add(memoryLimit);
+        JButton apply = new JButton("Apply to Selected");
+        apply.addActionListener((ActionEvent e) ->
+        {
+            for(JobScheduler.Job job : getSelected())
+            {
+                job.setTimeLimitMillis(getTimeLimitMillis());
+                job.setMemoryLimitBytes(getMemoryLimitBytes());
+            }
+        });
+        limits.add(apply);
+        limits.add(new JLabel("(0 is no limit)"));
+        getContentPane().add(limits, BorderLayout.PAGE_START);
+
+        scheduler.addListener((job) -> SwingUtilities.invokeLater(this::refresh));
+        //the times change even when no job does
+        new Timer(500, (ActionEvent e) ->
+        {
+            if(isVisible())
+                refresh();
+        }).start();
+        refresh();
+        setSize(750, 300);
+    }
+
+    /**
+     * Shows the job list
+     * @param parent the component to show the list next to
+     */
+    public static void showJobs(Component parent)
+    {
+        if(instance == null)
+        {
+            instance = new JobListFrame();
+            instance.setLocationRelativeTo(parent);
+        }
+        instance.setVisible(true);
+        instance.toFront();
+    }
+
+    private long getTimeLimitMillis()
+    {
+        return Math.round(((Number) timeLimit.getValue()).doubleValue()*1000);
+    }
+
+    private long getMemoryLimitBytes()
+    {
+        return ((Number) memoryLimit.getValue()).longValue() << 20;
+    }
+
+    private List<JobScheduler.Job> getSelected()
+    {
+        List<JobScheduler.Job> selected = new ArrayList<>();
+        for(int row : table.getSelectedRows())
+            selected.add(shown.get(table.convertRowIndexToModel(row)));
+        return selected;
+    }
+
+    private void refresh()
+    {
+        List<JobScheduler.Job> jobs = scheduler.getJobs();
+        if(jobs.equals(shown))
+        {
+            //same jobs, so update them in place and keep the selection
+            if(!shown.isEmpty())
+                model.fireTableRowsUpdated(0, shown.size()-1);
+        }
+        else
+        {
+            shown = jobs;
+            model.fireTableDataChanged();
+        }
+    }
+
+    private static String seconds(long nanos)
+    {
+        return String.format("%.1f s", nanos/1e9);
+    }
+
+    private class JobTableModel extends AbstractTableModel
+    {
+        @Override
+        public int getRowCount()
+        {
+            return shown.size();
+        }
+
+        @Override
+        public int getColumnCount()
+        {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column)
+        {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column)
+        {
+            JobScheduler.Job job = shown.get(row);
+            JobScheduler.State state = job.getState();
+            switch(column)
+            {
+                case 0:
+                    return job.getName();
+                case 1:
+                    if(state == JobScheduler.State.RUNNING && job.isAbandoned())
+                        return "ABANDONED";
+                    if(state == JobScheduler.State.RUNNING && job.isCancelled())
+                        return "CANCELLING";
+                    return state;
+                case 2:
+                    return state == JobScheduler.State.QUEUED ? "" : job.getGrantedCores();
+                case 3:
+                    return seconds(job.getWaitNanos());
+                case 4:
+                    return seconds(job.getRunNanos());
+                case 5:
+                    long bytes = job.getAllocatedBytes();
+                    return state == JobScheduler.State.RUNNING && bytes >= 0 ? String.format("%,d MB", bytes >> 20) : "";
+                default:
+                    if(job.getCancelReason() != null)
+                        return job.getCancelReason();
+                    if(job.getFailure() != null)
+                        return String.valueOf(job.getFailure().getMessage());
+                    return "";
+            }
+        }
+    }
+}
@@ -0,0 +1,830 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs training jobs several at a time under a budget of cores. Every job says
+ * how many cores it could use, 1 for a model trained on one thread, more for
+ * one given an {@link ExecutorService}. When a job starts it is granted a fair
+ * share of the free cores, split among it and the jobs still waiting, and it
+ * is handed an executor with that many threads for the model to use. Jobs
+ * that can use many cores never take the last free one, and wait for a second
+ * core to free up while one core jobs behind them go ahead, so a fast job
+ * queued behind a slow one starts right away rather than waiting for the slow
+ * job to finish.<br>
+ * <br>
+ * Any job can be cancelled, and may be given a limit on how long it runs and
+ * how much memory it allocates, after which it is cancelled for the user.
+ * Cancelling a job that has not started just takes it out of the queue.
+ * Cancelling a running job interrupts its threads and marks it cancelled, and
+ * tasks stop when they next check {@link #checkCancelled() }. Threads are
+ * never stopped outright, as that could leave shared state, such as a cache,
+ * half updated. Most models never check for either, so a job that has not
+ * stopped after {@link #CANCEL_GRACE_MILLIS} is marked
+ * {@link Job#isAbandoned() abandoned}: its result will be thrown away, but it
+ * keeps its cores until its threads are really done, so the budget is never
+ * overcommitted. The other jobs are left alone.
+ *
+ * @author Edward Raff
+ */
+public class JobScheduler
+{
+    /**
+     * The states a job moves through, in order
+     */
+    public enum State
+    {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    /**
+     * How long a cancelled job is given to stop before it is marked abandoned
+     */
+    public static final long CANCEL_GRACE_MILLIS = 2000;
+    /**
+     * How often running jobs are checked against their limits
+     */
+    private static final long WATCH_MILLIS = 250;
+
+    /**
+     * The work of a job
+     */
+    public interface Task
+    {
+        /**
+         * Runs the job
+         * @param threads the executor to give to the model, with as many
+         * threads as the job was granted cores
+         * @throws Exception if the job failed
+         */
+        public void run(ExecutorService threads) throws Exception;
+    }
+
+    /**
+     * A job given to the scheduler, and its current state
+     */
+    public class Job
+    {
+        private final String name;
+        private final int requestedCores;
+        /**
+         * The work of the job, dropped once it finishes so the data and
+         * models it holds can be collected while the job is still listed
+         */
+        private volatile Task task;
+        private volatile State state = State.QUEUED;
+        private volatile int grantedCores;
+        private volatile Throwable failure;
+        private final long queuedTime = System.nanoTime();
+        private volatile long startTime;
+        private volatile long endTime;
+        private volatile long timeLimitMillis;
+        private volatile long memoryLimitBytes;
+        private volatile String cancelReason;
+        private volatile long cancelTime;
+        /**
+         * The threads the job runs on, the first is the one running the task
+         */
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+        private volatile boolean abandoned = false;
+        /**
+         * The bytes the thread running the task had allocated before the job
+         * started, as it is reused between jobs
+         */
+        private volatile long allocatedAtStart;
+        /**
+         * The bytes the threads of the job allocated, once it has finished,
+         * or -1 while it runs
+         */
+        private volatile long allocatedTotal = -1;
+        private volatile ExecutorService pool;
+        /**
+         * Called once the job has finished, in any way
+         */
+        private final List<Runnable> whenFinished = new ArrayList<>();
+
+        private Job(String name, int requestedCores, Task task, long timeLimitMillis, long memoryLimitBytes)
+        {
+            this.name = name;
+            this.requestedCores = requestedCores;
+            this.task = task;
+            this.timeLimitMillis = timeLimitMillis;
+            this.memoryLimitBytes = memoryLimitBytes;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public State getState()
+        {
+            return state;
+        }
+
+        /**
+         *
+         * @return the number of cores the job is using, or 0 if it has not
+         * started yet
+         */
+        public int getGrantedCores()
+        {
+            return grantedCores;
+        }
+
+        /**
+         *
+         * @return the reason the job failed, or {@code null} if it did not
+         */
+        public Throwable getFailure()
+        {
+            return failure;
+        }
+
+        /**
+         *
+         * @return the time spent waiting in the queue, in nanoseconds
+         */
+        public long getWaitNanos()
+        {
+            return (startTime == 0 ? System.nanoTime() : startTime) - queuedTime;
+        }
+
+        /**
+         *
+         * @return the time spent running, in nanoseconds
+         */
+        public long getRunNanos()
+        {
+            if(startTime == 0)
+                return 0;
+            return (endTime == 0 ? System.nanoTime() : endTime) - startTime;
+        }
+
+        /**
+         *
+         * @return the most time the job may run for in milliseconds, or 0 for
+         * no limit
+         */
+        public long getTimeLimitMillis()
+        {
+            return timeLimitMillis;
+        }
+
+        public void setTimeLimitMillis(long timeLimitMillis)
+        {
+            this.timeLimitMillis = timeLimitMillis;
+        }
+
+        /**
+         *
+         * @return the most bytes the threads of the job may allocate, or 0 for
+         * no limit
+         */
+        public long getMemoryLimitBytes()
+        {
+            return memoryLimitBytes;
+        }
+
+        public void setMemoryLimitBytes(long memoryLimitBytes)
+        {
+            this.memoryLimitBytes = memoryLimitBytes;
+        }
+
+        /**
+         *
+         * @return the number of bytes allocated by the threads of the job so
+         * far, or -1 if the JVM can not tell
+         */
+        public long getAllocatedBytes()
+        {
+            if(threadBean == null)
+                return -1;
+            if(allocatedTotal >= 0)
+                return allocatedTotal;
+            long total = 0;
+            for(Thread thread : threads)
+                total += Math.max(0, threadBean.getThreadAllocatedBytes(thread.getId()));
+            return total - allocatedAtStart;
+        }
+
+        /**
+         *
+         * @return {@code true} if the job has been asked to stop. A task should
+         * check this before showing its result.
+         */
+        public boolean isCancelled()
+        {
+            return cancelReason != null;
+        }
+
+        /**
+         *
+         * @return {@code true} if the job was cancelled but did not stop
+         * within {@link #CANCEL_GRACE_MILLIS}. It still holds its cores until
+         * its threads finish.
+         */
+        public boolean isAbandoned()
+        {
+            return abandoned;
+        }
+
+        /**
+         *
+         * @return why the job was cancelled, or {@code null} if it was not
+         */
+        public String getCancelReason()
+        {
+            return cancelReason;
+        }
+
+        /**
+         * Adds something to do once the job has finished, whether it was
+         * done, failed, or was cancelled before or after it started. If the
+         * job has already finished it is done right away.
+         * @param action what to do, on the thread that finished the job
+         */
+        public void whenFinished(Runnable action)
+        {
+            synchronized(whenFinished)
+            {
+                if(!isFinished())
+                {
+                    whenFinished.add(action);
+                    return;
+                }
+            }
+            action.run();
+        }
+
+        private boolean isFinished()
+        {
+            return state == State.DONE || state == State.FAILED || state == State.CANCELLED;
+        }
+
+        /**
+         * Cancels the job. Does nothing if the job has already finished.
+         */
+        public void cancel()
+        {
+            cancel("Cancelled by user");
+        }
+
+        private void cancel(String reason)
+        {
+            boolean wasQueued;
+            synchronized(JobScheduler.this)
+            {
+                if(isFinished() || cancelReason != null)
+                    return;
+                cancelReason = reason;
+                cancelTime = System.nanoTime();
+                wasQueued = queued.remove(this);
+            }
+            if(wasQueued)
+            {
+                setState(this, State.CANCELLED);
+                return;
+            }
+            fire(this);
+            //the pool threads are interrupted by shutting it down
+            ExecutorService pool = this.pool;
+            if(pool != null)
+                pool.shutdownNow();
+            for(Thread thread : threads)
+                thread.interrupt();
+        }
+
+        /**
+         * Marks a cancelled job that ignored the interrupt as abandoned
+         */
+        private synchronized void abandon()
+        {
+            if(abandoned)
+                return;
+            abandoned = true;
+            Logger.getLogger(JobScheduler.class.getName()).log(Level.INFO, "Job {0} did not stop when cancelled, its cores are held until it finishes", name);
+            fire(this);
+        }
+
+        /**
+         * Waits for the pool threads of a cancelled job to finish. Called once
+         * the task has returned, so the cores are not given back while work
+         * of the job is still running
+         */
+        private void awaitPool()
+        {
+            while(true)
+            {
+                long remaining = CANCEL_GRACE_MILLIS - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelTime);
+                try
+                {
+                    if(pool.awaitTermination(abandoned ? WATCH_MILLIS : Math.max(0, remaining), TimeUnit.MILLISECONDS))
+                        return;
+                }
+                catch (InterruptedException ex)
+                {
+                    //the cancel interrupts this thread too, which is no reason to stop waiting
+                    continue;
+                }
+                abandon();
+            }
+        }
+
+        private void run()
+        {
+            threads.add(Thread.currentThread());
+            current.set(this);
+            if(threadBean != null)
+                allocatedAtStart = Math.max(0, threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()));
+            final ThreadFactory factory = daemonThreads(name);
+            pool = Executors.newFixedThreadPool(grantedCores, (r) ->
+            {
+                Thread thread = factory.newThread(r);
+                threads.add(thread);
+                return thread;
+            });
+            State result = State.DONE;
+            try
+            {
+                Task work = task;
+                if(!isCancelled() && work != null)
+                    work.run(pool);
+            }
+            catch (Throwable ex)
+            {
+                if(!isCancelled())
+                {
+                    failure = ex;
+                    result = State.FAILED;
+                    Logger.getLogger(JobScheduler.class.getName()).log(Level.WARNING, "Job " + name + " failed", ex);
+                }
+            }
+            finally
+            {
+                //pool threads that die no longer report what they allocated, so count them while they are idle
+                long allocated = getAllocatedBytes();
+                pool.shutdownNow();
+                if(isCancelled())
+                {
+                    result = State.CANCELLED;
+                    awaitPool();
+                    allocated = Math.max(allocated, getAllocatedBytes());
+                }
+                if(threadBean != null)
+                    allocatedTotal = Math.max(0, allocated);
+                threads.clear();
+                current.remove();
+                Thread.interrupted();
+                finished(this, result);
+            }
+        }
+
+    }
+
+    private static JobScheduler instance;
+    private static final ThreadLocal<Job> current = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean threadBean = allocationBean();
+
+    private int coreBudget;
+    /**
+     * The cores of the budget not given to a running job, which is negative
+     * for a while if the budget is cut while jobs are running
+     */
+    private int freeCores;
+    private final Queue<Job> queued = new ArrayDeque<>();
+    private int running = 0;
+    private final ExecutorService runners = Executors.newCachedThreadPool(daemonThreads("Job Runner"));
+    private final List<Consumer<Job>> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Every job submitted that has not been cleared, in the order submitted
+     */
+    private final List<Job> jobs = new ArrayList<>();
+    private final ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(daemonThreads("Job Watcher"));
+    private volatile long defaultTimeLimitMillis = 0;
+    private volatile long defaultMemoryLimitBytes = 0;
+    private boolean shutdown = false;
+
+    /**
+     *
+     * @param coreBudget the most cores all running jobs may use together
+     */
+    public JobScheduler(int coreBudget)
+    {
+        if(coreBudget <= 0)
+            throw new IllegalArgumentException("Core budget must be positive, not " + coreBudget);
+        this.coreBudget = coreBudget;
+        this.freeCores = coreBudget;
+        watcher.scheduleWithFixedDelay(this::checkLimits, WATCH_MILLIS, WATCH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     *
+     * @return the scheduler shared by all of the worlds, with a budget of as
+     * many cores as the {@link ComputeRuntime} uses
+     */
+    public static synchronized JobScheduler getInstance()
+    {
+        if(instance == null)
+            instance = new JobScheduler(ComputeRuntime.getParallelism());
+        return instance;
+    }
+
+    public synchronized int getCoreBudget()
+    {
+        return coreBudget;
+    }
+
+    /**
+     * Changes the number of cores jobs may use together. Running jobs keep
+     * the cores they were given, so a smaller budget only takes effect as they
+     * finish.
+     * @param coreBudget the most cores all running jobs may use together
+     */
+    public void setCoreBudget(int coreBudget)
+    {
+        if(coreBudget <= 0)
+            throw new IllegalArgumentException("Core budget must be positive, not " + coreBudget);
+        synchronized(this)
+        {
+            freeCores += coreBudget - this.coreBudget;
+            this.coreBudget = coreBudget;
+        }
+        schedule();
+    }
+
+    /**
+     * Cancels every job and stops taking new ones
+     */
+    public void shutdown()
+    {
+        List<Job> toCancel;
+        synchronized(this)
+        {
+            if(shutdown)
+                return;
+            shutdown = true;
+            toCancel = new ArrayList<>(jobs);
+        }
+        for(Job job : toCancel)
+            job.cancel("The program is closing");
+        //the watcher keeps going, to stop the jobs that ignore being cancelled
+        runners.shutdown();
+    }
+
+    /**
+     *
+     * @return the job running on the calling thread, or {@code null} if the
+     * thread is not running a job
+     */
+    public static Job currentJob()
+    {
+        return current.get();
+    }
+
+    /**
+     * Lets a task stop early once its job has been cancelled. Tasks should
+     * call this between steps of their work.
+     * @throws CancellationException if the job running on the calling thread
+     * has been cancelled
+     */
+    public static void checkCancelled()
+    {
+        Job job = current.get();
+        if(job != null && job.isCancelled())
+            throw new CancellationException(job.getCancelReason());
+    }
+
+    /**
+     *
+     * @return {@code true} if the memory limits of jobs can be checked on
+     * this JVM
+     */
+    public static boolean isMemoryLimitSupported()
+    {
+        return threadBean != null;
+    }
+
+    /**
+     *
+     * @return the time limit given to new jobs in milliseconds, or 0 for none
+     */
+    public long getDefaultTimeLimitMillis()
+    {
+        return defaultTimeLimitMillis;
+    }
+
+    public void setDefaultTimeLimitMillis(long defaultTimeLimitMillis)
+    {
+        this.defaultTimeLimitMillis = Math.max(0, defaultTimeLimitMillis);
+    }
+
+    /**
+     *
+     * @return the memory limit given to new jobs in bytes, or 0 for none
+     */
+    public long getDefaultMemoryLimitBytes()
+    {
+        return defaultMemoryLimitBytes;
+    }
+
+    public void setDefaultMemoryLimitBytes(long defaultMemoryLimitBytes)
+    {
+        this.defaultMemoryLimitBytes = Math.max(0, defaultMemoryLimitBytes);
+    }
+
+    /**
+     * Adds a listener that is told every time a job is submitted or changes
+     * state. Listeners are called from the thread that made the change.
+     * @param listener the listener to add
+     */
+    public void addListener(Consumer<Job> listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Job> listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queues a job to run as soon as there is a core free for it, with the
+     * default limits
+     * @param name the name of the job, shown to the user
+     * @param requestedCores the most cores the job can make use of
+     * @param task the work of the job
+     * @return the job
+     */
+    public Job submit(String name, int requestedCores, Task task)
+    {
+        return submit(name, requestedCores, task, defaultTimeLimitMillis, defaultMemoryLimitBytes);
+    }
+
+    /**
+     * Queues a job to run as soon as there is a core free for it
+     * @param name the name of the job, shown to the user
+     * @param requestedCores the most cores the job can make use of
+     * @param task the work of the job
+     * @param timeLimitMillis the most time the job may run for once started,
+     * or 0 for no limit
+     * @param memoryLimitBytes the most bytes the job's threads may allocate,
+     * or 0 for no limit
+     * @return the job
+     */
+    public Job submit(String name, int requestedCores, Task task, long timeLimitMillis, long memoryLimitBytes)
+    {
+        Job job;
+        synchronized(this)
+        {
+            if(shutdown)
+                throw new IllegalStateException("The scheduler has been shut down");
+            job = new Job(name, Math.max(1, Math.min(requestedCores, coreBudget)), task, timeLimitMillis, memoryLimitBytes);
+            queued.add(job);
+            jobs.add(job);
+        }
+        fire(job);
+        schedule();
+        return job;
+    }
+
+    /**
+     *
+     * @return every job that has not been cleared, in the order submitted
+     */
+    public synchronized List<Job> getJobs()
+    {
+        return new ArrayList<>(jobs);
+    }
+
+    /**
+     * Forgets every job that has finished
+     */
+    public void clearFinished()
+    {
+        synchronized(this)
+        {
+            jobs.removeIf(Job::isFinished);
+        }
+        fire(null);
+    }
+
+    /**
+     *
+     * @return the number of jobs waiting to start
+     */
+    public synchronized int getQueuedCount()
+    {
+        return queued.size();
+    }
+
+    /**
+     *
+     * @return the number of jobs currently running
+     */
+    public synchronized int getRunningCount()
+    {
+        return running;
+    }
+
+    /**
+     *
+     * @return a short description of the running and queued jobs, or a blank
+     * string if there are none
+     */
+    public synchronized String getSummary()
+    {
+        if(running == 0 && queued.isEmpty())
+            return " ";
+        String summary = "Running " + running + (running == 1 ? " job" : " jobs") + " on " + (coreBudget-freeCores) + " of " + coreBudget + " cores";
+        if(!queued.isEmpty())
+            summary += ", " + queued.size() + " waiting";
+        return summary;
+    }
+
+    /**
+     * Starts queued jobs in order while there are free cores
+     */
+    private void schedule()
+    {
+        while(true)
+        {
+            Job job;
+            synchronized(this)
+            {
+                //the first job in line that fits, a parallel job waiting for a
+                //second free core does not hold up the one core jobs behind it
+                job = null;
+                for(Job waiting : queued)
+                    if(freeCores > (keepsCoreBack(waiting) ? 1 : 0))
+                    {
+                        job = waiting;
+                        break;
+                    }
+                if(job == null)
+                    return;
+                queued.remove(job);
+                //split the free cores with the jobs still waiting
+                int share = freeCores/(queued.size()+1);
+                if(keepsCoreBack(job))
+                    share = Math.min(share, freeCores-1);
+                job.grantedCores = Math.max(1, Math.min(job.requestedCores, share));
+                freeCores -= job.grantedCores;
+                running++;
+            }
+            job.startTime = System.nanoTime();
+            setState(job, State.RUNNING);
+            runners.execute(job::run);
+        }
+    }
+
+    /**
+     *
+     * @return {@code true} if the job may not take the last free core, so
+     * that a job queued later can start at once
+     */
+    private boolean keepsCoreBack(Job job)
+    {
+        return job.requestedCores > 1 && coreBudget > 1;
+    }
+
+    /**
+     * Cancels the running jobs that went over a limit, and marks those that
+     * were cancelled but have not stopped as abandoned
+     */
+    private void checkLimits()
+    {
+        //an exception would end the watcher, and with it every limit
+        try
+        {
+            List<Job> toCheck;
+            synchronized(this)
+            {
+                toCheck = new ArrayList<>(jobs);
+            }
+            long now = System.nanoTime();
+            for(Job job : toCheck)
+            {
+                if(job.state != State.RUNNING)
+                    continue;
+                if(job.isCancelled())
+                {
+                    if(now - job.cancelTime > TimeUnit.MILLISECONDS.toNanos(CANCEL_GRACE_MILLIS))
+                        job.abandon();
+                    continue;
+                }
+                long timeLimit = job.timeLimitMillis;
+                if(timeLimit > 0 && job.getRunNanos() > TimeUnit.MILLISECONDS.toNanos(timeLimit))
+                    job.cancel(String.format("Went over its time limit of %.1f seconds", timeLimit/1000.0));
+                long memoryLimit = job.memoryLimitBytes;
+                if(memoryLimit > 0 && job.getAllocatedBytes() > memoryLimit)
+                    job.cancel(String.format("Went over its memory limit of %,d MB", memoryLimit >> 20));
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            Logger.getLogger(JobScheduler.class.getName()).log(Level.WARNING, "Could not check the limits of the jobs", ex);
+        }
+    }
+
+    private void finished(Job job, State result)
+    {
+        synchronized(this)
+        {
+            freeCores += job.grantedCores;
+            running--;
+        }
+        setState(job, result);
+        schedule();
+    }
+
+    private void setState(Job job, State state)
+    {
+        if(state == State.DONE || state == State.FAILED || state == State.CANCELLED)
+            job.endTime = System.nanoTime();
+        List<Runnable> actions;
+        synchronized(job.whenFinished)
+        {
+            job.state = state;
+            actions = job.isFinished() ? new ArrayList<>(job.whenFinished) : new ArrayList<>();
+            if(job.isFinished())
+            {
+                job.whenFinished.clear();
+                job.task = null;
+            }
+        }
+        fire(job);
+        for(Runnable action : actions)
+            action.run();
+    }
+
+    /**
+     * Tells the listeners about a change
+     * @param job the job that changed, or {@code null} if jobs were removed
+     */
+    private void fire(Job job)
+    {
+        for(Consumer<Job> listener : listeners)
+            listener.accept(job);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean()
+    {
+        try
+        {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+            {
+                ((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+                return (com.sun.management.ThreadMXBean) bean;
+            }
+        }
+        catch (LinkageError | UnsupportedOperationException ex)
+        {
+            //not a HotSpot JVM, memory limits are not checked
+        }
+        return null;
+    }
+
+    private static ThreadFactory daemonThreads(String name)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return (r) ->
+        {
+            Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * A window ranking the models of a sweep by their
+ * {@link ModelSweep.Result measurements}. Any column can be sorted on by
+ * clicking its header. Results may be added from any thread.
+ *
+ * @author Edward Raff
+ */
+public class Leaderboard extends JFrame
+{
+    private final String[] columns;
+    /**
+     * The results shown, only touched from the event thread
+     */
+    private final List<ModelSweep.Result> results = new ArrayList<>();
+    private final int expected;
+    private final ResultTableModel model = new ResultTableModel();
+    private final JLabel status = new JLabel(" ");
+    /**
+     * Shown after the number of models measured, only touched from the event
+     * thread
+     */
+    private String summary = "";
+
+    /**
+     *
+     * @param title the title of the window
+     * @param scoreName the name of the score of the models
+     * @param higherIsBetter {@code true} if a higher score is better, so the
+     * best models are listed first
+     * @param expected the number of models in the sweep, or 0 if not known
+     */
+    public Leaderboard(String title, String scoreName, boolean higherIsBetter, int expected)
+    {
+        super(title);
+        this.expected = expected;
+        columns = new String[]
+        {
+            "Model", scoreName, "Train (s)", "Predict (points/s)", "Allocated (MB)", "Error"
+        };
+        JTable table = new JTable(model);
+        TableRowSorter<ResultTableModel> sorter = new TableRowSorter<>(model);
+        //a model that failed has no score, which ranks it below every model that has one
+        final double missing = higherIsBetter ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        sorter.setComparator(1, (Double a, Double b) -> Double.compare(a.isNaN() ? missing : a, b.isNaN() ? missing : b));
+        table.setRowSorter(sorter);
+        table.getRowSorter().setSortKeys(Collections.singletonList(new RowSorter.SortKey(1, higherIsBetter ? SortOrder.DESCENDING : SortOrder.ASCENDING)));
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        getContentPane().add(status, BorderLayout.PAGE_END);
+        updateStatus();
+        setSize(800, 400);
+    }
+
+    /**
+     * Adds the measurements of a model
+     * @param result the measurements
+     */
+    public void add(ModelSweep.Result result)
+    {
+        SwingUtilities.invokeLater(() ->
+        {
+            results.add(result);
+            model.fireTableRowsInserted(results.size()-1, results.size()-1);
+            updateStatus();
+        });
+    }
+
+    /**
+     * Sets a summary of the results, such as their mean, to show below them
+     * @param summary the summary to show
+     */
+    public void setSummary(String summary)
+    {
+        SwingUtilities.invokeLater(() ->
+        {
+            this.summary = summary;
+            updateStatus();
+        });
+    }
+
+    private void updateStatus()
+    {
+        String measured;
+        if(expected > 0)
+            measured = results.size() + " of " + expected + " models measured";
+        else
+            measured = results.size() + " models measured";
+        status.setText(summary.isEmpty() ? measured : measured + ", " + summary);
+    }
+
+    private class ResultTableModel extends AbstractTableModel
+    {
+        @Override
+        public int getRowCount()
+        {
+            return results.size();
+        }
+
+        @Override
+        public int getColumnCount()
+        {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column)
+        {
+            return columns[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column)
+        {
+            return column == 0 || column == 5 ? String.class : Double.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column)
+        {
+            ModelSweep.Result result = results.get(row);
+            switch(column)
+            {
+                case 0:
+                    return result.name;
+                case 1:
+                    return result.score;
+                case 2:
+                    return result.trainSeconds;
+                case 3:
+                    return result.predictPerSecond;
+                case 4:
+                    return result.allocatedBytes < 0 ? Double.NaN : result.allocatedBytes/(1024.0*1024.0);
+                default:
+                    return result.error == null ? "" : result.error;
+            }
+        }
+    }
+}
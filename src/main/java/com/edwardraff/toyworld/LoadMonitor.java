@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared progress and cancellation state for a single data set load. The
+ * loading threads only bump atomic counters, and the GUI polls them at its own
+ * pace, so a fast loader never floods the event thread with updates.
+ *
+ * @author Edward Raff
+ */
+public class LoadMonitor
+{
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private volatile long totalBytes = -1;
+    private volatile boolean cancelled = false;
+    private final List<String> warnings = new ArrayList<>();
+
+    /**
+     * Records that more of the source has been processed
+     * @param bytes the number of additional bytes read
+     * @param rows the number of additional rows parsed
+     */
+    public void addProgress(long bytes, long rows)
+    {
+        bytesRead.addAndGet(bytes);
+        rowsParsed.addAndGet(rows);
+    }
+
+    public void setTotalBytes(long totalBytes)
+    {
+        this.totalBytes = totalBytes;
+    }
+
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    public long getRowsParsed()
+    {
+        return rowsParsed.get();
+    }
+
+    /**
+     *
+     * @return the size of the source in bytes, or -1 if not known
+     */
+    public long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    /**
+     * Requests that the load stop as soon as possible
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Should be called periodically by the loading code
+     * @throws CancellationException if the load has been cancelled
+     */
+    public void checkCancelled()
+    {
+        if(cancelled)
+            throw new CancellationException("Load cancelled");
+    }
+
+    /**
+     * Adds a non fatal problem to be shown to the user once the load finishes
+     * @param warning the message to show
+     */
+    public synchronized void warn(String warning)
+    {
+        warnings.add(warning);
+    }
+
+    public synchronized List<String> getWarnings()
+    {
+        return new ArrayList<>(warnings);
+    }
+
+    /**
+     *
+     * @return a short human readable summary of the progress so far
+     */
+    public String describe()
+    {
+        final double mb = 1024.0*1024.0;
+        long total = totalBytes;
+        if(total > 0)
+            return String.format("Loading: %.1f / %.1f MB, %,d rows", bytesRead.get()/mb, total/mb, rowsParsed.get());
+        return String.format("Loading: %.1f MB, %,d rows", bytesRead.get()/mb, rowsParsed.get());
+    }
+}
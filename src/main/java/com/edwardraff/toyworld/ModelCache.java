@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps trained models so that asking for the same model on the same data
+ * again does not train it again. A model is found by a key made from the
+ * serialized form of the untrained model, which holds the values of all of
+ * its parameters, every meta and multiclass wrapper around it and the chain
+ * of transforms in front of it, together with the
+ * {@link Dataset2D#fingerprint() fingerprint} of the data it is trained on.
+ * A model holding a random number generator is only found again if the
+ * generator is in the same state, as it would otherwise train differently.<br>
+ * <br>
+ * Trained models are held serialized, so every hit gets its own copy, and the
+ * size of the cache is known exactly. The least recently used models are moved
+ * to files in a temporary directory once the cache goes over its memory limit,
+ * and deleted once the files go over their own limit. The limits are set by
+ * the {@code toyworld.modelcache.mb} and {@code toyworld.modelcache.diskmb}
+ * system properties, a disk limit of 0 keeps nothing on disk. Models that can
+ * not be serialized are never cached.
+ *
+ * @author Edward Raff
+ */
+public class ModelCache
+{
+    private static ModelCache instance;
+
+    private final long memoryLimit;
+    private final long diskLimit;
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+    /**
+     * The serialized models in memory, least recently used first
+     */
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The size of every model spilled to disk, least recently used first
+     */
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private File spillDir;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     *
+     * @param memoryLimit the most bytes of models to keep in memory
+     * @param diskLimit the most bytes of models to keep on disk, or 0 to keep
+     * none
+     */
+    public ModelCache(long memoryLimit, long diskLimit)
+    {
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+    }
+
+    /**
+     *
+     * @return the cache shared by all of the worlds
+     */
+    public static synchronized ModelCache getInstance()
+    {
+        if(instance == null)
+        {
+            long defaultMB = Math.min(256, Runtime.getRuntime().maxMemory() / 8 >> 20);
+            instance = new ModelCache(Long.getLong("toyworld.modelcache.mb", defaultMB) << 20, Long.getLong("toyworld.modelcache.diskmb", 1024) << 20);
+        }
+        return instance;
+    }
+
+    /**
+     * Makes the key of a model trained on some data. Must be called before
+     * the model is trained.
+     * @param model the untrained model, with all of its settings
+     * @param data the data the model will be trained on, with the weights it
+     * will be trained with
+     * @return the key of the trained model, or {@code null} if the model can
+     * not be cached
+     */
+    public static String key(Object model, Dataset2D data)
+    {
+        byte[] bytes = serialize(model);
+        if(bytes == null)
+            return null;
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes);
+            long fingerprint = data.fingerprint();
+            for(int i = 0; i < 8; i++)
+                digest.update((byte) (fingerprint >>> (8*i)));
+            StringBuilder key = new StringBuilder();
+            for(byte b : digest.digest())
+                key.append(String.format("%02x", b));
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            return null;//every JVM has SHA-256, but no cache is better than a crash
+        }
+    }
+
+    /**
+     * Finds a trained model
+     * @param <T> the type of the model
+     * @param key the key of the model, from {@link #key(Object, Dataset2D) }
+     * @return a copy of the trained model, or {@code null} if it is not in the
+     * cache
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key)
+    {
+        byte[] bytes;
+        synchronized(this)
+        {
+            bytes = memory.get(key);
+            if(bytes == null && disk.containsKey(key))
+            {
+                try
+                {
+                    bytes = Files.readAllBytes(spillFile(key).toPath());
+                }
+                catch (IOException ex)
+                {
+                    Logger.getLogger(ModelCache.class.getName()).log(Level.WARNING, "Could not read cached model", ex);
+                }
+                removeFromDisk(key);
+                if(bytes != null)
+                    putInMemory(key, bytes);
+            }
+            if(bytes == null)
+            {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return (T) in.readObject();
+        }
+        catch (IOException | ClassNotFoundException ex)
+        {
+            Logger.getLogger(ModelCache.class.getName()).log(Level.WARNING, "Could not read cached model", ex);
+            synchronized(this)
+            {
+                removeFromMemory(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Adds a trained model to the cache. The model is copied, so it may be
+     * used freely afterwards.
+     * @param key the key of the model, from {@link #key(Object, Dataset2D) }
+     * made before it was trained
+     * @param trained the trained model
+     */
+    public void put(String key, Object trained)
+    {
+        byte[] bytes = serialize(trained);
+        if(bytes == null)
+            return;
+        synchronized(this)
+        {
+            removeFromMemory(key);
+            removeFromDisk(key);
+            if(bytes.length > memoryLimit)
+                spill(key, bytes);
+            else
+                putInMemory(key, bytes);
+        }
+    }
+
+    /**
+     *
+     * @return a short description of how many models are cached and how
+     * often they have been found
+     */
+    public synchronized String getSummary()
+    {
+        return String.format("%d models in memory (%.1f MB), %d on disk (%.1f MB), %d hits, %d misses",
+                memory.size(), memoryBytes/(1024.0*1024.0), disk.size(), diskBytes/(1024.0*1024.0), hits, misses);
+    }
+
+    private void putInMemory(String key, byte[] bytes)
+    {
+        memory.put(key, bytes);
+        memoryBytes += bytes.length;
+        Iterator<Map.Entry<String, byte[]>> iter = memory.entrySet().iterator();
+        while(memoryBytes > memoryLimit && iter.hasNext())
+        {
+            Map.Entry<String, byte[]> eldest = iter.next();
+            if(eldest.getKey().equals(key))
+                continue;
+            iter.remove();
+            memoryBytes -= eldest.getValue().length;
+            spill(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void removeFromMemory(String key)
+    {
+        byte[] bytes = memory.remove(key);
+        if(bytes != null)
+            memoryBytes -= bytes.length;
+    }
+
+    /**
+     * Moves a model evicted from memory to disk, if there is room for it
+     */
+    private void spill(String key, byte[] bytes)
+    {
+        if(bytes.length > diskLimit)
+            return;
+        try
+        {
+            if(spillDir == null)
+            {
+                spillDir = Files.createTempDirectory("toyworld-models").toFile();
+                //registered first so it is deleted after the files in it
+                spillDir.deleteOnExit();
+            }
+            File file = spillFile(key);
+            Files.write(file.toPath(), bytes);
+            file.deleteOnExit();
+            disk.put(key, (long) bytes.length);
+            diskBytes += bytes.length;
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(ModelCache.class.getName()).log(Level.WARNING, "Could not spill model to disk", ex);
+            return;
+        }
+        Iterator<Map.Entry<String, Long>> iter = disk.entrySet().iterator();
+        while(diskBytes > diskLimit && iter.hasNext())
+        {
+            Map.Entry<String, Long> eldest = iter.next();
+            iter.remove();
+            diskBytes -= eldest.getValue();
+            spillFile(eldest.getKey()).delete();
+        }
+    }
+
+    private void removeFromDisk(String key)
+    {
+        Long size = disk.remove(key);
+        if(size != null)
+        {
+            diskBytes -= size;
+            spillFile(key).delete();
+        }
+    }
+
+    private File spillFile(String key)
+    {
+        return new File(spillDir, key + ".model");
+    }
+
+    /**
+     *
+     * @return the serialized object, or {@code null} if it can not be
+     * serialized
+     */
+    private static byte[] serialize(Object obj)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(obj);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(ModelCache.class.getName()).log(Level.FINE, "Model can not be cached", ex);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+}
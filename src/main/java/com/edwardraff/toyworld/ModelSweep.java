@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.Classifier;
+import jsat.regression.RegressionDataSet;
+import jsat.regression.Regressor;
+
+/**
+ * Measures models for the {@link Leaderboard}. Every model is trained on one
+ * part of the data and scored on the rest, recording how long training took,
+ * how many points per second it predicts and how much memory it allocated.
+ *
+ * @author Edward Raff
+ */
+public class ModelSweep
+{
+    /**
+     * The measurements of one model
+     */
+    public static class Result
+    {
+        public final String name;
+        public final double trainSeconds;
+        /**
+         * Held out points predicted per second, on one thread
+         */
+        public final double predictPerSecond;
+        /**
+         * Bytes allocated by the job while training and predicting, or -1 if
+         * not known
+         */
+        public final long allocatedBytes;
+        /**
+         * Accuracy for a classifier, mean squared error for a regressor
+         */
+        public final double score;
+        /**
+         * Why the model could not be measured, or {@code null}
+         */
+        public final String error;
+
+        public Result(String name, double trainSeconds, double predictPerSecond, long allocatedBytes, double score)
+        {
+            this.name = name;
+            this.trainSeconds = trainSeconds;
+            this.predictPerSecond = predictPerSecond;
+            this.allocatedBytes = allocatedBytes;
+            this.score = score;
+            this.error = null;
+        }
+
+        /**
+         * Creates the result of a model that failed
+         * @param name the name of the model
+         * @param error why it failed
+         */
+        public Result(String name, String error)
+        {
+            this.name = name;
+            this.trainSeconds = Double.NaN;
+            this.predictPerSecond = Double.NaN;
+            this.allocatedBytes = -1;
+            this.score = Double.NaN;
+            this.error = error;
+        }
+    }
+
+    private ModelSweep()
+    {
+    }
+
+    /**
+     * Randomly splits a data set into a training and a testing part. The
+     * points are copied, so the parts do not change if the weights of the
+     * original data are changed later.
+     * @param data the data to split
+     * @param testFraction the fraction of points to hold out for testing
+     * @param rand the source of randomness
+     * @return the training part and then the testing part
+     */
+    public static Dataset2D[] split(Dataset2D data, double testFraction, SplittableRandom rand)
+    {
+        int n = data.size();
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++)
+            order[i] = i;
+        for(int i = n-1; i > 0; i--)
+        {
+            int j = rand.nextInt(i+1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        int testSize = Math.max(1, Math.min(n-1, (int) Math.round(n*testFraction)));
+        int[] test = new int[testSize];
+        int[] train = new int[n-testSize];
+        System.arraycopy(order, 0, test, 0, testSize);
+        System.arraycopy(order, testSize, train, 0, train.length);
+        return new Dataset2D[]{data.subset(train), data.subset(test)};
+    }
+
+    /**
+     * Trains and scores a classifier. Must be called from a job of the
+     * {@link JobScheduler} for the allocation to be known.
+     * @param name the name of the model
+     * @param model the untrained model
+     * @param train the points to train on
+     * @param test the points to score on
+     * @param threads the threads to train with, or {@code null} to train on
+     * one
+     * @return the measurements of the model
+     */
+    public static Result classification(String name, Classifier model, Dataset2D train, Dataset2D test, ExecutorService threads)
+    {
+        long start = System.nanoTime();
+        if(threads != null)
+            model.trainC(train.asClassificationDataSet(), threads);
+        else
+            model.trainC(train.asClassificationDataSet());
+        long trainNanos = System.nanoTime()-start;
+        return score(name, model, trainNanos/1e9, test);
+    }
+
+    /**
+     * Trains and scores a regressor. Must be called from a job of the
+     * {@link JobScheduler} for the allocation to be known.
+     * @param name the name of the model
+     * @param model the untrained model
+     * @param train the points to train on
+     * @param test the points to score on
+     * @param threads the threads to train with, or {@code null} to train on
+     * one
+     * @return the measurements of the model
+     */
+    public static Result regression(String name, Regressor model, Dataset2D train, Dataset2D test, ExecutorService threads)
+    {
+        long start = System.nanoTime();
+        if(threads != null)
+            model.train(train.asRegressionDataSet(), threads);
+        else
+            model.train(train.asRegressionDataSet());
+        long trainNanos = System.nanoTime()-start;
+        return score(name, model, trainNanos/1e9, test);
+    }
+
+    /**
+     * Trains and scores a classifier like
+     * {@link #classification(String, Classifier, Dataset2D, Dataset2D, ExecutorService) },
+     * but takes the trained model from the {@link ModelCache} if the same
+     * model was trained on the same points before. The training time of a
+     * cached model is not known.
+     * @param name the name of the model
+     * @param model the untrained model
+     * @param train the points to train on
+     * @param test the points to score on
+     * @param threads the threads to train with, or {@code null} to train on
+     * one
+     * @return the measurements of the model
+     */
+    public static Result cachedClassification(String name, Classifier model, Dataset2D train, Dataset2D test, ExecutorService threads)
+    {
+        return cachedClassification(name, model, ModelCache.key(model, train), train, test, threads);
+    }
+
+    /**
+     * Trains and scores a classifier like
+     * {@link #cachedClassification(String, Classifier, Dataset2D, Dataset2D, ExecutorService) },
+     * with a key made by the caller, for models whose key should leave out
+     * settings that do not change the trained model
+     * @param name the name of the model
+     * @param model the untrained model
+     * @param key the {@link ModelCache} key of the trained model, or
+     * {@code null} to not cache it
+     * @param train the points to train on
+     * @param test the points to score on
+     * @param threads the threads to train with, or {@code null} to train on
+     * one
+     * @return the measurements of the model
+     */
+    public static Result cachedClassification(String name, Classifier model, String key, Dataset2D train, Dataset2D test, ExecutorService threads)
+    {
+        Classifier cached = key == null ? null : ModelCache.getInstance().get(key);
+        if(cached == null)
+        {
+            Result result = classification(name, model, train, test, threads);
+            if(key != null)
+                ModelCache.getInstance().put(key, model);
+            return result;
+        }
+        return score(name + " (cached)", cached, Double.NaN, test);
+    }
+
+    /**
+     * Trains and scores a regressor like
+     * {@link #regression(String, Regressor, Dataset2D, Dataset2D, ExecutorService) },
+     * but takes the trained model from the {@link ModelCache} if the same
+     * model was trained on the same points before. The training time of a
+     * cached model is not known.
+     * @param name the name of the model
+     * @param model the untrained model
+     * @param train the points to train on
+     * @param test the points to score on
+     * @param threads the threads to train with, or {@code null} to train on
+     * one
+     * @return the measurements of the model
+     */
+    public static Result cachedRegression(String name, Regressor model, Dataset2D train, Dataset2D test, ExecutorService threads)
+    {
+        String key = ModelCache.key(model, train);
+        Regressor cached = key == null ? null : ModelCache.getInstance().get(key);
+        if(cached == null)
+        {
+            Result result = regression(name, model, train, test, threads);
+            if(key != null)
+                ModelCache.getInstance().put(key, model);
+            return result;
+        }
+        return score(name + " (cached)", cached, Double.NaN, test);
+    }
+
+    private static Result score(String name, Classifier trained, double trainSeconds, Dataset2D test)
+    {
+        ClassificationDataSet testSet = test.asClassificationDataSet();
+        int correct = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < test.size(); i++)
+        {
+            if((i & 1023) == 0)
+                JobScheduler.checkCancelled();
+            if(trained.classify(testSet.getDataPoint(i)).mostLikely() == test.label[i])
+                correct++;
+        }
+        long predictNanos = System.nanoTime()-start;
+        return new Result(name, trainSeconds, test.size()/(predictNanos/1e9), allocated(), correct/(double) test.size());
+    }
+
+    private static Result score(String name, Regressor trained, double trainSeconds, Dataset2D test)
+    {
+        RegressionDataSet testSet = test.asRegressionDataSet();
+        double squaredError = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < test.size(); i++)
+        {
+            if((i & 1023) == 0)
+                JobScheduler.checkCancelled();
+            double diff = trained.regress(testSet.getDataPoint(i)) - test.y[i];
+            squaredError += diff*diff;
+        }
+        long predictNanos = System.nanoTime()-start;
+        return new Result(name, trainSeconds, test.size()/(predictNanos/1e9), allocated(), squaredError/test.size());
+    }
+
+    private static long allocated()
+    {
+        JobScheduler.Job job = JobScheduler.currentJob();
+        return job == null ? -1 : job.getAllocatedBytes();
+    }
+}
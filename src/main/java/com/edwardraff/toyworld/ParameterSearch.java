@@ -0,0 +1,485 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import jsat.parameters.DoubleParameter;
+import jsat.parameters.IntParameter;
+import jsat.parameters.Parameter;
+import jsat.parameters.Parameterized;
+
+/**
+ * Searches for good values of the numeric parameters of a model. Candidate
+ * settings are taken from a grid or at random from a range for every
+ * parameter, and are pruned with successive halving: all of the candidates
+ * are trained on a small part of the training data, the best
+ * {@code 1/}{@link #HALVING_FACTOR} of them go on to be trained on
+ * {@link #HALVING_FACTOR} times as much data, and so on until the last few
+ * are trained on all of it. Every candidate is trained on its own copy of the
+ * model as a single core job of the {@link JobScheduler}, so many are trained
+ * at once, and every trial is shown in a {@link Leaderboard}.
+ *
+ * @author Edward Raff
+ * @param <M> the type of the model
+ */
+public class ParameterSearch<M>
+{
+    /**
+     * The fraction of candidates dropped at every round is 1 minus one over
+     * this
+     */
+    public static final int HALVING_FACTOR = 3;
+    /**
+     * The fewest training points candidates are first trained on
+     */
+    public static final int MIN_ROUND_POINTS = 200;
+    /**
+     * The most candidates a grid may have
+     */
+    public static final int MAX_CANDIDATES = 10000;
+
+    /**
+     * Trains and scores one candidate
+     * @param <M> the type of the model
+     */
+    public interface Trial<M>
+    {
+        /**
+         * Trains a model and measures it
+         * @param name the name of the trial
+         * @param model the model to train
+         * @param train the points to train on
+         * @param validation the points to score on
+         * @param threads the threads to train with, or {@code null} for one
+         * @return the measurements of the trained model
+         * @throws Exception if the model could not be trained
+         */
+        public ModelSweep.Result run(String name, M model, Dataset2D train, Dataset2D validation, ExecutorService threads) throws Exception;
+    }
+
+    /**
+     * The values to search for one parameter
+     */
+    public static class Range
+    {
+        /**
+         * The name of the parameter, as given by
+         * {@link Parameter#getASCIIName() }
+         */
+        public final String name;
+        /**
+         * Whether the parameter is an {@link IntParameter}
+         */
+        public final boolean integer;
+        public final double min;
+        public final double max;
+        /**
+         * The number of values to take for a grid
+         */
+        public final int steps;
+        /**
+         * Whether values are spread evenly over the log of the range
+         */
+        public final boolean log;
+
+        public Range(String name, boolean integer, double min, double max, int steps, boolean log)
+        {
+            if(!(min <= max) || steps <= 0)
+                throw new IllegalArgumentException("Bad range for " + name + ": " + min + " to " + max + " in " + steps + " steps");
+            if(log && min <= 0)
+                throw new IllegalArgumentException("A log range for " + name + " must be positive");
+            this.name = name;
+            this.integer = integer;
+            this.min = min;
+            this.max = max;
+            this.steps = steps;
+            this.log = log;
+        }
+
+        /**
+         * Suggests a range for a parameter around its current value
+         * @param param the parameter
+         * @return a range for the parameter, or {@code null} if it is not
+         * numeric
+         */
+        public static Range around(Parameter param)
+        {
+            if(param instanceof DoubleParameter)
+            {
+                double value = ((DoubleParameter) param).getValue();
+                if(value > 0)
+                    return new Range(param.getASCIIName(), false, value/10, value*10, 5, true);
+                else if(value < 0)
+                    return new Range(param.getASCIIName(), false, value*10, value/10, 5, false);
+                return new Range(param.getASCIIName(), false, 0, 1, 5, false);
+            }
+            else if(param instanceof IntParameter)
+            {
+                int value = ((IntParameter) param).getValue();
+                int low = value > 0 ? Math.max(1, value/2) : 0;
+                int high = value > 0 ? value*2 : 10;
+                return new Range(param.getASCIIName(), true, low, high, Math.min(5, high-low+1), false);
+            }
+            return null;
+        }
+
+        /**
+         *
+         * @return the values of the grid, without repeats
+         */
+        public double[] grid()
+        {
+            TreeSet<Double> values = new TreeSet<>();
+            for(int i = 0; i < steps; i++)
+                values.add(at(steps == 1 ? 0.5 : i/(double) (steps-1)));
+            double[] grid = new double[values.size()];
+            int i = 0;
+            for(double value : values)
+                grid[i++] = value;
+            return grid;
+        }
+
+        /**
+         * @param rand the source of randomness
+         * @return a value drawn from the range
+         */
+        public double random(SplittableRandom rand)
+        {
+            return at(rand.nextDouble());
+        }
+
+        /**
+         * @return the value the given fraction of the way through the range
+         */
+        private double at(double frac)
+        {
+            double value = log ? Math.exp(Math.log(min) + frac*(Math.log(max)-Math.log(min))) : min + frac*(max-min);
+            return integer ? Math.round(value) : value;
+        }
+    }
+
+    /**
+     * One setting of the parameters and how it did
+     */
+    private class Candidate
+    {
+        final double[] values;
+        volatile double score = Double.NaN;
+        volatile M model;
+
+        Candidate(double[] values)
+        {
+            this.values = values;
+        }
+
+        String describe()
+        {
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < ranges.size(); i++)
+            {
+                if(i > 0)
+                    sb.append(", ");
+                sb.append(ranges.get(i).name).append(" = ");
+                if(ranges.get(i).integer)
+                    sb.append((long) values[i]);
+                else
+                    sb.append(String.format("%.4g", values[i]));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final String name;
+    private final M prototype;
+    private final UnaryOperator<M> copier;
+    private final UnaryOperator<M> wrapper;
+    private final List<Range> ranges;
+    private final Trial<M> trial;
+    private final boolean higherIsBetter;
+    private final Leaderboard leaderboard;
+    private final BiConsumer<M, String> onBest;
+    private final Consumer<String> onFailed;
+    private Dataset2D train;
+    private Dataset2D validation;
+    private int rounds;
+
+    /**
+     *
+     * @param name the name of the model, used for the names of the jobs
+     * @param prototype the model to search the parameters of, which must be
+     * {@link Parameterized}. It is not changed.
+     * @param copier makes a copy of the model to train
+     * @param wrapper wraps a copy of the model with its parameters set in
+     * anything else it should be trained with, such as transforms
+     * @param ranges the values to search for every parameter
+     * @param trial trains and scores a candidate
+     * @param higherIsBetter {@code true} if a higher score is better
+     * @param leaderboard where every trial is shown
+     * @param onBest given the best model, trained on all of the training
+     * data, and a description of its parameters
+     * @param onFailed given the reason if no candidate could be trained
+     */
+    public ParameterSearch(String name, M prototype, UnaryOperator<M> copier, UnaryOperator<M> wrapper, List<Range> ranges, Trial<M> trial, boolean higherIsBetter, Leaderboard leaderboard, BiConsumer<M, String> onBest, Consumer<String> onFailed)
+    {
+        if(!(prototype instanceof Parameterized))
+            throw new IllegalArgumentException(name + " has no parameters to search");
+        if(ranges.isEmpty())
+            throw new IllegalArgumentException("At least one parameter must be searched");
+        this.name = name;
+        this.prototype = prototype;
+        this.copier = copier;
+        this.wrapper = wrapper;
+        this.ranges = ranges;
+        this.trial = trial;
+        this.higherIsBetter = higherIsBetter;
+        this.leaderboard = leaderboard;
+        this.onBest = onBest;
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * Returns the numeric parameters of a model that can be searched
+     * @param model the model
+     * @return a suggested range for every numeric parameter of the model
+     */
+    public static List<Range> suggestRanges(Parameterized model)
+    {
+        List<Range> suggested = new ArrayList<>();
+        for(Parameter param : model.getParameters())
+        {
+            Range range = Range.around(param);
+            if(range != null)
+                suggested.add(range);
+        }
+        return suggested;
+    }
+
+    /**
+     * Returns the number of candidates in the grid of the given ranges
+     * @param ranges the ranges of the parameters
+     * @return the number of candidates, at most {@link Long#MAX_VALUE}
+     */
+    public static long gridSize(List<Range> ranges)
+    {
+        long size = 1;
+        for(Range range : ranges)
+        {
+            size *= range.grid().length;
+            if(size > MAX_CANDIDATES)
+                return Long.MAX_VALUE;
+        }
+        return size;
+    }
+
+    /**
+     *
+     * @return every combination of the grid values of the ranges
+     * @throws IllegalArgumentException if there are more than
+     * {@link #MAX_CANDIDATES}
+     */
+    public List<double[]> grid()
+    {
+        if(gridSize(ranges) > MAX_CANDIDATES)
+            throw new IllegalArgumentException("The grid has more than " + MAX_CANDIDATES + " candidates");
+        List<double[]> candidates = new ArrayList<>();
+        candidates.add(new double[ranges.size()]);
+        for(int i = 0; i < ranges.size(); i++)
+        {
+            List<double[]> expanded = new ArrayList<>();
+            for(double[] partial : candidates)
+                for(double value : ranges.get(i).grid())
+                {
+                    double[] candidate = partial.clone();
+                    candidate[i] = value;
+                    expanded.add(candidate);
+                }
+            candidates = expanded;
+        }
+        return candidates;
+    }
+
+    /**
+     * @param count the number of candidates
+     * @param rand the source of randomness
+     * @return candidates with every value drawn at random from its range
+     */
+    public List<double[]> random(int count, SplittableRandom rand)
+    {
+        List<double[]> candidates = new ArrayList<>();
+        for(int c = 0; c < count; c++)
+        {
+            double[] candidate = new double[ranges.size()];
+            for(int i = 0; i < ranges.size(); i++)
+                candidate[i] = ranges.get(i).random(rand);
+            candidates.add(candidate);
+        }
+        return candidates;
+    }
+
+    /**
+     * Starts the search, which runs in the background
+     * @param candidates the settings to try
+     * @param train the points to train on, in random order
+     * @param validation the points to score candidates on
+     */
+    public void start(List<double[]> candidates, Dataset2D train, Dataset2D validation)
+    {
+        this.train = train;
+        this.validation = validation;
+        rounds = 1;
+        for(long c = HALVING_FACTOR; c <= candidates.size(); c *= HALVING_FACTOR)
+            rounds++;
+        List<Candidate> alive = new ArrayList<>();
+        for(double[] values : candidates)
+            alive.add(new Candidate(values));
+        startRound(alive, 0);
+    }
+
+    /**
+     *
+     * @return the number of training points used in the given round
+     */
+    private int roundSize(int round)
+    {
+        long size = train.size();
+        for(int r = round; r < rounds-1; r++)
+            size /= HALVING_FACTOR;
+        return (int) Math.max(Math.min(MIN_ROUND_POINTS, train.size()), size);
+    }
+
+    private void startRound(final List<Candidate> alive, final int round)
+    {
+        final int size = roundSize(round);
+        int[] rows = new int[size];
+        for(int i = 0; i < size; i++)
+            rows[i] = i;
+        //the training points are in random order, so the first few are a random sample
+        final Dataset2D roundTrain = size == train.size() ? train : train.subset(rows);
+
+        List<Candidate> configured = new ArrayList<>();
+        List<M> models = new ArrayList<>();
+        for(Candidate candidate : alive)
+        {
+            M model = configure(candidate.values);
+            if(model != null)
+            {
+                configured.add(candidate);
+                models.add(wrapper.apply(model));
+            }
+        }
+        if(configured.isEmpty())
+        {
+            onFailed.accept("None of the candidates could be set on " + name);
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(configured.size());
+        final JobScheduler scheduler = JobScheduler.getInstance();
+        for(int i = 0; i < configured.size(); i++)
+        {
+            final Candidate candidate = configured.get(i);
+            final M model = models.get(i);
+            final String trialName = String.format("Round %d, %,d points: %s", round+1, size, candidate.describe());
+            JobScheduler.Job job = scheduler.submit("Search " + name + " " + trialName, 1, (threads) ->
+            {
+                try
+                {
+                    ModelSweep.Result result = trial.run(trialName, model, roundTrain, validation, null);
+                    candidate.model = model;
+                    candidate.score = result.score;
+                    leaderboard.add(result);
+                }
+                catch(Exception ex)
+                {
+                    if(!JobScheduler.currentJob().isCancelled())
+                        leaderboard.add(new ModelSweep.Result(trialName, String.valueOf(ex.getMessage())));
+                    throw ex;
+                }
+            });
+            //candidates that failed or were cancelled keep a score of NaN, and are dropped
+            job.whenFinished(() ->
+            {
+                if(remaining.decrementAndGet() == 0)
+                    finishRound(configured, round);
+            });
+        }
+    }
+
+    private void finishRound(List<Candidate> tried, int round)
+    {
+        List<Candidate> scored = new ArrayList<>();
+        for(Candidate candidate : tried)
+            if(!Double.isNaN(candidate.score))
+                scored.add(candidate);
+        if(scored.isEmpty())
+        {
+            onFailed.accept("Every candidate of " + name + " failed");
+            return;
+        }
+        Comparator<Candidate> byScore = Comparator.comparingDouble((Candidate c) -> c.score);
+        scored.sort(higherIsBetter ? byScore.reversed() : byScore);
+
+        if(round == rounds-1)
+        {
+            Candidate best = scored.get(0);
+            onBest.accept(best.model, best.describe());
+            return;
+        }
+        int keep = (scored.size() + HALVING_FACTOR-1)/HALVING_FACTOR;
+        List<Candidate> survivors = new ArrayList<>(scored.subList(0, keep));
+        for(Candidate candidate : survivors)
+        {
+            candidate.model = null;
+            candidate.score = Double.NaN;
+        }
+        //a lone survivor goes straight to all of the training data
+        startRound(survivors, survivors.size() == 1 ? rounds-1 : round+1);
+    }
+
+    /**
+     * Makes a copy of the prototype with the given parameter values
+     * @return the configured copy, or {@code null} if a value was rejected
+     */
+    private M configure(double[] values)
+    {
+        M model = copier.apply(prototype);
+        Parameterized parameterized = (Parameterized) model;
+        for(int i = 0; i < ranges.size(); i++)
+        {
+            Parameter param = parameterized.getParameter(ranges.get(i).name);
+            boolean accepted;
+            if(param instanceof DoubleParameter)
+                accepted = ((DoubleParameter) param).setValue(values[i]);
+            else if(param instanceof IntParameter)
+                accepted = ((IntParameter) param).setValue((int) values[i]);
+            else
+                accepted = false;
+            if(!accepted)
+                return null;
+        }
+        return model;
+    }
+}
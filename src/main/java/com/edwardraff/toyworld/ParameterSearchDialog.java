@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.table.DefaultTableModel;
+import jsat.parameters.Parameterized;
+
+/**
+ * Asks the user which parameters of a model to search, over what ranges, and
+ * how, for a {@link ParameterSearch}.
+ *
+ * @author Edward Raff
+ */
+public class ParameterSearchDialog
+{
+    private static final String GRID = "Grid";
+    private static final String RANDOM = "Random";
+
+    /**
+     * What the user asked for
+     */
+    public static class Settings
+    {
+        public final List<ParameterSearch.Range> ranges;
+        /**
+         * Whether candidates are drawn at random rather than from a grid
+         */
+        public final boolean random;
+        /**
+         * The number of random candidates
+         */
+        public final int randomCount;
+        /**
+         * The fraction of points held out to score candidates on
+         */
+        public final double validationFraction;
+
+        private Settings(List<ParameterSearch.Range> ranges, boolean random, int randomCount, double validationFraction)
+        {
+            this.ranges = ranges;
+            this.random = random;
+            this.randomCount = randomCount;
+            this.validationFraction = validationFraction;
+        }
+    }
+
+    private ParameterSearchDialog()
+    {
+    }
+
+    /**
+     * Shows the dialog
+     * @param parent the component to show the dialog over
+     * @param name the name of the model
+     * @param model the model, whose current values are used to suggest
+     * ranges
+     * @return the settings of the search, or {@code null} if it was cancelled
+     */
+    public static Settings show(Component parent, String name, Parameterized model)
+    {
+        List<ParameterSearch.Range> suggested = ParameterSearch.suggestRanges(model);
+        if(suggested.isEmpty())
+        {
+            JOptionPane.showMessageDialog(parent, name + " has no numeric parameters to search", "Search Error", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+        final DefaultTableModel table = new DefaultTableModel(new Object[]{"Search", "Parameter", "Min", "Max", "Steps", "Log Scale"}, 0)
+        {
+            private final Class<?>[] types = new Class<?>[]{Boolean.class, String.class, Double.class, Double.class, Integer.class, Boolean.class};
+
+            @Override
+            public Class<?> getColumnClass(int column)
+            {
+                return types[column];
+            }
+
+            @Override
+            public boolean isCellEditable(int row, int column)
+            {
+                return column != 1;
+            }
+        };
+        List<Boolean> integer = new ArrayList<>();
+        for(ParameterSearch.Range range : suggested)
+        {
+            table.addRow(new Object[]{Boolean.TRUE, range.name, range.min, range.max, range.steps, range.log});
+            integer.add(range.integer);
+        }
+        JTable jTable = new JTable(table);
+        JScrollPane scroll = new JScrollPane(jTable);
+        scroll.setPreferredSize(new Dimension(550, Math.min(300, 40 + 20*suggested.size())));
+
+        JComboBox<String> mode = new JComboBox<>(new String[]{GRID, RANDOM});
+        JSpinner randomCount = new JSpinner(new SpinnerNumberModel(27, 1, ParameterSearch.MAX_CANDIDATES, 1));
+        JSpinner validationFraction = new JSpinner(new SpinnerNumberModel(0.3, 0.05, 0.95, 0.05));
+        JPanel options = new JPanel(new GridLayout(0, 2));
+        options.add(new JLabel("Candidates from"));
+        options.add(mode);
+        options.add(new JLabel("Random candidates"));
+        options.add(randomCount);
+        options.add(new JLabel("Fraction held out for scoring"));
+        options.add(validationFraction);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(scroll, BorderLayout.CENTER);
+        panel.add(options, BorderLayout.PAGE_END);
+
+        while(true)
+        {
+            if(JOptionPane.showConfirmDialog(parent, panel, "Search Parameters of " + name, JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+                return null;
+            if(jTable.isEditing())
+                jTable.getCellEditor().stopCellEditing();
+            try
+            {
+                List<ParameterSearch.Range> ranges = new ArrayList<>();
+                for(int row = 0; row < table.getRowCount(); row++)
+                {
+                    if(!Boolean.TRUE.equals(table.getValueAt(row, 0)))
+                        continue;
+                    ranges.add(new ParameterSearch.Range((String) table.getValueAt(row, 1), integer.get(row),
+                            number(table, row, 2).doubleValue(), number(table, row, 3).doubleValue(),
+                            number(table, row, 4).intValue(), Boolean.TRUE.equals(table.getValueAt(row, 5))));
+                }
+                if(ranges.isEmpty())
+                    throw new IllegalArgumentException("Please pick at least one parameter to search");
+                boolean random = RANDOM.equals(mode.getSelectedItem());
+                if(!random && ParameterSearch.gridSize(ranges) > ParameterSearch.MAX_CANDIDATES)
+                    throw new IllegalArgumentException("The grid has more than " + ParameterSearch.MAX_CANDIDATES + " candidates, please use fewer steps or a random search");
+                return new Settings(ranges, random, ((Number) randomCount.getValue()).intValue(), ((Number) validationFraction.getValue()).doubleValue());
+            }
+            catch(IllegalArgumentException ex)
+            {
+                JOptionPane.showMessageDialog(parent, ex.getMessage(), "Search Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private static Number number(DefaultTableModel table, int row, int column)
+    {
+        Object value = table.getValueAt(row, column);
+        if(!(value instanceof Number))
+            throw new IllegalArgumentException("Please fill in the " + table.getColumnName(column) + " of " + table.getValueAt(row, 1));
+        return (Number) value;
+    }
+}
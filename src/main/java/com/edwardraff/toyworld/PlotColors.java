@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+/**
+ * The colors used by all of our plots, as packed ARGB ints so they can be
+ * written straight into pixel buffers.
+ *
+ * @author Edward Raff
+ */
+public class PlotColors
+{
+    /**
+     * Used for points that have no class
+     */
+    public static final int UNLABELED = 0xFF000000;
+    public static final int BACKGROUND = 0xFFFFFFFF;
+    public static final int AXIS = 0xFF404040;
+    public static final int CURVE = 0xFFD62728;
+
+    private static final int[] CLASS_COLORS =
+    {
+        0xFF1F77B4, 0xFFFF7F0E, 0xFF2CA02C, 0xFFD62728, 0xFF9467BD,
+        0xFF8C564B, 0xFFE377C2, 0xFF7F7F7F, 0xFFBCBD22, 0xFF17BECF,
+    };
+
+    private PlotColors()
+    {
+    }
+
+    /**
+     *
+     * @param classId the class id, may be any non negative value
+     * @return the color to draw the given class with
+     */
+    public static int forClass(int classId)
+    {
+        int base = CLASS_COLORS[classId % CLASS_COLORS.length];
+        int cycle = classId / CLASS_COLORS.length;
+        if(cycle == 0)
+            return base;
+        //darken repeated colors so more than 10 classes can still be told apart
+        double scale = Math.pow(0.7, cycle);
+        int r = (int) (((base >> 16) & 0xFF) * scale);
+        int g = (int) (((base >> 8) & 0xFF) * scale);
+        int b = (int) ((base & 0xFF) * scale);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Lays a color over the background
+     * @param argb the color
+     * @param alpha how opaque the color is, from 0 to 1
+     * @return the opaque color seen
+     */
+    public static int overBackground(int argb, double alpha)
+    {
+        int r = (int) (255 - (255 - ((argb >> 16) & 0xFF))*alpha);
+        int g = (int) (255 - (255 - ((argb >> 8) & 0xFF))*alpha);
+        int b = (int) (255 - (255 - (argb & 0xFF))*alpha);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Converts to a JavaFX color, for use with a graphics context
+     * @param argb the packed color
+     * @return the equivalent JavaFX color
+     */
+    public static javafx.scene.paint.Color toFX(int argb)
+    {
+        return javafx.scene.paint.Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, ((argb >>> 24) & 0xFF)/255.0);
+    }
+}
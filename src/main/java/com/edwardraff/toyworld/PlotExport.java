@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.Component;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.layout.BorderPane;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * Saves the plot in every tab of a world as a PNG file. The plots are drawn
+ * again off screen by a {@link PlotRenderer}, at the size they are shown at,
+ * in a job of the {@link JobScheduler}.
+ *
+ * @author Edward Raff
+ */
+public class PlotExport
+{
+    /**
+     * The size of the image of a plot that has never been shown
+     */
+    public static final int DEFAULT_WIDTH = 800, DEFAULT_HEIGHT = 600;
+
+    private PlotExport()
+    {
+    }
+
+    /**
+     * Asks for a folder and saves the plot of every tab to it, named by the
+     * position and title of the tab. Must be called from the event thread.
+     * @param parent the window to show dialogs over
+     * @param tabs the tabs holding the plots, may be {@code null}
+     * @param info shows the progress of the export
+     */
+    public static void exportTabs(final Component parent, JTabbedPane tabs, final JLabel info)
+    {
+        final List<String> names = new ArrayList<>();
+        final List<JFXPanel> panels = new ArrayList<>();
+        for(int i = 0; tabs != null && i < tabs.getTabCount(); i++)
+            if(tabs.getComponentAt(i) instanceof JFXPanel)
+            {
+                names.add(fileName(i, tabs.getTitleAt(i)));
+                panels.add((JFXPanel) tabs.getComponentAt(i));
+            }
+        if(panels.isEmpty())
+        {
+            JOptionPane.showMessageDialog(parent, "There are no plots to export", "Export Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Plots to Folder");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if(chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION)
+            return;
+        final File dir = chooser.getSelectedFile();
+        info.setText("Exporting " + panels.size() + " plots...");
+        //the view of a plot may only be read on the JavaFX thread
+        Platform.runLater(() ->
+        {
+            final List<PlotRenderer> renderers = new ArrayList<>();
+            final List<int[]> sizes = new ArrayList<>();
+            final List<String> files = new ArrayList<>();
+            for(int i = 0; i < panels.size(); i++)
+            {
+                Scene scene = panels.get(i).getScene();
+                Parent root = scene == null ? null : scene.getRoot();
+                if(!(root instanceof BorderPane) || !(((BorderPane) root).getCenter() instanceof ScatterPlot2D))
+                    continue;
+                ScatterPlot2D plot = (ScatterPlot2D) ((BorderPane) root).getCenter();
+                renderers.add(plot.toRenderer());
+                boolean shown = plot.getWidth() > 0 && plot.getHeight() > 0;
+                sizes.add(new int[]{shown ? (int) plot.getWidth() : DEFAULT_WIDTH, shown ? (int) plot.getHeight() : DEFAULT_HEIGHT});
+                files.add(names.get(i));
+            }
+            JobScheduler.getInstance().submit("Export " + renderers.size() + " Plots", 1, (threads) ->
+            {
+                try
+                {
+                    for(int i = 0; i < renderers.size(); i++)
+                        PlotRenderer.writePng(renderers.get(i).render(sizes.get(i)[0], sizes.get(i)[1]), new File(dir, files.get(i)));
+                    SwingUtilities.invokeLater(() -> info.setText("Exported " + renderers.size() + " plots to " + dir.getName()));
+                }
+                catch(IOException ex)
+                {
+                    SwingUtilities.invokeLater(() ->
+                    {
+                        info.setText(" ");
+                        JOptionPane.showMessageDialog(parent, "Could not export the plots: " + ex.getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
+                    });
+                }
+            });
+        });
+    }
+
+    /**
+     *
+     * @return the name of the file of a tab, safe on every file system
+     */
+    static String fileName(int index, String title)
+    {
+        return String.format("%02d-%s.png", index+1, title.replaceAll("[^A-Za-z0-9._-]+", "_"));
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import javax.imageio.ImageIO;
+import jsat.classifiers.Classifier;
+
+/**
+ * Draws the same plots as {@link ScatterPlot2D} and
+ * {@link ClassificationSurfacePlot} off screen, into a raw ARGB buffer or a
+ * {@link BufferedImage}, without a display or the JavaFX toolkit. Scatter
+ * plots of data or clusters, regression curves and classification surfaces
+ * can all be drawn, so plots can be made by batch jobs with
+ * {@code java.awt.headless=true}:
+ * <pre>
+ * PlotRenderer renderer = new PlotRenderer(data);
+ * renderer.setSurface(trained, 5, true, false);
+ * PlotRenderer.writePng(renderer.render(800, 600), new File("plot.png"));
+ * </pre>
+ * Everything is drawn before a render returns, using the threads of the
+ * {@link ComputeRuntime}, and classification surfaces are shared through the
+ * {@link SurfaceCache}. A renderer may be used from any one thread at a time.
+ *
+ * @author Edward Raff
+ */
+public class PlotRenderer
+{
+    static final int MARGIN_LEFT = 45;
+    static final int MARGIN_RIGHT = 10;
+    static final int MARGIN_TOP = 10;
+    static final int MARGIN_BOTTOM = 25;
+    /**
+     * Points are drawn as squares of this width in pixels
+     */
+    static final int POINT_SIZE = 3;
+    /**
+     * Data sets up to this size are drawn point by point in every view
+     */
+    static final int DIRECT_LIMIT = 200_000;
+    /**
+     * The most points drawn in a zoomed in view of a larger data set
+     */
+    static final int POINT_BUDGET = 100_000;
+    /**
+     * How opaque a decision surface is where the classifier is certain
+     */
+    static final double SURFACE_ALPHA = 0.45;
+
+    private final Dataset2D data;
+    private DoubleUnaryOperator curve;
+    private Classifier model;
+    private int resolution = 5;
+    private boolean hardBoundaries = false;
+    private boolean adaptive = false;
+    /**
+     * The range of values shown on each axis when not zoomed
+     */
+    private final double fullMinX, fullMaxX, fullMinY, fullMaxY;
+    private double minX, maxX, minY, maxY;
+
+    /**
+     *
+     * @param data the points to plot
+     */
+    public PlotRenderer(Dataset2D data)
+    {
+        this.data = data;
+        double padX = padding(data.getMinX(), data.getMaxX());
+        double padY = padding(data.getMinY(), data.getMaxY());
+        minX = fullMinX = data.getMinX()-padX;
+        maxX = fullMaxX = data.getMaxX()+padX;
+        minY = fullMinY = data.getMinY()-padY;
+        maxY = fullMaxY = data.getMaxY()+padY;
+    }
+
+    /**
+     *
+     * @return the margin to leave around points spread over the given range
+     */
+    static double padding(double min, double max)
+    {
+        double range = max-min;
+        if(!(range > 0))
+            return 0.5;
+        return range*0.05;
+    }
+
+    /**
+     *
+     * @param curve the function of x to draw over the points, or {@code null}
+     */
+    public void setCurve(DoubleUnaryOperator curve)
+    {
+        this.curve = curve;
+    }
+
+    /**
+     * Sets the classifier whose decision surface is drawn behind the points
+     * @param model the trained classifier, or {@code null} for none
+     * @param resolution the width of a cell of the surface in pixels
+     * @param hardBoundaries {@code true} to draw cells in the full color of
+     * their class, rather than faded by the confidence of the classifier
+     * @param adaptive {@code true} to
+     * {@link DecisionSurface#evaluateAdaptive evaluate adaptively}
+     */
+    public void setSurface(Classifier model, int resolution, boolean hardBoundaries, boolean adaptive)
+    {
+        this.model = model;
+        this.resolution = Math.max(1, resolution);
+        this.hardBoundaries = hardBoundaries;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Sets the range of values shown on each axis, by default all of the
+     * points are shown
+     * @param minX the x value of the left edge
+     * @param maxX the x value of the right edge
+     * @param minY the y value of the bottom edge
+     * @param maxY the y value of the top edge
+     */
+    public void setView(double minX, double maxX, double minY, double maxY)
+    {
+        if(!(minX < maxX) || !(minY < maxY))
+            throw new IllegalArgumentException("The view must have a positive width and height");
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Draws the area inside the axes: the surface, if any, and the points
+     * @param plotW the width of the area in pixels
+     * @param plotH the height of the area in pixels
+     * @return the ARGB pixels of the area, row by row from the top left
+     */
+    public int[] renderPixels(int plotW, int plotH)
+    {
+        int[] pixels = new int[plotW*plotH];
+        Arrays.fill(pixels, PlotColors.BACKGROUND);
+        if(model != null)
+        {
+            DecisionSurface.Grid grid = DecisionSurface.grid(resolution, plotW, plotH, minX, maxX, minY, maxY);
+            DecisionSurface.Raster raster = SurfaceCache.getInstance().get(model, grid, adaptive);
+            if(raster == null)
+            {
+                raster = adaptive
+                        ? DecisionSurface.evaluateAdaptive(model, DecisionSurface.needsCopyPerWorker(model), grid, ComputeRuntime.getPool(), () -> false)
+                        : DecisionSurface.evaluate(model, DecisionSurface.needsCopyPerWorker(model), grid, ComputeRuntime.getPool(), () -> false);
+                SurfaceCache.getInstance().put(model, raster, adaptive);
+            }
+            paintSurface(raster, resolution, hardBoundaries, pixels, plotW, plotH);
+        }
+
+        if(data.size() <= DIRECT_LIMIT)
+            drawPoints(data, null, pixels, plotW, plotH, minX, maxX, minY, maxY);
+        else if(minX == fullMinX && maxX == fullMaxX && minY == fullMinY && maxY == fullMaxY)
+            System.arraycopy(DensityRaster.render(data, minX, maxX, minY, maxY, plotW, plotH, ComputeRuntime.getPool()), 0, pixels, 0, pixels.length);
+        else
+        {
+            int[] sample = data.getGrid(ComputeRuntime.getPool()).sample(minX, maxX, minY, maxY, POINT_BUDGET);
+            drawPoints(data, sample, pixels, plotW, plotH, minX, maxX, minY, maxY);
+        }
+        return pixels;
+    }
+
+    /**
+     * Draws the whole plot, with its axes and curve
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return the image of the plot
+     */
+    public BufferedImage render(int width, int height)
+    {
+        final int plotW = width - MARGIN_LEFT - MARGIN_RIGHT;
+        final int plotH = height - MARGIN_TOP - MARGIN_BOTTOM;
+        if(plotW <= 0 || plotH <= 0)
+            throw new IllegalArgumentException("An image of " + width + "x" + height + " is too small for a plot");
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try
+        {
+            g.setColor(new Color(PlotColors.BACKGROUND, true));
+            g.fillRect(0, 0, width, height);
+            image.setRGB(MARGIN_LEFT, MARGIN_TOP, plotW, plotH, renderPixels(plotW, plotH), 0, plotW);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            if(curve != null)
+                drawCurve(g, plotW, plotH);
+            drawAxes(g, plotW, plotH);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Writes an image to a PNG file
+     * @param image the image to write
+     * @param file the file to write to, replaced if it exists
+     * @throws IOException if the file could not be written
+     */
+    public static void writePng(BufferedImage image, File file) throws IOException
+    {
+        if(!ImageIO.write(image, "png", file))
+            throw new IOException("No PNG writer is available");
+    }
+
+    /**
+     * Draws the given points, or all of them if {@code indices} is null
+     */
+    static void drawPoints(Dataset2D data, int[] indices, int[] pixels, int plotW, int plotH, double minX, double maxX, double minY, double maxY)
+    {
+        final double[] x = data.x;
+        final double[] y = data.y;
+        final int[] label = data.label;
+        final double scaleX = plotW/(maxX-minX);
+        final double scaleY = plotH/(maxY-minY);
+        final int half = POINT_SIZE/2;
+        final int count = indices == null ? x.length : indices.length;
+        for(int k = 0; k < count; k++)
+        {
+            int i = indices == null ? k : indices[k];
+            int px = (int) Math.floor((x[i]-minX)*scaleX);
+            int py = (int) Math.floor((maxY-y[i])*scaleY);
+            int color = label == null ? PlotColors.UNLABELED : PlotColors.forClass(label[i]);
+            int startX = Math.max(px-half, 0), endX = Math.min(px-half+POINT_SIZE, plotW);
+            int startY = Math.max(py-half, 0), endY = Math.min(py-half+POINT_SIZE, plotH);
+            if(startX >= endX)
+                continue;
+            for(int row = startY; row < endY; row++)
+                Arrays.fill(pixels, row*plotW+startX, row*plotW+endX, color);
+        }
+    }
+
+    /**
+     * Colors every pixel by the class of the cell of the raster it falls in
+     * @param raster the surface, with its top left cell at the top left pixel
+     * @param cellPixels the width of a cell of the raster in pixels
+     */
+    static void paintSurface(DecisionSurface.Raster raster, int cellPixels, boolean hardBoundaries, int[] pixels, int plotW, int plotH)
+    {
+        for(int py = 0; py < plotH; py++)
+        {
+            int rowStart = (py/cellPixels)*raster.width;
+            for(int px = 0; px < plotW; px++)
+            {
+                int cell = rowStart + px/cellPixels;
+                double alpha = hardBoundaries ? SURFACE_ALPHA : SURFACE_ALPHA*raster.confidence[cell];
+                pixels[py*plotW+px] = PlotColors.overBackground(PlotColors.forClass(raster.classes[cell]), alpha);
+            }
+        }
+    }
+
+    /**
+     * Finds where to draw a curve, one point per column of pixels, skipping
+     * the columns where it has no finite value
+     * @param xs filled with the x position of every point, including the
+     * margin
+     * @param ys filled with the y position of every point, including the
+     * margin
+     * @return the number of points
+     */
+    static int traceCurve(DoubleUnaryOperator curve, int plotW, int plotH, double minX, double maxX, double minY, double maxY, double[] xs, double[] ys)
+    {
+        int n = 0;
+        for(int px = 0; px < plotW; px++)
+        {
+            double val = curve.applyAsDouble(minX + (px+0.5)*(maxX-minX)/plotW);
+            if(Double.isNaN(val) || Double.isInfinite(val))
+                continue;
+            //clamp far outliers so the line still heads off the edge of the plot
+            double py = (maxY-val)*plotH/(maxY-minY);
+            xs[n] = MARGIN_LEFT + px + 0.5;
+            ys[n++] = MARGIN_TOP + Math.max(-plotH, Math.min(2*plotH, py));
+        }
+        return n;
+    }
+
+    static String formatTick(double val)
+    {
+        double abs = Math.abs(val);
+        if(abs != 0 && (abs >= 1e4 || abs < 1e-2))
+            return String.format("%.1e", val);
+        return String.format("%.2f", val);
+    }
+
+    private void drawCurve(Graphics2D g, int plotW, int plotH)
+    {
+        double[] xs = new double[plotW];
+        double[] ys = new double[plotW];
+        int n = traceCurve(curve, plotW, plotH, minX, maxX, minY, maxY, xs, ys);
+        if(n == 0)
+            return;
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(xs[0], ys[0]);
+        for(int i = 1; i < n; i++)
+            path.lineTo(xs[i], ys[i]);
+        Graphics2D clipped = (Graphics2D) g.create();
+        try
+        {
+            clipped.clipRect(MARGIN_LEFT, MARGIN_TOP, plotW, plotH);
+            clipped.setColor(new Color(PlotColors.CURVE, true));
+            clipped.setStroke(new BasicStroke(2));
+            clipped.draw(path);
+        }
+        finally
+        {
+            clipped.dispose();
+        }
+    }
+
+    private void drawAxes(Graphics2D g, int plotW, int plotH)
+    {
+        g.setColor(new Color(PlotColors.AXIS, true));
+        g.setStroke(new BasicStroke(1));
+        g.drawRect(MARGIN_LEFT, MARGIN_TOP, plotW-1, plotH-1);
+        final int ticks = 5;
+        for(int t = 0; t <= ticks; t++)
+        {
+            double frac = t/(double) ticks;
+            int tx = (int) (MARGIN_LEFT + frac*plotW);
+            int ty = (int) (MARGIN_TOP + plotH - frac*plotH);
+            g.drawLine(tx, MARGIN_TOP+plotH, tx, MARGIN_TOP+plotH+4);
+            g.drawLine(MARGIN_LEFT-4, ty, MARGIN_LEFT, ty);
+            g.drawString(formatTick(minX + frac*(maxX-minX)), tx-12, MARGIN_TOP+plotH+17);
+            g.drawString(formatTick(minY + frac*(maxY-minY)), 2, ty+4);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Uniform grid over the points of a {@link Dataset2D}, used to draw a bounded
+ * number of points from any zoomed in region. The indices of the points in
+ * each cell are stored contiguously and in random order, so the first k
+ * indices of a cell are a uniform random sample of k of its points. Taking a
+ * prefix from every visible cell in proportion to its size gives a sample of
+ * the view stratified by location, without looking at any other points.
+ *
+ * @author Edward Raff
+ */
+public class PointGrid
+{
+    /**
+     * Number of cells along each axis
+     */
+    public static final int CELLS = 128;
+    /**
+     * Points per task when building the grid in parallel
+     */
+    private static final int BLOCK = 1 << 20;
+
+    public final double minX, maxX, minY, maxY;
+    /**
+     * The indices of cell c are {@code order[cellStart[c]]} to
+     * {@code order[cellStart[c+1]-1]}
+     */
+    private final int[] cellStart;
+    private final int[] order;
+
+    private PointGrid(double minX, double maxX, double minY, double maxY, int[] cellStart, int[] order)
+    {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.cellStart = cellStart;
+        this.order = order;
+    }
+
+    /**
+     * Builds the grid for the given points, in parallel
+     * @param data the points to index
+     * @param pool the threads to build with
+     * @return the grid over all of the points
+     */
+    public static PointGrid build(Dataset2D data, ForkJoinPool pool)
+    {
+        final double mnX = data.getMinX(), mxX = data.getMaxX();
+        final double mnY = data.getMinY(), mxY = data.getMaxY();
+        final int n = data.size();
+        final int blocks = (n+BLOCK-1)/BLOCK;
+        final int cellCount = CELLS*CELLS;
+
+        //count the points of every block in every cell
+        List<Future<int[]>> countFutures = new ArrayList<>(blocks);
+        for(int b = 0; b < blocks; b++)
+        {
+            final int from = b*BLOCK, to = Math.min(n, from+BLOCK);
+            countFutures.add(pool.submit(() ->
+            {
+                int[] counts = new int[cellCount];
+                for(int i = from; i < to; i++)
+                    counts[cell(data.x[i], data.y[i], mnX, mxX, mnY, mxY)]++;
+                return counts;
+            }));
+        }
+        int[][] blockCounts = new int[blocks][];
+        for(int b = 0; b < blocks; b++)
+            blockCounts[b] = get(countFutures.get(b));
+
+        //every block writes to its own slice of each cell, so keep file order within a cell before shuffling
+        int[] cellStart = new int[cellCount+1];
+        final int[][] blockOffsets = new int[blocks][cellCount];
+        int pos = 0;
+        for(int c = 0; c < cellCount; c++)
+        {
+            cellStart[c] = pos;
+            for(int b = 0; b < blocks; b++)
+            {
+                blockOffsets[b][c] = pos;
+                pos += blockCounts[b][c];
+            }
+        }
+        cellStart[cellCount] = pos;
+
+        final int[] order = new int[n];
+        List<Future<?>> futures = new ArrayList<>(blocks);
+        for(int b = 0; b < blocks; b++)
+        {
+            final int from = b*BLOCK, to = Math.min(n, from+BLOCK);
+            final int[] offsets = blockOffsets[b];
+            futures.add(pool.submit(() ->
+            {
+                for(int i = from; i < to; i++)
+                    order[offsets[cell(data.x[i], data.y[i], mnX, mxX, mnY, mxY)]++] = i;
+            }));
+        }
+        for(Future<?> f : futures)
+            get(f);
+
+        //shuffle within each cell, a row of cells per task
+        futures.clear();
+        SplittableRandom seeds = new SplittableRandom(n);
+        for(int row = 0; row < CELLS; row++)
+        {
+            final int firstCell = row*CELLS;
+            final SplittableRandom rand = seeds.split();
+            futures.add(pool.submit(() ->
+            {
+                for(int c = firstCell; c < firstCell+CELLS; c++)
+                    for(int i = cellStart[c+1]-1; i > cellStart[c]; i--)
+                    {
+                        int j = cellStart[c] + rand.nextInt(i-cellStart[c]+1);
+                        int tmp = order[i];
+                        order[i] = order[j];
+                        order[j] = tmp;
+                    }
+            }));
+        }
+        for(Future<?> f : futures)
+            get(f);
+
+        return new PointGrid(mnX, mxX, mnY, mxY, cellStart, order);
+    }
+
+    private static <T> T get(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static int cell(double x, double y, double minX, double maxX, double minY, double maxY)
+    {
+        return cellY(y, minY, maxY)*CELLS + cellX(x, minX, maxX);
+    }
+
+    private static int cellX(double x, double minX, double maxX)
+    {
+        int c = (int) ((x-minX)/(maxX-minX)*CELLS);
+        return Math.max(0, Math.min(CELLS-1, c));
+    }
+
+    private static int cellY(double y, double minY, double maxY)
+    {
+        int c = (int) ((y-minY)/(maxY-minY)*CELLS);
+        return Math.max(0, Math.min(CELLS-1, c));
+    }
+
+    /**
+     * Collects the points in the cells that overlap the given region. If there
+     * are more than {@code budget} of them, a sample of about {@code budget}
+     * points is taken instead, with each cell contributing in proportion to
+     * the number of points it has (and at least one).
+     * @param fromX the lowest x value of the region
+     * @param toX the highest x value of the region
+     * @param fromY the lowest y value of the region
+     * @param toY the highest y value of the region
+     * @param budget the most points to return, roughly
+     * @return the indices of the selected points. Points near the edges may be
+     * outside of the region itself
+     */
+    public int[] sample(double fromX, double toX, double fromY, double toY, int budget)
+    {
+        int cx0 = cellX(fromX, minX, maxX), cx1 = cellX(toX, minX, maxX);
+        int cy0 = cellY(fromY, minY, maxY), cy1 = cellY(toY, minY, maxY);
+        long total = countIn(cx0, cx1, cy0, cy1);
+        double frac = total <= budget ? 1.0 : budget/(double) total;
+
+        int[] selected = new int[(int) Math.min(total, budget + (long) (cx1-cx0+1)*(cy1-cy0+1))];
+        int size = 0;
+        for(int cy = cy0; cy <= cy1; cy++)
+            for(int cx = cx0; cx <= cx1; cx++)
+            {
+                int c = cy*CELLS + cx;
+                int count = cellStart[c+1]-cellStart[c];
+                int take = frac >= 1.0 ? count : Math.min(count, (int) Math.ceil(count*frac));
+                System.arraycopy(order, cellStart[c], selected, size, take);
+                size += take;
+            }
+        return size == selected.length ? selected : Arrays.copyOf(selected, size);
+    }
+
+    /**
+     * Counts the points in the cells that overlap the given region
+     * @param fromX the lowest x value of the region
+     * @param toX the highest x value of the region
+     * @param fromY the lowest y value of the region
+     * @param toY the highest y value of the region
+     * @return the number of points in the cells that overlap the region
+     */
+    public long countIn(double fromX, double toX, double fromY, double toY)
+    {
+        return countIn(cellX(fromX, minX, maxX), cellX(toX, minX, maxX), cellY(fromY, minY, maxY), cellY(toY, minY, maxY));
+    }
+
+    private long countIn(int cx0, int cx1, int cy0, int cy1)
+    {
+        long total = 0;
+        for(int cy = cy0; cy <= cy1; cy++)
+            total += cellStart[cy*CELLS + cx1+1] - cellStart[cy*CELLS + cx0];
+        return total;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a generated regression data set together with the settings of the
+ * {@link RegressionGenerator} that made it, so that the exact same data and
+ * its true function can be used again on another run or machine. The file is
+ * a header holding the settings, the name of the function and the seed,
+ * followed by the raw x and y columns as little endian doubles, in the same
+ * layout as the {@link DatasetCache}. Reading it back maps the columns into
+ * memory rather than parsing anything.
+ *
+ * @author Edward Raff
+ */
+public class RegressionDataFile
+{
+    /**
+     * The extension regression data files are saved with
+     */
+    public static final String EXTENSION = "2dreg";
+    private static final long MAGIC = 0x3244545752474453L;//"2DTWRGDS"
+    private static final int VERSION = 1;
+    /**
+     * Size of the fixed part of the header
+     */
+    private static final int HEADER = 80;
+
+    /**
+     * The points in the file
+     */
+    public final Dataset2D data;
+    /**
+     * The generator that made the points, which holds the true function
+     */
+    public final RegressionGenerator generator;
+
+    private RegressionDataFile(Dataset2D data, RegressionGenerator generator)
+    {
+        this.data = data;
+        this.generator = generator;
+    }
+
+    /**
+     * Writes the data set and how it was generated to a file. The file is
+     * written to a temporary file first, so a partial file is never left
+     * behind.
+     * @param file the file to write
+     * @param data the generated points, before any other change to them
+     * @param generator the generator that made the points
+     * @throws IOException if the file could not be written
+     */
+    public static void write(File file, Dataset2D data, RegressionGenerator generator) throws IOException
+    {
+        Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try
+        {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                CRC32 crc = new CRC32();
+                ByteBuffer staging = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                DatasetCache.writeColumn(null, 0, data.x, staging, crc);
+                DatasetCache.writeColumn(null, 0, data.y, staging, crc);
+
+                byte[][] names = new byte[][]
+                {
+                    generator.getFunctionName().getBytes(StandardCharsets.UTF_8),
+                    generator.getInputNoise().name().getBytes(StandardCharsets.UTF_8),
+                    generator.getOutputNoise().name().getBytes(StandardCharsets.UTF_8),
+                };
+                int namesSize = 0;
+                for(byte[] name : names)
+                    namesSize += 4 + name.length;
+
+                ByteBuffer header = ByteBuffer.allocate((int) DatasetCache.align8(HEADER+namesSize)).order(ByteOrder.LITTLE_ENDIAN);
+                header.putLong(MAGIC).putInt(VERSION).putInt(data.size());
+                header.putLong(generator.getSeed()).putLong(crc.getValue());
+                header.putDouble(generator.getStart()).putDouble(generator.getEnd());
+                header.putDouble(generator.getRandomNoiseFrac());
+                header.putInt(generator.getSize()).putInt(generator.getPasses());
+                header.position(HEADER);
+                for(byte[] name : names)
+                    header.putInt(name.length).put(name);
+                header.position(0);
+                long pos = 0;
+                while(header.hasRemaining())
+                    pos += channel.write(header, pos);
+
+                pos = DatasetCache.writeColumn(channel, pos, data.x, staging, null);
+                DatasetCache.writeColumn(channel, pos, data.y, staging, null);
+                channel.force(false);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads a regression data file
+     * @param file the file to read
+     * @param functions the functions that may have been used to generate the
+     * data, by name
+     * @return the points and the generator that made them
+     * @throws IOException if the file could not be read, is not a regression
+     * data file, is corrupted, or was made with a function that is not known
+     */
+    public static RegressionDataFile read(File file, Map<String, Func1D> functions) throws IOException
+    {
+        long start = System.nanoTime();
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            DatasetCache.readFully(channel, header, 0);
+            header.flip();
+            if(header.getLong() != MAGIC)
+                throw new IOException(file.getName() + " is not a regression data file");
+            int version = header.getInt();
+            if(version != VERSION)
+                throw new IOException(file.getName() + " has unsupported version " + version);
+            int n = header.getInt();
+            long seed = header.getLong();
+            long dataChecksum = header.getLong();
+            double genStart = header.getDouble();
+            double genEnd = header.getDouble();
+            double randomNoiseFrac = header.getDouble();
+            int size = header.getInt();
+            int passes = header.getInt();
+
+            String[] names = new String[3];
+            long pos = HEADER;
+            ByteBuffer len = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for(int i = 0; i < names.length; i++)
+            {
+                len.clear();
+                DatasetCache.readFully(channel, len, pos);
+                len.flip();
+                int length = len.getInt();
+                if(length < 0 || length > channel.size())
+                    throw new IOException(file.getName() + " is corrupted");
+                ByteBuffer name = ByteBuffer.allocate(length);
+                DatasetCache.readFully(channel, name, pos+4);
+                names[i] = new String(name.array(), StandardCharsets.UTF_8);
+                pos += 4 + length;
+            }
+            pos = DatasetCache.align8(pos);
+
+            Func1D function = functions.get(names[0]);
+            if(function == null)
+                throw new IOException(file.getName() + " was generated from unknown function " + names[0]);
+            RegressionGenerator generator;
+            try
+            {
+                generator = new RegressionGenerator(names[0], function, genStart, genEnd, size, passes,
+                        RegressionGenerator.Noise.valueOf(names[1]), RegressionGenerator.Noise.valueOf(names[2]), randomNoiseFrac, seed);
+            }
+            catch(IllegalArgumentException ex)
+            {
+                throw new IOException(file.getName() + " is corrupted", ex);
+            }
+            if(n < 0 || pos + 2L*n*Double.BYTES > channel.size())
+                throw new IOException(file.getName() + " is truncated");
+
+            CRC32 crc = new CRC32();
+            double[] x = new double[n];
+            double[] y = new double[n];
+            pos = DatasetCache.readColumn(channel, pos, x, crc);
+            DatasetCache.readColumn(channel, pos, y, crc);
+            if(crc.getValue() != dataChecksum)
+                throw new IOException(file.getName() + " is corrupted");
+
+            return new RegressionDataFile(new Dataset2D(x, y, null, new String[0], System.nanoTime()-start), generator);
+        }
+    }
+}
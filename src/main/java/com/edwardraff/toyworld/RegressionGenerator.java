@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import jsat.distributions.Distribution;
+import jsat.distributions.Normal;
+import jsat.distributions.Uniform;
+
+/**
+ * Generates noisy samples of a 1D function for the regression world. The
+ * points are written straight into primitive arrays in parallel chunks. Every
+ * chunk gets its own random stream split off of one root stream in a fixed
+ * order, so the same seed gives the same data no matter how many threads are
+ * used. The x position of every point on the curve is computed from its
+ * index, rather than by repeatedly adding a step, so no rounding error builds
+ * up over long ranges.<br>
+ * <br>
+ * A generator holds everything needed to make its data again, including the
+ * name of the function and the seed, so that it can be saved along with the
+ * data by {@link RegressionDataFile}.
+ *
+ * @author Edward Raff
+ */
+public class RegressionGenerator
+{
+    /**
+     * Points generated per task
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * The kinds of noise that may be added to the points
+     */
+    public enum Noise
+    {
+        NONE, UNIFORM, GAUSSIAN;
+
+        /**
+         *
+         * @return the distribution the noise is drawn from, or {@code null}
+         * for no noise
+         */
+        public Distribution toDistribution()
+        {
+            switch(this)
+            {
+                case UNIFORM:
+                    return new Uniform(-0.2, 0.2);
+                case GAUSSIAN:
+                    return new Normal(0, 0.2);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final String functionName;
+    /**
+     * The function to sample
+     */
+    private final Func1D function;
+    private final double start;
+    private final double end;
+    private final int size;
+    private final int passes;
+    private final Noise inputNoise;
+    private final Noise outputNoise;
+    private final double randomNoiseFrac;
+    private final long seed;
+
+    /**
+     *
+     * @param functionName the name the function is known by
+     * @param function the function to sample
+     * @param start the first x value of the range
+     * @param end the end of the range of x values, exclusive
+     * @param size the number of evenly spaced points to take from the range
+     * in every pass
+     * @param passes the number of passes through the range
+     * @param inputNoise the noise added to the x value of every point
+     * @param outputNoise the noise added to the y value of every point
+     * @param randomNoiseFrac the number of points spread uniformly over the
+     * range and the y values of the curve, as a fraction of {@code size}
+     * @param seed the seed of the random stream the data is drawn from
+     */
+    public RegressionGenerator(String functionName, Func1D function, double start, double end, int size, int passes, Noise inputNoise, Noise outputNoise, double randomNoiseFrac, long seed)
+    {
+        if(size <= 0 || passes <= 0)
+            throw new IllegalArgumentException("Size and passes must be positive, not " + size + " and " + passes);
+        if((long) size*passes + (long) Math.ceil(size*randomNoiseFrac) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Can not generate more than " + (Integer.MAX_VALUE - 8) + " points");
+        this.functionName = functionName;
+        this.function = function;
+        this.start = start;
+        this.end = end;
+        this.size = size;
+        this.passes = passes;
+        this.inputNoise = inputNoise;
+        this.outputNoise = outputNoise;
+        this.randomNoiseFrac = randomNoiseFrac;
+        this.seed = seed;
+    }
+
+    public String getFunctionName()
+    {
+        return functionName;
+    }
+
+    public Func1D getFunction()
+    {
+        return function;
+    }
+
+    public double getStart()
+    {
+        return start;
+    }
+
+    public double getEnd()
+    {
+        return end;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public int getPasses()
+    {
+        return passes;
+    }
+
+    public Noise getInputNoise()
+    {
+        return inputNoise;
+    }
+
+    public Noise getOutputNoise()
+    {
+        return outputNoise;
+    }
+
+    public double getRandomNoiseFrac()
+    {
+        return randomNoiseFrac;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     *
+     * @return the total number of points that will be generated
+     */
+    public int getTotalSize()
+    {
+        return size*passes + getRandomNoiseSize();
+    }
+
+    private int getRandomNoiseSize()
+    {
+        return (int) Math.ceil(size*randomNoiseFrac);
+    }
+
+    /**
+     * Generates the data set
+     * @param pool the threads to generate with
+     * @return the generated points
+     */
+    public Dataset2D generate(ForkJoinPool pool)
+    {
+        final long startTime = System.nanoTime();
+        final SplittableRandom rand = new SplittableRandom(seed);
+        final Distribution inputNoise = this.inputNoise.toDistribution();
+        final Distribution outputNoise = this.outputNoise.toDistribution();
+        final int curveSize = size*passes;
+        final int noiseSize = getRandomNoiseSize();
+        final double[] xs = new double[curveSize+noiseSize];
+        final double[] ys = new double[curveSize+noiseSize];
+        final double step = (end-start)/size;
+
+        //points along the curve, each task reports the range of y values it made
+        List<Future<double[]>> curveFutures = new ArrayList<>();
+        for(int from = 0; from < curveSize; from += CHUNK)
+        {
+            final int chunkStart = from, chunkEnd = Math.min(curveSize, from+CHUNK);
+            final SplittableRandom chunkRand = rand.split();
+            curveFutures.add(pool.submit(() ->
+            {
+                double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for(int pos = chunkStart; pos < chunkEnd; pos++)
+                {
+                    double x = start + (pos % size)*step;
+                    double y = function.f(x);
+                    if(outputNoise != null)
+                        y += outputNoise.invCdf(chunkRand.nextDouble());
+                    if(inputNoise != null)
+                        x += inputNoise.invCdf(chunkRand.nextDouble());
+                    xs[pos] = x;
+                    ys[pos] = y;
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+                return new double[]{minY, maxY};
+            }));
+        }
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(Future<double[]> future : curveFutures)
+        {
+            double[] range = get(future);
+            minY = Math.min(minY, range[0]);
+            maxY = Math.max(maxY, range[1]);
+        }
+
+        //points spread uniformly over the whole region, once the y range is known
+        final double noiseMinY = minY, noiseRangeY = maxY-minY;
+        List<Future<?>> noiseFutures = new ArrayList<>();
+        for(int from = curveSize; from < xs.length; from += CHUNK)
+        {
+            final int chunkStart = from, chunkEnd = Math.min(xs.length, from+CHUNK);
+            final SplittableRandom chunkRand = rand.split();
+            noiseFutures.add(pool.submit(() ->
+            {
+                for(int pos = chunkStart; pos < chunkEnd; pos++)
+                {
+                    xs[pos] = start + chunkRand.nextDouble()*(end-start);
+                    ys[pos] = noiseMinY + chunkRand.nextDouble()*noiseRangeY;
+                }
+            }));
+        }
+        for(Future<?> future : noiseFutures)
+            get(future);
+
+        return new Dataset2D(xs, ys, null, new String[0], System.nanoTime()-startTime);
+    }
+
+    private static <T> T get(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new RuntimeException(ex);
+        }
+    }
+}
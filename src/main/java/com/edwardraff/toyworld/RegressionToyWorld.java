@@ -16,27 +16,24 @@
  */
 package com.edwardraff.toyworld;
 
-import com.edwardraff.jsatfx.Plot;
 import com.edwardraff.jsatfx.swing.ParameterPanel;
 import static java.lang.Math.*;
 import java.awt.BorderLayout;
 import java.awt.FlowLayout;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.function.DoubleUnaryOperator;
 import javafx.application.Platform;
 import javafx.embed.swing.JFXPanel;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import jsat.classifiers.CategoricalData;
 import jsat.classifiers.DataPoint;
 import jsat.classifiers.boosting.Bagging;
@@ -45,7 +42,7 @@ import jsat.classifiers.knn.NearestNeighbour;
 import jsat.classifiers.svm.DCDs;
 import jsat.classifiers.trees.*;
 import jsat.datatransform.DataModelPipeline;
-import jsat.distributions.*;
+import jsat.datatransform.DataTransformProcess;
 import jsat.distributions.empirical.kernelfunc.EpanechnikovKF;
 import jsat.distributions.kernels.RBFKernel;
 import jsat.distributions.multivariate.MetricKDE;
@@ -58,7 +55,6 @@ import jsat.parameters.IntParameter;
 import jsat.parameters.Parameter;
 import jsat.parameters.Parameterized;
 import jsat.regression.*;
-import jsat.utils.SystemInfo;
 
 /**
  *
@@ -75,7 +71,12 @@ public class RegressionToyWorld extends javax.swing.JFrame
     /**
      * This will be the currently loaded dataset
      */
-    private static RegressionDataSet rData;
+    private static volatile Dataset2D rData;
+    /**
+     * The generator that made {@link #rData}
+     */
+    private static volatile RegressionGenerator rGenerator;
+    private final JFileChooser dataFileChooser = new JFileChooser();
     /**
      * The number of data points to generate evenly along the range for every 
      * pass through the data
@@ -105,6 +106,15 @@ public class RegressionToyWorld extends javax.swing.JFrame
      */
     private static TransformsMenu transformsMenu;
     
+    private static final String META_NONE = "None";
+    /**
+     * The meta methods a regressor can be wrapped in, by name
+     */
+    private static final String[] META_METHODS = new String[]
+    {
+        META_NONE, "RANSAC", "Bagging"
+    };
+    
     /**
      * Exploiting the parameterized code in JSAT to make a lazy GUI to configure 
      * options when generating test datasets
@@ -204,22 +214,6 @@ public class RegressionToyWorld extends javax.swing.JFrame
         });
     }};
     
-    /**
-     * Atomic integer keeps track of the number of regressors we are currently 
-     * waiting to finish training
-     */
-    private static final AtomicInteger waitingFor = new AtomicInteger(0);
-    /**
-     * Queue of classification jobs to run
-     */
-    private static BlockingQueue<Runnable> backgroundJobQueue;
-    /**
-     * The thread we use to eat classification jobs forever
-     */
-    private static Thread backgroundThread;
-    
-    private static final ExecutorService execService = Executors.newFixedThreadPool(SystemInfo.LogicalCores);
-    
     /**
      * Map of all the regressors we will be using
      */
@@ -269,8 +263,26 @@ public class RegressionToyWorld extends javax.swing.JFrame
     {
         initComponents();
         jMenuBar1.add(transformsMenu = new TransformsMenu(this, "Transforms"));
+        dataFileChooser.setFileFilter(new FileNameExtensionFilter("Regression data", RegressionDataFile.EXTENSION));
+        JMenuItem jMenuItemExport = new JMenuItem("Export Data...");
+        jMenuItemExport.addActionListener((ActionEvent e) -> exportData());
+        jMenu1.add(jMenuItemExport);
+        JMenuItem jMenuItemImport = new JMenuItem("Import Data...");
+        jMenuItemImport.addActionListener((ActionEvent e) -> importData());
+        jMenu1.add(jMenuItemImport);
+        JMenuItem jMenuItemSeed = new JMenuItem("Session Seed...");
+        jMenuItemSeed.addActionListener((ActionEvent e) -> SessionRandom.showSeedDialog(this));
+        jMenu1.add(jMenuItemSeed);
+        JMenuItem jMenuItemJobs = new JMenuItem("Jobs...");
+        jMenuItemJobs.addActionListener((ActionEvent e) -> JobListFrame.showJobs(this));
+        jMenu1.add(jMenuItemJobs);
+        JMenuItem jMenuItemThreads = new JMenuItem("Compute Threads...");
+        jMenuItemThreads.addActionListener((ActionEvent e) -> ComputeRuntime.showParallelismDialog(this));
+        jMenu1.add(jMenuItemThreads);
+        JMenuItem jMenuItemExportPlots = new JMenuItem("Export Plots as PNG...");
+        jMenuItemExportPlots.addActionListener((ActionEvent e) -> PlotExport.exportTabs(this, jTabbedPane, jLabelInfo));
+        jMenu1.add(jMenuItemExportPlots);
         jLabelInfo.setText(" ");
-        backgroundJobQueue = new LinkedBlockingQueue<>();
         
         for(Entry<String, Regressor> entry : regressors.entrySet())
         {
@@ -279,52 +291,65 @@ public class RegressionToyWorld extends javax.swing.JFrame
             JMenuItem jitem = new JMenuItem(name);
             jitem.addActionListener((ActionEvent e) ->
             {
-                try
+                //train on the data on screen now, whatever is generated while the job waits
+                final Dataset2D data = rData;
+                if(data == null)
                 {
-                    Regressor regressor = regressorToClone.clone();
-                    
-                    ClassifierToyWorld.showParameterizedDialog(this, regressor);
-                    
-                    if(jRadioButtonMetaRANSAC.isSelected())
-                    {
-                        RANSAC ransac = new RANSAC(regressor, 100, 20, 50, 10);
-                        ParameterPanel.showParameterDiag(getOwner(), "Set RANSAC Parameters", ransac);
-                        
-                        regressor = ransac;
-                    }
-                    else if(jRadioButtonMetaBagging.isSelected())
-                    {
-                        Bagging bagging = new Bagging(regressor);
-                        ParameterPanel.showParameterDiag(getOwner(), "Set Bagging Parameters", bagging);
-                        
-                        regressor = bagging;
-                    }
-                    
-                    ///Create tranformed version
-                    regressor = new DataModelPipeline(regressor, transformsMenu.getDataTransformProcess().clone());
-                    final Regressor regressorToUse = regressor.clone();
-                    
-                    jLabelInfo.setText("Waiting for " + waitingFor.incrementAndGet() + " jobs to finish");
-                    backgroundJobQueue.put((Runnable) () ->
-                    {
-                        regressorToUse.train(rData, execService);
-
-                        final JFXPanel fxPanel = new JFXPanel();
-                        Platform.runLater(() ->
-                        {
-                            fxPanel.setScene(new Scene(new BorderPane(Plot.regression(rData, regressorToUse)  )));
-                        });
-                        jTabbedPane.add(name, fxPanel);
-                    });
+                    JOptionPane.showMessageDialog(this, "Please generate a data set first", "Training Error", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
-                catch (InterruptedException ex)
+                Regressor regressor = regressorToClone.clone();
+                
+                ClassifierToyWorld.showParameterizedDialog(this, regressor);
+                
+                final String meta = getSelectedMeta();
+                if(!meta.equals(META_NONE))
                 {
-                    Logger.getLogger(RegressionToyWorld.class.getName()).log(Level.SEVERE, null, ex);
+                    regressor = withMeta(regressor, meta, name, data);
+                    ParameterPanel.showParameterDiag(getOwner(), "Set " + meta + " Parameters", (Parameterized) regressor);
                 }
                 
+                ///Create tranformed version
+                regressor = new DataModelPipeline(regressor, transformsMenu.getDataTransformProcess().clone());
+                final Regressor regressorToUse = regressor.clone();
+                
+                final JobScheduler scheduler = JobScheduler.getInstance();
+                scheduler.submit(name, scheduler.getCoreBudget(), (threads) ->
+                {
+                    final JobScheduler.Job job = JobScheduler.currentJob();
+                    //the same model on the same data may have been trained before
+                    final ModelCache cache = ModelCache.getInstance();
+                    final String cacheKey = ModelCache.key(regressorToUse, data);
+                    final Regressor cached = cacheKey == null ? null : cache.get(cacheKey);
+                    final Regressor trained = cached != null ? cached : regressorToUse;
+                    if(cached == null)
+                    {
+                        regressorToUse.train(data.asRegressionDataSet(), threads);
+                        if(cacheKey != null)
+                            cache.put(cacheKey, regressorToUse);
+                    }
+
+                    addPlotTab(name + (cached != null ? " (cached)" : ""), data, trained, job);
+                });
             });
             jMenuRegression.add(jitem);
         }
+        jMenuRegression.addSeparator();
+        JMenuItem jMenuItemSweep = new JMenuItem("Train Everything...");
+        jMenuItemSweep.addActionListener((ActionEvent e) -> sweep());
+        jMenuRegression.add(jMenuItemSweep);
+        JMenuItem jMenuItemCrossValidate = new JMenuItem("Cross Validate...");
+        jMenuItemCrossValidate.addActionListener((ActionEvent e) -> crossValidate());
+        jMenuRegression.add(jMenuItemCrossValidate);
+        JMenu jMenuSearch = new JMenu("Search Parameters");
+        for(Entry<String, Regressor> entry : regressors.entrySet())
+            if(entry.getValue() instanceof Parameterized)
+            {
+                JMenuItem searchItem = new JMenuItem(entry.getKey() + "...");
+                searchItem.addActionListener((ActionEvent e) -> searchParameters(entry.getKey(), entry.getValue()));
+                jMenuSearch.add(searchItem);
+            }
+        jMenuRegression.add(jMenuSearch);
         
         
         ///Generators
@@ -335,84 +360,380 @@ public class RegressionToyWorld extends javax.swing.JFrame
             
             jitem.addActionListener((ActionEvent e) ->
             {
-                truth = entry.getValue();
-                rData = new RegressionDataSet(1, new CategoricalData[0]);
-                Distribution outNoise = getOutputNoise();
-                Distribution inNoise = getInputNoise();
-                Random rand = new Random();
-                for (int pass = 0; pass < passes; pass++)
-                    for (double x1 = genStart; x1 < genEnd; x1 += (genEnd-genStart)/genSize)
-                        addPoint(x1 + inNoise.invCdf(rand.nextDouble()), entry.getValue().f(x1) + outNoise.invCdf(rand.nextDouble()));
-                if(!jRBRandNoNoise.isSelected())
+                final Func1D function = entry.getValue();
+                final double randomNoiseFrac = jRBRandNoNoise.isSelected() ? 0 : randNoieFrac;
+                final RegressionGenerator generator;
+                try
                 {
-                    //Only option is unfirom ATM
-                    Distribution xDist = new Uniform(genStart, genEnd);
-                    Distribution yDist = new Uniform(rData.getTargetValues().min(), rData.getTargetValues().max());
-                    
-                    for(int i = 0; i < genSize*randNoieFrac; i++)
-                        addPoint(xDist.invCdf(rand.nextDouble()), yDist.invCdf(rand.nextDouble()));
-                    
+                    generator = new RegressionGenerator(entry.getKey(), function, genStart, genEnd, genSize, passes, getInputNoise(), getOutputNoise(), randomNoiseFrac, SessionRandom.nextSeed("Generate " + entry.getKey()));
                 }
-                setUpMain();
+                catch (IllegalArgumentException ex)
+                {
+                    JOptionPane.showMessageDialog(this, ex.getMessage(), "Generation Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                jLabelInfo.setText(String.format("Generating %,d points...", generator.getTotalSize()));
+                ComputeRuntime.getPool().execute(() ->
+                {
+                    final Dataset2D data = generator.generate(ComputeRuntime.getPool());
+                    SwingUtilities.invokeLater(() ->
+                    {
+                        truth = function;
+                        rData = data;
+                        rGenerator = generator;
+                        jLabelInfo.setText(String.format("Generated %,d points in %.3f seconds", data.size(), data.getElapsedNanos()/1e9));
+                        setUpMain();
+                    });
+                });
             });
             jMenuGenerateData.add(jitem);
         }
         
-        //loop forever, eating jobs and updating the counter
-        backgroundThread = new Thread(() -> 
+        JobScheduler.getInstance().addListener((job) -> SwingUtilities.invokeLater(() ->
         {
-            while(true)
-            {
-                try
-                {
-                    Runnable toRun = backgroundJobQueue.take();
-                    validate();
-                    repaint();
-                    toRun.run();
-                    int now = waitingFor.decrementAndGet();
-                    if(now > 0)
-                        jLabelInfo.setText("Waiting on " + now + " jobs...");
-                    else
-                        jLabelInfo.setText(" ");
-                }
-                catch (InterruptedException ex)
-                {
-                    Logger.getLogger(ClusterToyWorld.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            }
-        });
-        backgroundThread.setDaemon(true);
-        backgroundThread.start();
+            jLabelInfo.setText(JobScheduler.getInstance().getSummary());
+        }));
         
         setSize(600, 400);
     }
 
     /**
-     * Adds a data point to the current data set
+     * Creates a data point to give to a regressor
      * @param x the value of the input
-     * @param y the value of the response
+     * @return a data point with the single input x
      */
-    private void addPoint(double x, double y)
+    private static DataPoint toPoint(double x)
     {
-        rData.addDataPoint(new DataPoint(DenseVector.toDenseVec(x), new int[0], new CategoricalData[0]), y);
+        return new DataPoint(DenseVector.toDenseVec(x), new int[0], new CategoricalData[0]);
+    }
+
+    /**
+     *
+     * @param trained a trained regressor, only used from one thread at a time
+     * @return the predictions of the regressor as a function of x
+     */
+    private static DoubleUnaryOperator curveOf(Regressor trained)
+    {
+        return (x) -> trained.regress(toPoint(x));
     }
     
-    private Distribution getOutputNoise()
+    /**
+     * @return the name of the selected meta method
+     */
+    private String getSelectedMeta()
+    {
+        if(jRadioButtonMetaRANSAC.isSelected())
+            return "RANSAC";
+        else if(jRadioButtonMetaBagging.isSelected())
+            return "Bagging";
+        return META_NONE;
+    }
+
+    /**
+     * Wraps a regressor in a meta method
+     * @param regressor the regressor to wrap
+     * @param meta the name of the meta method, one of {@link #META_METHODS}
+     * @param name the name of the regressor, used to pick its random stream
+     * @param data the data it will be trained on, also used to pick its
+     * random stream
+     * @return the wrapped regressor
+     */
+    private static Regressor withMeta(Regressor regressor, String meta, String name, Dataset2D data)
+    {
+        switch(meta)
+        {
+            case "RANSAC":
+                return new RANSAC(regressor, 100, 20, 50, 10);
+            case "Bagging":
+                return new Bagging(regressor, Bagging.DEFAULT_EXTRA_SAMPLES, Bagging.DEFAULT_SIMULTANIOUS_TRAINING, Bagging.DEFAULT_ROUNDS, SessionRandom.random("Bagging " + name, data.fingerprint()));
+            default:
+                return regressor;
+        }
+    }
+
+    /**
+     * Trains every regressor with its current settings on part of the current
+     * data, optionally with every meta method, and ranks them on the rest of
+     * the data in a {@link Leaderboard}
+     */
+    private void sweep()
+    {
+        final Dataset2D data = rData;
+        if(data == null)
+        {
+            JOptionPane.showMessageDialog(this, "Please generate a data set first", "Sweep Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JCheckBox everyMeta = new JCheckBox("With every Meta method");
+        JSpinner testFraction = new JSpinner(new SpinnerNumberModel(0.3, 0.05, 0.95, 0.05));
+        JPanel options = new JPanel(new GridLayout(0, 1));
+        options.add(everyMeta);
+        options.add(new JLabel("Fraction of points held out for testing"));
+        options.add(testFraction);
+        if(JOptionPane.showConfirmDialog(this, options, "Train Everything", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+            return;
+
+        List<String> metas = everyMeta.isSelected() ? Arrays.asList(META_METHODS) : Collections.singletonList(getSelectedMeta());
+        final Dataset2D[] parts = ModelSweep.split(data, ((Number) testFraction.getValue()).doubleValue(), SessionRandom.stream("Sweep Split"));
+
+        final Leaderboard leaderboard = new Leaderboard("Regressor Sweep", "MSE", false, regressors.size()*metas.size());
+        leaderboard.setLocationRelativeTo(this);
+        leaderboard.setVisible(true);
+
+        final JobScheduler scheduler = JobScheduler.getInstance();
+        for(Entry<String, Regressor> entry : regressors.entrySet())
+            for(String meta : metas)
+            {
+                final String modelName = meta.equals(META_NONE) ? entry.getKey() : meta + " " + entry.getKey();
+                Regressor model = withMeta(entry.getValue().clone(), meta, entry.getKey(), parts[0]);
+                final Regressor toTrain = new DataModelPipeline(model, transformsMenu.getDataTransformProcess().clone());
+                scheduler.submit("Sweep " + modelName, scheduler.getCoreBudget(), (threads) ->
+                {
+                    try
+                    {
+                        leaderboard.add(ModelSweep.regression(modelName, toTrain, parts[0], parts[1], threads));
+                    }
+                    catch(Exception ex)
+                    {
+                        if(!JobScheduler.currentJob().isCancelled())
+                            leaderboard.add(new ModelSweep.Result(modelName, String.valueOf(ex.getMessage())));
+                        throw ex;
+                    }
+                });
+            }
+    }
+
+    /**
+     * Cross validates a regressor with its current settings and the current
+     * meta and transform settings, showing the mean squared error of every
+     * fold in a {@link Leaderboard} as it finishes
+     */
+    private void crossValidate()
+    {
+        final Dataset2D data = rData;
+        if(data == null)
+        {
+            JOptionPane.showMessageDialog(this, "Please generate a data set first", "Cross Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JComboBox<String> model = new JComboBox<>(regressors.keySet().toArray(new String[0]));
+        JSpinner folds = new JSpinner(new SpinnerNumberModel(5, 2, 20, 1));
+        JPanel options = new JPanel(new GridLayout(0, 1));
+        options.add(model);
+        options.add(new JLabel("Number of folds"));
+        options.add(folds);
+        if(JOptionPane.showConfirmDialog(this, options, "Cross Validate", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+            return;
+
+        final String name = (String) model.getSelectedItem();
+        final int k = ((Number) folds.getValue()).intValue();
+        if(data.size() < k)
+        {
+            JOptionPane.showMessageDialog(this, "There are fewer points than folds", "Cross Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        Regressor toTrain = withMeta(regressors.get(name).clone(), getSelectedMeta(), name, data);
+        toTrain = new DataModelPipeline(toTrain, transformsMenu.getDataTransformProcess().clone());
+
+        final Leaderboard leaderboard = new Leaderboard("Cross Validate " + name, "MSE", false, k);
+        leaderboard.setLocationRelativeTo(this);
+        leaderboard.setVisible(true);
+
+        final int cores = Math.max(1, JobScheduler.getInstance().getCoreBudget()/k);
+        CrossValidation<Regressor> cv = new CrossValidation<>(name, toTrain, Regressor::clone, ModelSweep::cachedRegression, k, false);
+        cv.start(data, SessionRandom.stream("Cross Validation"), cores, leaderboard::add)
+                .thenAccept((report) -> leaderboard.setSummary(String.format("mean MSE %.4g +/- %.4g", report.getMean(), report.getStandardDeviation())));
+    }
+
+    /**
+     * Searches for the best values of the numeric parameters of a regressor,
+     * with the current meta and transform settings, and shows the best one
+     * found in a new tab
+     * @param name the name of the regressor
+     * @param regressor the regressor, which is not changed
+     */
+    private void searchParameters(final String name, final Regressor regressor)
+    {
+        final Dataset2D data = rData;
+        if(data == null)
+        {
+            JOptionPane.showMessageDialog(this, "Please generate a data set first", "Search Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        ParameterSearchDialog.Settings settings = ParameterSearchDialog.show(this, name, (Parameterized) regressor);
+        if(settings == null)
+            return;
+
+        final Dataset2D[] parts = ModelSweep.split(data, settings.validationFraction, SessionRandom.stream("Search Split"));
+        final String meta = getSelectedMeta();
+        final DataTransformProcess transforms = transformsMenu.getDataTransformProcess().clone();
+
+        final Leaderboard leaderboard = new Leaderboard("Search " + name, "MSE", false, 0);
+        leaderboard.setLocationRelativeTo(this);
+        leaderboard.setVisible(true);
+
+        ParameterSearch<Regressor> search = new ParameterSearch<>(name, regressor, Regressor::clone,
+                (model) -> new DataModelPipeline(withMeta(model, meta, name, parts[0]), transforms.clone()),
+                settings.ranges, ModelSweep::regression, false, leaderboard,
+                (best, description) ->
+                {
+                    //the winner only saw the training part, the tab shows and follows all of the points
+                    final String title = "Best " + name + " (" + description + ")";
+                    final JobScheduler scheduler = JobScheduler.getInstance();
+                    scheduler.submit("Retrain " + title, scheduler.getCoreBudget(), (threads) ->
+                    {
+                        final Regressor retrained = best.clone();
+                        retrained.train(data.asRegressionDataSet(), threads);
+                        addPlotTab(title, data, retrained, JobScheduler.currentJob());
+                    });
+                },
+                (reason) -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, reason, "Search Error", JOptionPane.ERROR_MESSAGE)));
+        search.start(settings.random ? search.random(settings.randomCount, SessionRandom.stream("Search " + name)) : search.grid(), parts[0], parts[1]);
+    }
+
+    /**
+     * Plots a trained regressor over the data in a new tab. May be called from
+     * any thread.
+     * @param title the title of the tab
+     * @param data the data to plot
+     * @param trained the trained regressor
+     * @param job the job that trained the regressor, no tab is added if it has
+     * been cancelled. May be {@code null}
+     */
+    private void addPlotTab(final String title, final Dataset2D data, final Regressor trained, final JobScheduler.Job job)
+    {
+        final JFXPanel fxPanel = new JFXPanel();
+        Platform.runLater(() ->
+        {
+            fxPanel.setScene(new Scene(new BorderPane(new ScatterPlot2D(data, curveOf(trained))
+            {
+                @Override
+                public PlotRenderer toRenderer()
+                {
+                    //the renderer draws on another thread while the plot may still be drawing
+                    PlotRenderer renderer = super.toRenderer();
+                    renderer.setCurve(curveOf(trained.clone()));
+                    return renderer;
+                }
+            })));
+        });
+        SwingUtilities.invokeLater(() ->
+        {
+            if(job == null || !job.isCancelled())
+                jTabbedPane.add(title, fxPanel);
+        });
+    }
+
+    private RegressionGenerator.Noise getOutputNoise()
     {
         if(jRBOutUniformNoise.isSelected())
-            return new Uniform(-0.2, 0.2);
+            return RegressionGenerator.Noise.UNIFORM;
         else if(jRBOutGaussNoise.isSelected())
-            return new Normal(0, 0.2);
-        return new Uniform(0, Math.nextUp(0));
+            return RegressionGenerator.Noise.GAUSSIAN;
+        return RegressionGenerator.Noise.NONE;
     }
     
-    private Distribution getInputNoise()
+    private RegressionGenerator.Noise getInputNoise()
     {
         if(jRBInUniformNoise.isSelected())
-            return new Uniform(-0.2, 0.2);
+            return RegressionGenerator.Noise.UNIFORM;
         else if(jRBInGaussNoise.isSelected())
-            return new Normal(0, 0.2);
-        return new Uniform(0, Math.nextUp(0));
+            return RegressionGenerator.Noise.GAUSSIAN;
+        return RegressionGenerator.Noise.NONE;
+    }
+    
+    /**
+     * Sets all of the generation options to the ones that made the given data,
+     * so that generating again gives the same kind of data
+     * @param generator the generator to copy the settings of
+     */
+    private void setGenerationSettings(RegressionGenerator generator)
+    {
+        genSize = generator.getSize();
+        genStart = generator.getStart();
+        genEnd = generator.getEnd();
+        passes = generator.getPasses();
+        if(generator.getRandomNoiseFrac() > 0)
+        {
+            randNoieFrac = generator.getRandomNoiseFrac();
+            jRBRandUniformNoise.setSelected(true);
+        }
+        else
+            jRBRandNoNoise.setSelected(true);
+        selectNoise(generator.getInputNoise(), jRBInNoNoise, jRBInUniformNoise, jRBInGaussNoise);
+        selectNoise(generator.getOutputNoise(), jRBOutNoNoise, jRBOutUniformNoise, jRBOutGaussNoise);
+    }
+    
+    private static void selectNoise(RegressionGenerator.Noise noise, JRadioButtonMenuItem none, JRadioButtonMenuItem uniform, JRadioButtonMenuItem gauss)
+    {
+        switch(noise)
+        {
+            case UNIFORM:
+                uniform.setSelected(true);
+                break;
+            case GAUSSIAN:
+                gauss.setSelected(true);
+                break;
+            default:
+                none.setSelected(true);
+        }
+    }
+    
+    private void exportData()
+    {
+        final Dataset2D data = rData;
+        final RegressionGenerator generator = rGenerator;
+        if(data == null || generator == null)
+        {
+            JOptionPane.showMessageDialog(this, "Please generate a data set first", "Export Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if(dataFileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        File file = dataFileChooser.getSelectedFile();
+        if(!file.getName().contains("."))
+            file = new File(file.getPath() + "." + RegressionDataFile.EXTENSION);
+        try
+        {
+            RegressionDataFile.write(file, data, generator);
+            jLabelInfo.setText(String.format("Exported %,d points to %s", data.size(), file.getName()));
+        }
+        catch (IOException ex)
+        {
+            JOptionPane.showMessageDialog(this, "Could not export the data: " + ex.getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void importData()
+    {
+        if(dataFileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        final File file = dataFileChooser.getSelectedFile();
+        jLabelInfo.setText("Reading " + file.getName() + "...");
+        ComputeRuntime.getPool().execute(() ->
+        {
+            try
+            {
+                final RegressionDataFile read = RegressionDataFile.read(file, generatableFunctions);
+                SwingUtilities.invokeLater(() ->
+                {
+                    truth = read.generator.getFunction();
+                    rData = read.data;
+                    rGenerator = read.generator;
+                    setGenerationSettings(read.generator);
+                    jLabelInfo.setText(String.format("Read %,d points of %s in %.3f seconds", read.data.size(), read.generator.getFunctionName(), read.data.getElapsedNanos()/1e9));
+                    setUpMain();
+                });
+            }
+            catch (IOException ex)
+            {
+                SwingUtilities.invokeLater(() ->
+                {
+                    jLabelInfo.setText(" ");
+                    JOptionPane.showMessageDialog(this, "Could not import the data: " + ex.getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        });
     }
     
     
@@ -422,10 +743,12 @@ public class RegressionToyWorld extends javax.swing.JFrame
             remove(jTabbedPane);
         jTabbedPane = new JTabbedPane();
         
+        final Dataset2D data = rData;
+        final Function truthToShow = truth;
         final JFXPanel fxPanel = new JFXPanel();
         Platform.runLater(() ->
         {
-            fxPanel.setScene(new Scene(new BorderPane(Plot.regression(rData, (double value) -> truth.f(value)))));
+            fxPanel.setScene(new Scene(new BorderPane(new ScatterPlot2D(data, (x) -> truthToShow.f(x)))));
         });
         
         jTabbedPane.add("Raw Data", fxPanel);
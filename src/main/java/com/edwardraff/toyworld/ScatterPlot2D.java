@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+
+/**
+ * Scatter plot that draws a {@link Dataset2D} straight from its arrays. The
+ * points are written into a pixel buffer, so no node or data point object is
+ * made per point. Labeled points are colored by class. A 1D function, such as
+ * a regressor's predictions, may be drawn over the points as a curve.<br>
+ * <br>
+ * Small data sets are always drawn point by point. Larger ones are drawn with
+ * a level of detail that keeps the cost of a frame bounded: the full view is
+ * a {@link DensityRaster} built once in the background, and zoomed in views
+ * draw a location stratified sample of the visible points from the data
+ * set's {@link PointGrid}. The mouse wheel zooms, dragging pans, and a double
+ * click goes back to the full view. Subclasses may draw behind the points,
+ * such as the decision surface of a model, with
+ * {@link #drawBackground(int[], int, int, double, double, double, double) }.
+ *
+ * @author Edward Raff
+ */
+public class ScatterPlot2D extends Pane
+{
+    private static final double ZOOM_STEP = 1.15;
+
+    private final Dataset2D data;
+    private final Canvas canvas = new Canvas();
+    private DoubleUnaryOperator curve;
+    /**
+     * The range of values shown on each axis when not zoomed
+     */
+    private final double fullMinX, fullMaxX, fullMinY, fullMaxY;
+    /**
+     * The range of values currently shown on each axis
+     */
+    private double minX, maxX, minY, maxY;
+
+    /**
+     * The density raster of the full view, and the size it was drawn at
+     */
+    private int[] density;
+    private int densityW, densityH;
+    private boolean densityPending = false;
+    private boolean gridPending = false;
+
+    private double dragStartX, dragStartY;
+    private double dragMinX, dragMinY;
+
+    /**
+     *
+     * @param data the points to plot
+     */
+    public ScatterPlot2D(Dataset2D data)
+    {
+        this(data, null);
+    }
+
+    /**
+     *
+     * @param data the points to plot
+     * @param curve the function of x to draw over the points, or {@code null}
+     */
+    public ScatterPlot2D(Dataset2D data, DoubleUnaryOperator curve)
+    {
+        this.data = data;
+        this.curve = curve;
+        double padX = PlotRenderer.padding(data.getMinX(), data.getMaxX());
+        double padY = PlotRenderer.padding(data.getMinY(), data.getMaxY());
+        minX = fullMinX = data.getMinX()-padX;
+        maxX = fullMaxX = data.getMaxX()+padX;
+        minY = fullMinY = data.getMinY()-padY;
+        maxY = fullMaxY = data.getMaxY()+padY;
+        getChildren().add(canvas);
+        setPrefSize(500, 400);
+
+        setOnScroll((e) ->
+        {
+            double factor = Math.pow(ZOOM_STEP, -e.getDeltaY()/40);
+            zoom(toDataX(e.getX()), toDataY(e.getY()), factor);
+        });
+        setOnMousePressed((e) ->
+        {
+            dragStartX = e.getX();
+            dragStartY = e.getY();
+            dragMinX = minX;
+            dragMinY = minY;
+        });
+        setOnMouseDragged((e) ->
+        {
+            double dx = (e.getX()-dragStartX)*(maxX-minX)/plotWidth();
+            double dy = (e.getY()-dragStartY)*(maxY-minY)/plotHeight();
+            pan(dragMinX-dx, dragMinY+dy);
+        });
+        setOnMouseClicked((e) ->
+        {
+            if(e.getClickCount() == 2)
+                resetView();
+        });
+    }
+
+    /**
+     * Sets the function drawn over the points and redraws the plot. Must be
+     * called on the JavaFX thread.
+     * @param curve the function of x to draw, or {@code null} for none
+     */
+    public void setCurve(DoubleUnaryOperator curve)
+    {
+        this.curve = curve;
+        draw();
+    }
+
+    /**
+     * Makes a renderer that draws what the plot shows, in its current view,
+     * off screen. Must be called on the JavaFX thread.
+     * @return the renderer of the plot
+     */
+    public PlotRenderer toRenderer()
+    {
+        PlotRenderer renderer = new PlotRenderer(data);
+        renderer.setCurve(curve);
+        renderer.setView(minX, maxX, minY, maxY);
+        return renderer;
+    }
+
+    /**
+     * Goes back to showing all of the points
+     */
+    public void resetView()
+    {
+        minX = fullMinX;
+        maxX = fullMaxX;
+        minY = fullMinY;
+        maxY = fullMaxY;
+        draw();
+    }
+
+    private boolean isZoomed()
+    {
+        return minX != fullMinX || maxX != fullMaxX || minY != fullMinY || maxY != fullMaxY;
+    }
+
+    private void zoom(double centerX, double centerY, double factor)
+    {
+        double newWidth = (maxX-minX)*factor;
+        double newHeight = (maxY-minY)*factor;
+        if(newWidth >= fullMaxX-fullMinX || newHeight >= fullMaxY-fullMinY)
+        {
+            resetView();
+            return;
+        }
+        double newMinX = centerX - (centerX-minX)*factor;
+        double newMinY = centerY - (centerY-minY)*factor;
+        maxX = minX + newWidth;
+        maxY = minY + newHeight;
+        pan(newMinX, newMinY);
+    }
+
+    /**
+     * Moves the view, keeping its size, without going past the full view
+     */
+    private void pan(double newMinX, double newMinY)
+    {
+        double width = maxX-minX, height = maxY-minY;
+        minX = Math.max(fullMinX, Math.min(fullMaxX-width, newMinX));
+        minY = Math.max(fullMinY, Math.min(fullMaxY-height, newMinY));
+        maxX = minX + width;
+        maxY = minY + height;
+        draw();
+    }
+
+    private int plotWidth()
+    {
+        return (int) canvas.getWidth() - PlotRenderer.MARGIN_LEFT - PlotRenderer.MARGIN_RIGHT;
+    }
+
+    private int plotHeight()
+    {
+        return (int) canvas.getHeight() - PlotRenderer.MARGIN_TOP - PlotRenderer.MARGIN_BOTTOM;
+    }
+
+    private double toDataX(double canvasX)
+    {
+        return minX + (canvasX-PlotRenderer.MARGIN_LEFT)*(maxX-minX)/plotWidth();
+    }
+
+    private double toDataY(double canvasY)
+    {
+        return maxY - (canvasY-PlotRenderer.MARGIN_TOP)*(maxY-minY)/plotHeight();
+    }
+
+    @Override
+    protected void layoutChildren()
+    {
+        super.layoutChildren();
+        if(canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight())
+        {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            draw();
+        }
+    }
+
+    private void draw()
+    {
+        int width = (int) canvas.getWidth();
+        int height = (int) canvas.getHeight();
+        int plotW = plotWidth();
+        int plotH = plotHeight();
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        if(plotW <= 0 || plotH <= 0)
+            return;
+
+        int[] pixels = new int[plotW*plotH];
+        Arrays.fill(pixels, PlotColors.BACKGROUND);
+        String backgroundStatus = drawBackground(pixels, plotW, plotH, minX, maxX, minY, maxY);
+        String status;
+        if(data.size() <= PlotRenderer.DIRECT_LIMIT)
+        {
+            PlotRenderer.drawPoints(data, null, pixels, plotW, plotH, minX, maxX, minY, maxY);
+            status = null;
+        }
+        else if(!isZoomed())
+        {
+            if(density != null && densityW == plotW && densityH == plotH)
+            {
+                System.arraycopy(density, 0, pixels, 0, pixels.length);
+                status = String.format("Density of %,d points", data.size());
+            }
+            else
+            {
+                requestDensity(plotW, plotH);
+                status = "Rendering...";
+            }
+        }
+        else if(data.hasGrid())
+        {
+            int[] sample = data.getGrid(ComputeRuntime.getPool()).sample(minX, maxX, minY, maxY, PlotRenderer.POINT_BUDGET);
+            PlotRenderer.drawPoints(data, sample, pixels, plotW, plotH, minX, maxX, minY, maxY);
+            long visible = data.getGrid(ComputeRuntime.getPool()).countIn(minX, maxX, minY, maxY);
+            status = sample.length < visible ? String.format("Sample of %,d from %,d points", sample.length, visible) : null;
+        }
+        else
+        {
+            requestGrid();
+            status = "Indexing points...";
+        }
+
+        WritableImage image = new WritableImage(plotW, plotH);
+        image.getPixelWriter().setPixels(0, 0, plotW, plotH, PixelFormat.getIntArgbInstance(), pixels, 0, plotW);
+        gc.drawImage(image, PlotRenderer.MARGIN_LEFT, PlotRenderer.MARGIN_TOP);
+
+        if(curve != null)
+            drawCurve(gc, plotW, plotH);
+        drawAxes(gc, plotW, plotH);
+        if(status == null)
+            status = backgroundStatus;
+        if(status != null)
+            gc.fillText(status, PlotRenderer.MARGIN_LEFT+5, PlotRenderer.MARGIN_TOP+15);
+    }
+
+    /**
+     * Draws whatever goes behind the points, the plot is left blank by
+     * default. Called on the JavaFX thread for every frame, so anything slow
+     * should be done in the background, followed by a call to
+     * {@link #redraw() }.
+     * @param pixels the ARGB pixels of the plot area, row by row from the top
+     * left, filled with the background color
+     * @param plotW the width of the plot area in pixels
+     * @param plotH the height of the plot area in pixels
+     * @param minX the x value of the left edge of the view
+     * @param maxX the x value of the right edge of the view
+     * @param minY the y value of the bottom edge of the view
+     * @param maxY the y value of the top edge of the view
+     * @return a note to show on the plot, or {@code null} for none
+     */
+    protected String drawBackground(int[] pixels, int plotW, int plotH, double minX, double maxX, double minY, double maxY)
+    {
+        return null;
+    }
+
+    /**
+     * Draws the plot again. Must be called on the JavaFX thread.
+     */
+    protected void redraw()
+    {
+        draw();
+    }
+
+    /**
+     * Starts building the density raster of the full view in the background,
+     * the plot is redrawn once it is done
+     */
+    private void requestDensity(final int plotW, final int plotH)
+    {
+        if(densityPending)
+            return;
+        densityPending = true;
+        final double x0 = fullMinX, x1 = fullMaxX, y0 = fullMinY, y1 = fullMaxY;
+        ComputeRuntime.getPool().execute(() ->
+        {
+            int[] raster = DensityRaster.render(data, x0, x1, y0, y1, plotW, plotH, ComputeRuntime.getPool());
+            Platform.runLater(() ->
+            {
+                density = raster;
+                densityW = plotW;
+                densityH = plotH;
+                densityPending = false;
+                draw();
+            });
+        });
+    }
+
+    /**
+     * Starts building the grid index of the points in the background, the
+     * plot is redrawn once it is done
+     */
+    private void requestGrid()
+    {
+        if(gridPending)
+            return;
+        gridPending = true;
+        ComputeRuntime.getPool().execute(() ->
+        {
+            data.getGrid(ComputeRuntime.getPool());
+            Platform.runLater(() ->
+            {
+                gridPending = false;
+                draw();
+            });
+        });
+    }
+
+    private void drawCurve(GraphicsContext gc, int plotW, int plotH)
+    {
+        double[] xs = new double[plotW];
+        double[] ys = new double[plotW];
+        int n = PlotRenderer.traceCurve(curve, plotW, plotH, minX, maxX, minY, maxY, xs, ys);
+        gc.save();
+        gc.beginPath();
+        gc.rect(PlotRenderer.MARGIN_LEFT, PlotRenderer.MARGIN_TOP, plotW, plotH);
+        gc.clip();
+        gc.setStroke(PlotColors.toFX(PlotColors.CURVE));
+        gc.setLineWidth(2);
+        gc.strokePolyline(xs, ys, n);
+        gc.restore();
+    }
+
+    private void drawAxes(GraphicsContext gc, int plotW, int plotH)
+    {
+        gc.setStroke(PlotColors.toFX(PlotColors.AXIS));
+        gc.setFill(PlotColors.toFX(PlotColors.AXIS));
+        gc.setLineWidth(1);
+        gc.strokeRect(PlotRenderer.MARGIN_LEFT+0.5, PlotRenderer.MARGIN_TOP+0.5, plotW-1, plotH-1);
+        final int ticks = 5;
+        for(int t = 0; t <= ticks; t++)
+        {
+            double frac = t/(double) ticks;
+            double tx = PlotRenderer.MARGIN_LEFT + frac*plotW;
+            double ty = PlotRenderer.MARGIN_TOP + plotH - frac*plotH;
+            gc.strokeLine(tx, PlotRenderer.MARGIN_TOP+plotH, tx, PlotRenderer.MARGIN_TOP+plotH+4);
+            gc.strokeLine(PlotRenderer.MARGIN_LEFT-4, ty, PlotRenderer.MARGIN_LEFT, ty);
+            gc.fillText(PlotRenderer.formatTick(minX + frac*(maxX-minX)), tx-12, PlotRenderer.MARGIN_TOP+plotH+17);
+            gc.fillText(PlotRenderer.formatTick(minY + frac*(maxY-minY)), 2, ty+4);
+        }
+    }
+}
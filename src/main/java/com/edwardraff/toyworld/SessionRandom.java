@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.awt.Component;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import javax.swing.JOptionPane;
+
+/**
+ * The source of all randomness in a session. Every job asks for its random
+ * stream by a key that names what it is for, such as the name of the model
+ * being trained. The n'th stream asked for with a given key depends only on
+ * the session seed, the key and n. So repeating the same steps with the same
+ * seed gives the same streams, no matter what else ran in between or how many
+ * threads were used. Work that is split into parallel chunks should
+ * {@link SplittableRandom#split() split} one stream per chunk, in chunk
+ * order.<br>
+ * <br>
+ * Models that hold their own generator, such as {@link jsat.classifiers.boosting.Bagging},
+ * instead get a {@link #random(String, long) fixed stream} for the data they
+ * are trained on. Training the same model on the same data again then draws
+ * the same numbers, so the {@link ModelCache} can find the earlier result.<br>
+ * <br>
+ * The seed starts as the {@code toyworld.seed} system property, or
+ * {@link #DEFAULT_SEED} if it is not set.
+ *
+ * @author Edward Raff
+ */
+public class SessionRandom
+{
+    public static final long DEFAULT_SEED = 1;
+
+    private static long seed = Long.getLong("toyworld.seed", DEFAULT_SEED);
+    /**
+     * The number of streams handed out for every key since the seed was set
+     */
+    private static final Map<String, Integer> uses = new HashMap<>();
+
+    private SessionRandom()
+    {
+    }
+
+    /**
+     *
+     * @return the seed of the session
+     */
+    public static synchronized long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the session, and starts the count of every key over
+     * @param seed the new seed
+     */
+    public static synchronized void setSeed(long seed)
+    {
+        SessionRandom.seed = seed;
+        uses.clear();
+    }
+
+    /**
+     * Returns the seed of the next stream for the given key
+     * @param key what the stream is for
+     * @return a seed that depends only on the session seed, the key, and how
+     * many times the key has been used
+     */
+    public static synchronized long nextSeed(String key)
+    {
+        int use = uses.merge(key, 1, Integer::sum);
+        //String.hashCode is fixed by the spec, so this is the same on every JVM
+        SplittableRandom mixer = new SplittableRandom(seed ^ (key.hashCode()*0x9E3779B97F4A7C15L));
+        for(int i = 1; i < use; i++)
+            mixer.nextLong();
+        return mixer.nextLong();
+    }
+
+    /**
+     * Returns the next stream for the given key
+     * @param key what the stream is for
+     * @return an independent, reproducible random stream
+     */
+    public static SplittableRandom stream(String key)
+    {
+        return new SplittableRandom(nextSeed(key));
+    }
+
+    /**
+     * Returns the next stream for the given key, as a {@link Random} for the
+     * JSAT models that take one
+     * @param key what the stream is for
+     * @return a reproducible random number generator
+     */
+    public static Random random(String key)
+    {
+        return new Random(nextSeed(key));
+    }
+
+    /**
+     * Returns the seed of the stream for the given key and data. Unlike
+     * {@link #nextSeed(String) }, asking again gives the same seed until the
+     * session seed is changed.
+     * @param key what the stream is for
+     * @param fingerprint the {@link Dataset2D#fingerprint() fingerprint} of
+     * the data the stream is used on
+     * @return a seed that depends only on the session seed, the key and the
+     * data
+     */
+    public static synchronized long seedFor(String key, long fingerprint)
+    {
+        SplittableRandom mixer = new SplittableRandom(seed ^ (key.hashCode()*0x9E3779B97F4A7C15L) ^ (fingerprint*0xC2B2AE3D27D4EB4FL));
+        return mixer.nextLong();
+    }
+
+    /**
+     * Returns the stream for the given key and data, as a {@link Random} for
+     * the JSAT models that take one
+     * @param key what the stream is for
+     * @param fingerprint the {@link Dataset2D#fingerprint() fingerprint} of
+     * the data the stream is used on
+     * @return a random number generator that is the same every time it is
+     * asked for with the same key and data
+     */
+    public static Random random(String key, long fingerprint)
+    {
+        return new Random(seedFor(key, fingerprint));
+    }
+
+    /**
+     * Asks the user for a new session seed
+     * @param parent the component to show the dialog over
+     */
+    public static void showSeedDialog(Component parent)
+    {
+        String input = JOptionPane.showInputDialog(parent, "Seed for all random choices of this session", getSeed());
+        if(input == null)
+            return;
+        try
+        {
+            setSeed(Long.parseLong(input.trim()));
+        }
+        catch (NumberFormatException ex)
+        {
+            JOptionPane.showMessageDialog(parent, "The seed must be an integer", "Seed Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link DecisionSurface.Raster rasters} evaluated for every model,
+ * so that drawing the surface of a model again, such as with soft instead of
+ * hard boundaries or with coarser cells, does not ask the model about any
+ * point again. A raster can be had for any grid whose cell centers all fall
+ * inside a cached raster of the same model with cells no larger than its own,
+ * by taking the cell under every center. <br>
+ * Rasters are shared by all of the plots, and the least recently used are
+ * dropped once the cache goes over its memory limit, set by the
+ * {@code toyworld.surfacecache.mb} system property. Cached rasters must not
+ * be changed.
+ *
+ * @author Edward Raff
+ */
+public class SurfaceCache
+{
+    private static SurfaceCache instance;
+
+    private final long memoryLimit;
+    private long memoryBytes = 0;
+    /**
+     * The rasters of every model, least recently used first
+     */
+    private final LinkedHashMap<Key, DecisionSurface.Raster> rasters = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     *
+     * @param memoryLimit the most bytes of rasters to keep
+     */
+    public SurfaceCache(long memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     *
+     * @return the cache shared by all of the plots
+     */
+    public static synchronized SurfaceCache getInstance()
+    {
+        if(instance == null)
+        {
+            long defaultMB = Math.min(64, Runtime.getRuntime().maxMemory() / 16 >> 20);
+            instance = new SurfaceCache(Long.getLong("toyworld.surfacecache.mb", defaultMB) << 20);
+        }
+        return instance;
+    }
+
+    /**
+     * A raster of a model, compared by the identity of the model, so a
+     * retrained copy never finds the rasters of the old one
+     */
+    private static class Key
+    {
+        final Object model;
+        final DecisionSurface.Grid grid;
+        final boolean adaptive;
+
+        Key(Object model, DecisionSurface.Grid grid, boolean adaptive)
+        {
+            this.model = model;
+            this.grid = grid;
+            this.adaptive = adaptive;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return model == other.model && adaptive == other.adaptive && grid.sameCells(other.grid);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = System.identityHashCode(model);
+            hash = 31*hash + grid.width;
+            hash = 31*hash + grid.height;
+            hash = 31*hash + Double.hashCode(grid.minX);
+            hash = 31*hash + Double.hashCode(grid.maxY);
+            return 31*hash + (adaptive ? 1 : 0);
+        }
+    }
+
+    /**
+     * Finds the raster of a model over a grid, from a cached raster of the
+     * same grid or a finer one
+     * @param model the model the raster is of
+     * @param grid the cells wanted
+     * @param adaptive {@code true} if a raster made by
+     * {@link DecisionSurface#evaluateAdaptive adaptive} evaluation will do.
+     * Exact rasters are always used.
+     * @return the raster, or {@code null} if it can not be made without the
+     * model
+     */
+    public synchronized DecisionSurface.Raster get(Object model, DecisionSurface.Grid grid, boolean adaptive)
+    {
+        DecisionSurface.Raster raster = rasters.get(new Key(model, grid, false));
+        if(raster == null && adaptive)
+            raster = rasters.get(new Key(model, grid, true));
+        if(raster != null)
+        {
+            hits++;
+            return raster;
+        }
+        //the coarsest raster that is fine enough needs the least memory touched
+        Key source = null;
+        for(Key key : rasters.keySet())
+            if(key.model == model && (adaptive || !key.adaptive) && covers(key.grid, grid))
+                if(source == null || cellArea(key.grid) > cellArea(source.grid))
+                    source = key;
+        if(source == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        raster = resample(rasters.get(source), grid);
+        put(model, raster, source.adaptive);
+        return raster;
+    }
+
+    /**
+     * Adds a raster of a model
+     * @param model the model the raster is of
+     * @param raster the raster, which must not be changed afterwards
+     * @param adaptive {@code true} if the raster was made by
+     * {@link DecisionSurface#evaluateAdaptive adaptive} evaluation
+     */
+    public synchronized void put(Object model, DecisionSurface.Raster raster, boolean adaptive)
+    {
+        long bytes = bytes(raster);
+        if(bytes > memoryLimit)
+            return;
+        Key key = new Key(model, raster, adaptive);
+        DecisionSurface.Raster old = rasters.put(key, raster);
+        if(old != null)
+            memoryBytes -= bytes(old);
+        memoryBytes += bytes;
+        Iterator<Map.Entry<Key, DecisionSurface.Raster>> iter = rasters.entrySet().iterator();
+        while(memoryBytes > memoryLimit && iter.hasNext())
+        {
+            Map.Entry<Key, DecisionSurface.Raster> eldest = iter.next();
+            if(eldest.getKey().equals(key))
+                continue;
+            iter.remove();
+            memoryBytes -= bytes(eldest.getValue());
+        }
+    }
+
+    /**
+     * Drops every raster of a model, such as once it has been replaced
+     * @param model the model to forget
+     */
+    public synchronized void remove(Object model)
+    {
+        Iterator<Map.Entry<Key, DecisionSurface.Raster>> iter = rasters.entrySet().iterator();
+        while(iter.hasNext())
+        {
+            Map.Entry<Key, DecisionSurface.Raster> entry = iter.next();
+            if(entry.getKey().model == model)
+            {
+                iter.remove();
+                memoryBytes -= bytes(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     *
+     * @return a short description of how many rasters are cached and how
+     * often they have been found
+     */
+    public synchronized String getSummary()
+    {
+        return String.format("%d surfaces (%.1f MB), %d hits, %d misses", rasters.size(), memoryBytes/(1024.0*1024.0), hits, misses);
+    }
+
+    /**
+     *
+     * @return {@code true} if the finer grid has cells no larger than the
+     * coarser one, and holds the center of every cell of it
+     */
+    private static boolean covers(DecisionSurface.Grid finer, DecisionSurface.Grid coarser)
+    {
+        if(cellWidth(finer) > cellWidth(coarser) || cellHeight(finer) > cellHeight(coarser))
+            return false;
+        //grids of the same view may be off by rounding where their edges meet
+        double slackX = 1e-6*cellWidth(finer);
+        double slackY = 1e-6*cellHeight(finer);
+        return finer.minX-slackX <= coarser.cellX(0) && coarser.cellX(coarser.width-1) <= finer.maxX+slackX
+                && finer.minY-slackY <= coarser.cellY(coarser.height-1) && coarser.cellY(0) <= finer.maxY+slackY;
+    }
+
+    /**
+     * Makes the raster of a grid by taking the cell of a finer raster under
+     * the center of every one of its cells
+     */
+    private static DecisionSurface.Raster resample(DecisionSurface.Raster finer, DecisionSurface.Grid grid)
+    {
+        DecisionSurface.Raster raster = new DecisionSurface.Raster(grid);
+        int[] columns = new int[grid.width];
+        for(int col = 0; col < grid.width; col++)
+            columns[col] = Math.max(0, Math.min(finer.width-1, (int) ((grid.cellX(col)-finer.minX)/cellWidth(finer))));
+        for(int row = 0; row < grid.height; row++)
+        {
+            int fineRow = Math.max(0, Math.min(finer.height-1, (int) ((finer.maxY-grid.cellY(row))/cellHeight(finer))));
+            for(int col = 0; col < grid.width; col++)
+            {
+                int from = fineRow*finer.width + columns[col];
+                raster.classes[row*grid.width+col] = finer.classes[from];
+                raster.confidence[row*grid.width+col] = finer.confidence[from];
+            }
+        }
+        return raster;
+    }
+
+    private static double cellWidth(DecisionSurface.Grid grid)
+    {
+        return (grid.maxX-grid.minX)/grid.width;
+    }
+
+    private static double cellHeight(DecisionSurface.Grid grid)
+    {
+        return (grid.maxY-grid.minY)/grid.height;
+    }
+
+    private static double cellArea(DecisionSurface.Grid grid)
+    {
+        return cellWidth(grid)*cellHeight(grid);
+    }
+
+    private static long bytes(DecisionSurface.Raster raster)
+    {
+        return 4L*raster.classes.length + 4L*raster.confidence.length;
+    }
+}
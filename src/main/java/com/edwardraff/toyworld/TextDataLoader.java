@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loader for the simple "#, #, className" text format. The file is memory
+ * mapped in chunks that end on line boundaries, and each chunk is parsed in
+ * parallel straight into primitive columns. Numbers are parsed by hand from
+ * the mapped bytes, so no String is created per line or per token.
+ *
+ * @author Edward Raff
+ */
+public class TextDataLoader
+{
+    /**
+     * Target size in bytes of each chunk parsed by a single task
+     */
+    public static final int CHUNK_SIZE = 1 << 24;
+    /**
+     * Largest mantissa that is exactly representable as a double
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /**
+     * Number of lines parsed between progress updates and cancellation checks
+     */
+    private static final int LINES_PER_UPDATE = 1 << 16;
+    /**
+     * Powers of ten that are exactly representable as a double
+     */
+    private static final double[] POW10 = new double[23];
+    static
+    {
+        POW10[0] = 1;
+        for(int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i-1]*10;
+    }
+
+    private TextDataLoader()
+    {
+    }
+
+    /**
+     * Loads the points from the given text file. Each line is expected to have
+     * at least {@code minColumns} tokens separated by whitespace or commas.
+     * The first two are the coordinates, and if {@code minColumns} is 3 the
+     * third is the class name. Lines with too few tokens are skipped.
+     *
+     * @param file the file to read
+     * @param minColumns 2 to read unlabeled points, or 3 to read labeled points
+     * @param execService the source of threads to parse chunks with
+     * @return the columns of all points in the file, in file order
+     * @throws IOException if the file could not be read
+     * @throws NumberFormatException if a coordinate could not be parsed
+     */
+    public static Dataset2D load(File file, int minColumns, ExecutorService execService) throws IOException
+    {
+        return load(file, minColumns, execService, new LoadMonitor());
+    }
+
+    /**
+     * Loads the points from the given text file, reporting progress to and 
+     * checking for cancellation from the given monitor. 
+     *
+     * @param file the file to read
+     * @param minColumns 2 to read unlabeled points, or 3 to read labeled points
+     * @param execService the source of threads to parse chunks with
+     * @param monitor the monitor to report progress to
+     * @return the columns of all points in the file, in file order
+     * @throws IOException if the file could not be read
+     * @throws NumberFormatException if a coordinate could not be parsed
+     * @throws CancellationException if the monitor was cancelled
+     */
+    public static Dataset2D load(File file, int minColumns, ExecutorService execService, final LoadMonitor monitor) throws IOException
+    {
+        if(minColumns != 2 && minColumns != 3)
+            throw new IllegalArgumentException("minColumns must be 2 or 3, not " + minColumns);
+        final boolean labeled = minColumns == 3;
+        long start = System.nanoTime();
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            monitor.setTotalBytes(channel.size());
+            long[] bounds = chunkBoundaries(channel);
+
+            List<Future<Chunk>> futures = new ArrayList<>(bounds.length-1);
+            for(int i = 0; i < bounds.length-1; i++)
+            {
+                final long from = bounds[i];
+                final long to = bounds[i+1];
+                futures.add(execService.submit(() -> parseChunk(channel, from, to, labeled, monitor)));
+            }
+
+            List<Chunk> chunks = new ArrayList<>(futures.size());
+            try
+            {
+                for(Future<Chunk> future : futures)
+                    chunks.add(get(future));
+            }
+            finally
+            {
+                //don't start any chunks that are still queued if we failed
+                if(chunks.size() < futures.size())
+                    for(Future<Chunk> future : futures)
+                        future.cancel(true);
+            }
+            monitor.checkCancelled();
+
+            return merge(chunks, labeled, execService, start);
+        }
+    }
+
+    /**
+     * Splits the file into ranges of about {@link #CHUNK_SIZE} bytes, where
+     * every range but the last ends just after a new line.
+     * @param channel the file to split
+     * @return the start offset of every chunk, followed by the file size
+     * @throws IOException
+     */
+    private static long[] chunkBoundaries(FileChannel channel) throws IOException
+    {
+        final long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = CHUNK_SIZE;
+        while(pos < size)
+        {
+            long lineEnd = -1;
+            long scan = pos;
+            while(lineEnd < 0 && scan < size)
+            {
+                probe.clear();
+                int read = channel.read(probe, scan);
+                if(read <= 0)
+                    break;
+                for(int i = 0; i < read; i++)
+                    if(probe.get(i) == '\n')
+                    {
+                        lineEnd = scan + i + 1;
+                        break;
+                    }
+                scan += read;
+            }
+            if(lineEnd < 0 || lineEnd >= size)
+                break;
+            bounds.add(lineEnd);
+            pos = lineEnd + CHUNK_SIZE;
+        }
+        bounds.add(size);
+
+        long[] toRet = new long[bounds.size()];
+        for(int i = 0; i < toRet.length; i++)
+            toRet[i] = bounds.get(i);
+        return toRet;
+    }
+
+    /**
+     * Parses every line in the given byte range of the file
+     */
+    private static Chunk parseChunk(FileChannel channel, long from, long to, boolean labeled, LoadMonitor monitor) throws IOException
+    {
+        final int len = (int) (to - from);
+        Chunk chunk = new Chunk(len/16+16, labeled);
+        if(len == 0)
+            return chunk;
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, from, len);
+
+        int pos = 0;
+        int lines = 0;
+        int reportedPos = 0, reportedRows = 0;
+        while(pos < len)
+        {
+            if(++lines % LINES_PER_UPDATE == 0)
+            {
+                monitor.checkCancelled();
+                monitor.addProgress(pos-reportedPos, chunk.size-reportedRows);
+                reportedPos = pos;
+                reportedRows = chunk.size;
+            }
+            int lineEnd = pos;
+            while(lineEnd < len && buf.get(lineEnd) != '\n')
+                lineEnd++;
+
+            //find the bounds of the first 3 tokens
+            int s0 = skipSeparators(buf, pos, lineEnd);
+            int e0 = endOfToken(buf, s0, lineEnd);
+            int s1 = skipSeparators(buf, e0, lineEnd);
+            int e1 = endOfToken(buf, s1, lineEnd);
+            int s2 = skipSeparators(buf, e1, lineEnd);
+            int e2 = endOfToken(buf, s2, lineEnd);
+
+            boolean enough = labeled ? s2 < e2 : s1 < e1;
+            if(enough)
+            {
+                double x = parseDouble(buf, s0, e0);
+                double y = parseDouble(buf, s1, e1);
+                int lbl = labeled ? chunk.labelId(buf, s2, e2) : 0;
+                chunk.add(x, y, lbl);
+            }
+
+            pos = lineEnd+1;
+        }
+        monitor.addProgress(len-reportedPos, chunk.size-reportedRows);
+
+        return chunk;
+    }
+
+    /**
+     * Combines the chunks into one set of columns. Class ids are remapped so
+     * that they are numbered in the order the class first appears in the file.
+     */
+    private static Dataset2D merge(List<Chunk> chunks, boolean labeled, ExecutorService execService, long start) throws IOException
+    {
+        int total = 0;
+        for(Chunk chunk : chunks)
+            total += chunk.size;
+
+        Map<String, Integer> globalIds = new LinkedHashMap<>();
+        int[][] remaps = new int[chunks.size()][];
+        for(int c = 0; c < chunks.size(); c++)
+        {
+            Chunk chunk = chunks.get(c);
+            remaps[c] = new int[chunk.labelCount];
+            for(int i = 0; i < chunk.labelCount; i++)
+            {
+                String name = new String(chunk.labelNames[i], StandardCharsets.UTF_8);
+                Integer id = globalIds.get(name);
+                if(id == null)
+                    globalIds.put(name, id = globalIds.size());
+                remaps[c][i] = id;
+            }
+        }
+
+        final double[] x = new double[total];
+        final double[] y = new double[total];
+        final int[] label = labeled ? new int[total] : null;
+
+        List<Future<?>> futures = new ArrayList<>(chunks.size());
+        int offset = 0;
+        for(int c = 0; c < chunks.size(); c++)
+        {
+            final Chunk chunk = chunks.get(c);
+            final int[] remap = remaps[c];
+            final int chunkOffset = offset;
+            futures.add(execService.submit(() ->
+            {
+                System.arraycopy(chunk.x, 0, x, chunkOffset, chunk.size);
+                System.arraycopy(chunk.y, 0, y, chunkOffset, chunk.size);
+                if(label != null)
+                    for(int i = 0; i < chunk.size; i++)
+                        label[chunkOffset+i] = remap[chunk.label[i]];
+            }));
+            offset += chunk.size;
+        }
+        for(Future<?> future : futures)
+            get(future);
+
+        String[] labelNames = globalIds.keySet().toArray(new String[globalIds.size()]);
+        return new Dataset2D(x, y, label, labelNames, System.nanoTime()-start);
+    }
+
+    /**
+     * Waits on the future, unwrapping any exception thrown by the task
+     */
+    private static <T> T get(Future<T> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if(cause instanceof IOException)
+                throw (IOException) cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private static boolean isSeparator(byte b)
+    {
+        return b == ' ' || b == ',' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static int skipSeparators(ByteBuffer buf, int pos, int end)
+    {
+        while(pos < end && isSeparator(buf.get(pos)))
+            pos++;
+        return pos;
+    }
+
+    private static int endOfToken(ByteBuffer buf, int pos, int end)
+    {
+        while(pos < end && !isSeparator(buf.get(pos)))
+            pos++;
+        return pos;
+    }
+
+    /**
+     * Parses the double in the given range of bytes. The common case of a
+     * decimal number with at most 15 significant digits is parsed directly,
+     * which gives the same correctly rounded value as
+     * {@link Double#parseDouble(java.lang.String) }. Anything else falls back
+     * to it.
+     * @param buf the buffer to read from
+     * @param start the first byte of the token
+     * @param end one past the last byte of the token
+     * @return the parsed value
+     * @throws NumberFormatException if the token is not a number
+     */
+    static double parseDouble(ByteBuffer buf, int start, int end)
+    {
+        int pos = start;
+        boolean negative = false;
+        if(pos < end && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+            negative = buf.get(pos++) == '-';
+
+        long mantissa = 0;
+        int digits = 0;
+        int exp10 = 0;
+        boolean sawDigit = false;
+        boolean fast = true;
+
+        while(pos < end)
+        {
+            int d = buf.get(pos) - '0';
+            if(d < 0 || d > 9)
+                break;
+            sawDigit = true;
+            if(mantissa != 0 || d != 0)
+                if(++digits > 15)
+                    fast = false;
+            mantissa = mantissa*10+d;
+            pos++;
+        }
+        if(pos < end && buf.get(pos) == '.')
+        {
+            pos++;
+            while(pos < end)
+            {
+                int d = buf.get(pos) - '0';
+                if(d < 0 || d > 9)
+                    break;
+                sawDigit = true;
+                if(mantissa != 0 || d != 0)
+                    if(++digits > 15)
+                        fast = false;
+                mantissa = mantissa*10+d;
+                exp10--;
+                pos++;
+            }
+        }
+        if(sawDigit && pos < end && (buf.get(pos) == 'e' || buf.get(pos) == 'E'))
+        {
+            pos++;
+            boolean negExp = false;
+            if(pos < end && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+                negExp = buf.get(pos++) == '-';
+            int exp = 0;
+            boolean sawExpDigit = false;
+            while(pos < end)
+            {
+                int d = buf.get(pos) - '0';
+                if(d < 0 || d > 9)
+                    break;
+                sawExpDigit = true;
+                if(exp < 10000)
+                    exp = exp*10+d;
+                pos++;
+            }
+            if(!sawExpDigit)
+                fast = false;
+            exp10 += negExp ? -exp : exp;
+        }
+
+        if(fast && sawDigit && pos == end && mantissa < MAX_EXACT_MANTISSA)
+        {
+            double val;
+            if(mantissa == 0)
+                val = 0;
+            else if(exp10 >= 0 && exp10 < POW10.length)
+                val = mantissa*POW10[exp10];
+            else if(exp10 < 0 && -exp10 < POW10.length)
+                val = mantissa/POW10[-exp10];
+            else
+                return slowParseDouble(buf, start, end);
+            return negative ? -val : val;
+        }
+
+        return slowParseDouble(buf, start, end);
+    }
+
+    private static double slowParseDouble(ByteBuffer buf, int start, int end)
+    {
+        byte[] bytes = new byte[end-start];
+        for(int i = 0; i < bytes.length; i++)
+            bytes[i] = buf.get(start+i);
+        return Double.parseDouble(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The columns parsed from one chunk of the file, along with the class
+     * names seen in that chunk. Class ids are local to the chunk.
+     */
+    private static class Chunk
+    {
+        double[] x;
+        double[] y;
+        int[] label;
+        int size = 0;
+
+        byte[][] labelNames = new byte[4][];
+        int[] labelHashes = new int[4];
+        int labelCount = 0;
+        /**
+         * Open addressing table from label hash to local id+1, 0 means empty
+         */
+        int[] table = new int[16];
+
+        public Chunk(int initialCapacity, boolean labeled)
+        {
+            x = new double[initialCapacity];
+            y = new double[initialCapacity];
+            label = labeled ? new int[initialCapacity] : null;
+        }
+
+        void add(double xVal, double yVal, int lbl)
+        {
+            if(size == x.length)
+            {
+                int newCap = x.length*2;
+                x = Arrays.copyOf(x, newCap);
+                y = Arrays.copyOf(y, newCap);
+                if(label != null)
+                    label = Arrays.copyOf(label, newCap);
+            }
+            x[size] = xVal;
+            y[size] = yVal;
+            if(label != null)
+                label[size] = lbl;
+            size++;
+        }
+
+        /**
+         * Returns the local id of the class name in the given range, adding it
+         * if this is the first time it was seen. Only new names allocate.
+         */
+        int labelId(ByteBuffer buf, int start, int end)
+        {
+            int hash = 1;
+            for(int i = start; i < end; i++)
+                hash = 31*hash + buf.get(i);
+
+            int mask = table.length-1;
+            int slot = mix(hash) & mask;
+            while(table[slot] != 0)
+            {
+                int id = table[slot]-1;
+                if(labelHashes[id] == hash && sameBytes(labelNames[id], buf, start, end))
+                    return id;
+                slot = (slot+1) & mask;
+            }
+
+            //new label
+            byte[] name = new byte[end-start];
+            for(int i = 0; i < name.length; i++)
+                name[i] = buf.get(start+i);
+            if(labelCount == labelNames.length)
+            {
+                labelNames = Arrays.copyOf(labelNames, labelCount*2);
+                labelHashes = Arrays.copyOf(labelHashes, labelCount*2);
+            }
+            int id = labelCount++;
+            labelNames[id] = name;
+            labelHashes[id] = hash;
+            table[slot] = id+1;
+
+            if(labelCount*2 > table.length)
+                rehash();
+            return id;
+        }
+
+        private void rehash()
+        {
+            table = new int[table.length*2];
+            int mask = table.length-1;
+            for(int id = 0; id < labelCount; id++)
+            {
+                int slot = mix(labelHashes[id]) & mask;
+                while(table[slot] != 0)
+                    slot = (slot+1) & mask;
+                table[slot] = id+1;
+            }
+        }
+
+        private static int mix(int hash)
+        {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean sameBytes(byte[] name, ByteBuffer buf, int start, int end)
+        {
+            if(name.length != end-start)
+                return false;
+            for(int i = 0; i < name.length; i++)
+                if(name[i] != buf.get(start+i))
+                    return false;
+            return true;
+        }
+    }
+}
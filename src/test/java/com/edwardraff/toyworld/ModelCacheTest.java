@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Edward Raff
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edwardraff.toyworld;
+
+import java.util.Random;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.Classifier;
+import jsat.classifiers.knn.NearestNeighbour;
+import jsat.classifiers.svm.PlatSMO;
+import jsat.distributions.kernels.RBFKernel;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that models keeping their training points, whose points are views
+ * of a {@link Dataset2D}, can be put in and taken back out of the
+ * {@link ModelCache}
+ *
+ * @author Edward Raff
+ */
+public class ModelCacheTest
+{
+    /**
+     *
+     * @return two well separated classes of points
+     */
+    private static Dataset2D twoBlobs()
+    {
+        Random rand = new Random(1);
+        int n = 200;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        int[] label = new int[n];
+        for(int i = 0; i < n; i++)
+        {
+            label[i] = i % 2;
+            x[i] = label[i]*4 + rand.nextGaussian();
+            y[i] = label[i]*4 + rand.nextGaussian();
+        }
+        return new Dataset2D(x, y, label, new String[]{"a", "b"}, 0);
+    }
+
+    private static void checkRoundTrip(Classifier model)
+    {
+        Dataset2D data = twoBlobs().subset(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19});
+        ModelCache cache = new ModelCache(16 << 20, 0);
+        String key = ModelCache.key(model, data);
+        assertNotNull(key);
+        ClassificationDataSet train = data.asClassificationDataSet();
+        model.trainC(train);
+        cache.put(key, model);
+
+        Classifier cached = cache.get(key);
+        assertNotNull("the trained model was not cached", cached);
+        for(int i = 0; i < train.getSampleSize(); i++)
+            assertEquals(model.classify(train.getDataPoint(i)).mostLikely(), cached.classify(train.getDataPoint(i)).mostLikely());
+    }
+
+    @Test
+    public void testNearestNeighbourRoundTrip()
+    {
+        checkRoundTrip(new NearestNeighbour(1));
+    }
+
+    @Test
+    public void testSVMRoundTrip()
+    {
+        checkRoundTrip(new PlatSMO(new RBFKernel(0.5)));
+    }
+}